@@ -0,0 +1,113 @@
+package com.faceattendance.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.faceattendance.ChiSquareKernel;
+import com.faceattendance.HnswIndex;
+import com.faceattendance.LbphEngine;
+import com.faceattendance.LbphFeatures;
+import com.faceattendance.LbphGallery;
+import com.faceattendance.SyntheticFaces;
+
+/**
+ * Recall@1 and latency of the {@link HnswIndex} against exhaustive LBPH search as the
+ * gallery grows.
+ * <p>
+ * The gallery is synthetic ({@link SyntheticFaces}, 25 samples per student as in
+ * enrollment) and grows from one size to the next, so the index is extended with
+ * incremental inserts rather than rebuilt. At each size 200 fresh captures of enrolled
+ * students are searched exhaustively and with every ef; recall@1 is the share of probes
+ * where the index returns the exact nearest sample, label@1 where it returns a sample of
+ * the same student. Pure Java, no natives or camera needed.
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar com.faceattendance.bench.AnnRecallBenchmark \
+ *       [sizes, e.g. 1000,5000,20000] [ef values, e.g. 16,32,64,128]
+ * </pre>
+ * Each sample takes 64 KB, so 20000 samples need MAVEN_OPTS=-Xmx2g.
+ */
+public class AnnRecallBenchmark {
+    private static final int SAMPLES_PER_STUDENT = 25;
+    private static final int PROBES = 200;
+    private static final double NOISE = 6.0;
+
+    public static void main(String[] args) {
+        int[] sizes = parse(args.length > 0 ? args[0] : "1000,5000,10000");
+        int[] efs = parse(args.length > 1 ? args[1] : "16,32,64,128");
+        LbphFeatures features = LbphFeatures.defaults();
+        ChiSquareKernel kernel = ChiSquareKernel.best();
+        LbphGallery gallery = new LbphGallery(features.length(), Boolean.getBoolean(LbphEngine.OFFHEAP_PROPERTY));
+        HnswIndex index = new HnswIndex(gallery, kernel, HnswIndex.DEFAULT_M, HnswIndex.DEFAULT_EF_CONSTRUCTION);
+        Random random = new Random(7);
+        List<byte[]> students = new ArrayList<>();
+
+        System.out.println("Kernel: " + kernel.name() + ", " + features);
+        System.out.println(String.format(Locale.US, "%8s %10s %12s %6s %12s %9s %9s",
+                "samples", "insert s", "exact us", "ef", "ann us", "recall@1", "label@1"));
+        for (int size : sizes) {
+            while (gallery.size() < size) {
+                if (gallery.size() % SAMPLES_PER_STUDENT == 0) students.add(SyntheticFaces.student(random));
+                int s = students.size() - 1;
+                gallery.add(s + 1, features.compute(SyntheticFaces.sample(students.get(s), random, NOISE), SyntheticFaces.SIZE, SyntheticFaces.SIZE));
+            }
+            long t0 = System.nanoTime();
+            index.catchUp();
+            double insertSeconds = (System.nanoTime() - t0) / 1e9;
+
+            float[][] probes = new float[PROBES][];
+            int[] exact = new int[PROBES];
+            for (int i = 0; i < PROBES; i++) {
+                byte[] student = students.get(random.nextInt(students.size()));
+                probes[i] = features.compute(SyntheticFaces.sample(student, random, NOISE), SyntheticFaces.SIZE, SyntheticFaces.SIZE);
+            }
+            t0 = System.nanoTime();
+            for (int i = 0; i < PROBES; i++) {
+                exact[i] = exhaustive(gallery, kernel, probes[i]);
+            }
+            double exactMicros = (System.nanoTime() - t0) / 1e3 / PROBES;
+
+            for (int e = 0; e < efs.length; e++) {
+                int hits = 0, labelHits = 0;
+                t0 = System.nanoTime();
+                int[] found = new int[PROBES];
+                for (int i = 0; i < PROBES; i++) {
+                    long[] r = index.search(probes[i], 1, efs[e]);
+                    found[i] = r.length == 0 ? -1 : HnswIndex.node(r[0]);
+                }
+                double annMicros = (System.nanoTime() - t0) / 1e3 / PROBES;
+                for (int i = 0; i < PROBES; i++) {
+                    if (found[i] == exact[i]) hits++;
+                    if (found[i] >= 0 && gallery.label(found[i]) == gallery.label(exact[i])) labelHits++;
+                }
+                System.out.println(String.format(Locale.US, "%8s %10s %12s %6d %12.1f %8.1f%% %8.1f%%",
+                        e == 0 ? String.valueOf(size) : "", e == 0 ? String.format(Locale.US, "%.1f", insertSeconds) : "",
+                        e == 0 ? String.format(Locale.US, "%.1f", exactMicros) : "", efs[e], annMicros,
+                        100.0 * hits / PROBES, 100.0 * labelHits / PROBES));
+            }
+        }
+    }
+
+    private static int exhaustive(LbphGallery gallery, ChiSquareKernel kernel, float[] probe) {
+        float best = Float.MAX_VALUE;
+        int bestIndex = -1;
+        for (int i = 0; i < gallery.size(); i++) {
+            float d = gallery.distance(kernel, probe, i, best);
+            if (d < best) {
+                best = d;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+
+    private static int[] parse(String list) {
+        String[] parts = list.split(",");
+        int[] out = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            out[i] = Integer.parseInt(parts[i].trim());
+        }
+        return out;
+    }
+}
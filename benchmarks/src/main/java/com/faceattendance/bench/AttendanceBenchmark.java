@@ -0,0 +1,120 @@
+package com.faceattendance.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.faceattendance.AttendanceStore;
+
+/**
+ * markAttendanceDB's queries (open session lookup, today's row, insert or check-out
+ * update, name/roll lookup) against an embedded SQLite file, the app's fallback database.
+ * <p>
+ * The students and attendance tables mirror the MySQL schema, including the
+ * (student_id, attendance_date) unique key, and are preloaded with historyDays of
+ * closed sessions per student. Each call marks the next student; every student is
+ * checked in and then out once per simulated day, so the mix matches a school day.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttendanceBenchmark {
+
+    @Param({"100", "1000"})
+    public int students;
+
+    @Param({"0", "180"})
+    public int historyDays;
+
+    private File dbFile;
+    private Connection conn;
+    private AttendanceStore store;
+    private LocalDate firstDay;
+    private long calls;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dbFile = File.createTempFile("attendance-bench", ".db");
+        conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE students (id INTEGER PRIMARY KEY, name VARCHAR(100) NOT NULL, "
+                    + "rollno VARCHAR(20) NOT NULL UNIQUE, class VARCHAR(50) NOT NULL, department VARCHAR(100) NOT NULL)");
+            st.execute("CREATE TABLE attendance (id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "student_id INT NOT NULL REFERENCES students(id) ON DELETE CASCADE, "
+                    + "attendance_date DATE NOT NULL, check_in_time TIME NOT NULL, check_out_time TIME NULL, "
+                    + "status VARCHAR(10) DEFAULT 'Present', created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                    + "UNIQUE (student_id, attendance_date))");
+        }
+        firstDay = LocalDate.of(2025, 1, 1);
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO students (id, name, rollno, class, department) VALUES (?, ?, ?, 'III Sem A', 'CSE')")) {
+            for (int s = 1; s <= students; s++) {
+                ps.setInt(1, s);
+                ps.setString(2, "Student " + s);
+                ps.setString(3, String.format("R%05d", s));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO attendance (student_id, attendance_date, check_in_time, check_out_time) VALUES (?, ?, ?, ?)")) {
+            for (int d = 0; d < historyDays; d++) {
+                for (int s = 1; s <= students; s++) {
+                    ps.setInt(1, s);
+                    ps.setDate(2, Date.valueOf(firstDay.plusDays(d)));
+                    ps.setTime(3, Time.valueOf(LocalTime.of(9, 0)));
+                    ps.setTime(4, Time.valueOf(LocalTime.of(16, 0)));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        conn.commit();
+        conn.setAutoCommit(true); // the app marks each recognition in its own transaction
+        firstDay = firstDay.plusDays(historyDays);
+        store = new AttendanceStore(conn);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        conn.close();
+        Files.deleteIfExists(dbFile.toPath());
+    }
+
+    @Benchmark
+    public AttendanceStore.Mark markAttendance() throws SQLException {
+        long i = calls++;
+        int student = 1 + (int) (i % students);
+        long round = i / students; // even: check-in, odd: check-out
+        LocalDate day = firstDay.plusDays(round / 2);
+        LocalTime time = round % 2 == 0 ? LocalTime.of(9, 0) : LocalTime.of(16, 0);
+        return store.mark(student, day, time);
+    }
+}
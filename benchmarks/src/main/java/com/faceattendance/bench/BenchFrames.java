@@ -0,0 +1,85 @@
+package com.faceattendance.bench;
+
+import java.io.File;
+import java.util.Random;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import com.faceattendance.SyntheticFaces;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Camera-sized BGR frames for the benchmarks.
+ * <p>
+ * With -Dfaceattendance.bench.image=photo.jpg (ideally a kiosk snapshot with a face in
+ * it) that image is resized to each resolution, which gives representative detection
+ * times. Otherwise the frame is a smooth synthetic scene with a synthetic face texture in
+ * the middle: fine for conversions and scaling, but the cascade rejects it faster than a
+ * real scene.
+ */
+final class BenchFrames {
+    static final String IMAGE_PROPERTY = "faceattendance.bench.image";
+    static final String CASCADE_PROPERTY = "faceattendance.bench.cascade";
+
+    private BenchFrames() {}
+
+    // "1280x720" -> {1280, 720}
+    static int[] size(String resolution) {
+        String[] wh = resolution.toLowerCase().split("x");
+        return new int[] {Integer.parseInt(wh[0].trim()), Integer.parseInt(wh[1].trim())};
+    }
+
+    static Mat bgr(String resolution) {
+        int[] wh = size(resolution);
+        String image = System.getProperty(IMAGE_PROPERTY);
+        if (image != null) {
+            Mat src = imread(image);
+            if (src.empty()) throw new IllegalStateException("Could not read " + image);
+            Mat out = new Mat();
+            resize(src, out, new Size(wh[0], wh[1]));
+            src.close();
+            return out;
+        }
+
+        int w = wh[0], h = wh[1];
+        byte[] pixels = new byte[w * h];
+        Random random = new Random(7);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int v = 60 + 120 * x / w + 40 * y / h + random.nextInt(9) - 4;
+                pixels[y * w + x] = (byte) v;
+            }
+        }
+        Mat gray = new Mat(h, w, CV_8UC1);
+        gray.data().put(pixels);
+
+        // a face-sized patch of synthetic face texture, about a third of the frame height
+        Mat face = new Mat(SyntheticFaces.SIZE, SyntheticFaces.SIZE, CV_8UC1);
+        face.data().put(SyntheticFaces.student(random));
+        int side = h / 3;
+        Mat roi = new Mat(gray, new Rect((w - side) / 2, (h - side) / 2, side, side));
+        resize(face, roi, new Size(side, side));
+
+        Mat bgr = new Mat();
+        cvtColor(gray, bgr, COLOR_GRAY2BGR);
+        roi.close();
+        face.close();
+        gray.close();
+        return bgr;
+    }
+
+    // The app's Haar cascade: the property, else the project root (benchmarks/ runs one level down)
+    static String cascadePath() {
+        String p = System.getProperty(CASCADE_PROPERTY);
+        if (p != null) return p;
+        for (String candidate : new String[] {"haarcascade_frontalface_alt.xml", "../haarcascade_frontalface_alt.xml"}) {
+            if (new File(candidate).isFile()) return new File(candidate).getAbsolutePath();
+        }
+        throw new IllegalStateException("haarcascade_frontalface_alt.xml not found; set -D" + CASCADE_PROPERTY);
+    }
+}
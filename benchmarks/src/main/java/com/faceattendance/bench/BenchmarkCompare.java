@@ -0,0 +1,156 @@
+package com.faceattendance.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files (java -jar target/benchmarks.jar -rf json -rff x.json)
+ * benchmark by benchmark and parameter set, e.g. the last release against a candidate
+ * build before it goes to the kiosks.
+ * <pre>
+ *   java -cp target/benchmarks.jar com.faceattendance.bench.BenchmarkCompare results/1.4.json results/1.5.json [tolerance%]
+ * </pre>
+ * A result is a regression when it is slower by more than the tolerance (default 10%)
+ * and the difference is larger than both runs' error margins; the exit status is then 1.
+ */
+public class BenchmarkCompare {
+
+    private static final class Score {
+        double value, error;
+        boolean higherIsBetter;
+        String unit;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkCompare <baseline.json> <current.json> [tolerance%]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) / 100.0 : 0.10;
+        Map<String, Score> base = read(args[0]);
+        Map<String, Score> current = read(args[1]);
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> e : current.entrySet()) {
+            Score b = base.get(e.getKey());
+            Score c = e.getValue();
+            if (b == null) {
+                System.out.println(String.format(Locale.US, "  new   %-70s %12.3f %s", e.getKey(), c.value, c.unit));
+                continue;
+            }
+            // > 1 means slower, whichever way the mode counts
+            double ratio = c.higherIsBetter ? b.value / c.value : c.value / b.value;
+            boolean significant = Math.abs(c.value - b.value) > Math.max(b.error, c.error);
+            String verdict = ratio > 1 + tolerance && significant ? "SLOWER"
+                    : ratio < 1 - tolerance && significant ? "faster" : "same";
+            if ("SLOWER".equals(verdict)) regressions++;
+            System.out.println(String.format(Locale.US, "  %-6s %-70s %12.3f -> %12.3f %s (%+.1f%%)",
+                    verdict, e.getKey(), b.value, c.value, c.unit, 100 * (ratio - 1)));
+        }
+        System.out.println(regressions == 0 ? "No regressions." : regressions + " regression(s).");
+        if (regressions > 0) System.exit(1);
+    }
+
+    // "benchmark [param=value, ...]" -> primary score
+    @SuppressWarnings("unchecked")
+    private static Map<String, Score> read(String file) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        Map<String, Score> out = new TreeMap<>();
+        for (Object o : (List<Object>) new Parser(json).value()) {
+            Map<String, Object> run = (Map<String, Object>) o;
+            String name = (String) run.get("benchmark");
+            name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+            Object params = run.get("params");
+            if (params instanceof Map) name += " " + new TreeMap<>((Map<String, Object>) params);
+            Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+            Score s = new Score();
+            s.value = ((Number) metric.get("score")).doubleValue();
+            Object error = metric.get("scoreError");
+            s.error = error instanceof Number && !Double.isNaN(((Number) error).doubleValue()) ? ((Number) error).doubleValue() : 0;
+            s.unit = (String) metric.get("scoreUnit");
+            String mode = (String) run.get("mode");
+            s.higherIsBetter = "thrpt".equals(mode);
+            out.put(name, s);
+        }
+        return out;
+    }
+
+    // Just enough JSON for JMH's result files
+    private static final class Parser {
+        private final String s;
+        private int i;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Object value() {
+            skip();
+            char c = s.charAt(i);
+            if (c == '{') {
+                Map<String, Object> m = new LinkedHashMap<>();
+                i++;
+                skip();
+                if (s.charAt(i) == '}') { i++; return m; }
+                while (true) {
+                    skip();
+                    String key = (String) value();
+                    skip();
+                    i++; // ':'
+                    m.put(key, value());
+                    skip();
+                    if (s.charAt(i++) == '}') return m;
+                }
+            }
+            if (c == '[') {
+                List<Object> l = new ArrayList<>();
+                i++;
+                skip();
+                if (s.charAt(i) == ']') { i++; return l; }
+                while (true) {
+                    l.add(value());
+                    skip();
+                    if (s.charAt(i++) == ']') return l;
+                }
+            }
+            if (c == '"') {
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (s.charAt(i) != '"') {
+                    char ch = s.charAt(i++);
+                    if (ch == '\\') {
+                        char esc = s.charAt(i++);
+                        if (esc == 'u') {
+                            sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                            i += 4;
+                        } else {
+                            sb.append(esc == 'n' ? '\n' : esc == 't' ? '\t' : esc);
+                        }
+                    } else {
+                        sb.append(ch);
+                    }
+                }
+                i++;
+                return sb.toString();
+            }
+            int start = i;
+            while (i < s.length() && ",}] \t\r\n".indexOf(s.charAt(i)) < 0) i++;
+            String token = s.substring(start, i);
+            if ("true".equals(token) || "false".equals(token)) return Boolean.valueOf(token);
+            if ("null".equals(token)) return null;
+            return "NaN".equals(token) ? Double.NaN : Double.parseDouble(token);
+        }
+
+        private void skip() {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        }
+    }
+}
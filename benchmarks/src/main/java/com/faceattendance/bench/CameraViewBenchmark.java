@@ -0,0 +1,82 @@
+package com.faceattendance.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.faceattendance.VideoPanel;
+
+/**
+ * updateCameraView: a camera frame handed to the VideoPanel and painted scaled to fit
+ * the panel (bilinear, aspect ratio kept), as the EDT does for every shown frame. The
+ * panel paints into an offscreen RGB image of its size instead of the screen, so it runs
+ * headless.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true"})
+public class CameraViewBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    // size of the camera view in the dialog
+    @Param({"640x480", "1024x768"})
+    public String panelSize;
+
+    private final VideoPanel panel = new VideoPanel();
+    private BufferedImage frame;
+    private BufferedImage screen;
+    private Graphics2D g;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Mat mat = BenchFrames.bgr(resolution);
+        frame = new Java2DFrameConverter().convert(new OpenCVFrameConverter.ToMat().convert(mat));
+        mat.close();
+        int[] wh = BenchFrames.size(panelSize);
+        panel.setSize(wh[0], wh[1]);
+        screen = new BufferedImage(wh[0], wh[1], BufferedImage.TYPE_INT_RGB);
+        g = screen.createGraphics();
+        panel.submit(frame); // so paintOnly has a frame on screen
+        panel.paint(g);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage submitAndPaint() {
+        panel.submit(frame);
+        panel.paint(g);
+        return screen;
+    }
+
+    @Benchmark
+    public BufferedImage paintOnly() {
+        panel.paint(g);
+        return screen;
+    }
+}
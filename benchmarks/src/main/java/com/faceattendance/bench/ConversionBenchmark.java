@@ -0,0 +1,83 @@
+package com.faceattendance.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.faceattendance.MatRenderer;
+import com.faceattendance.VideoPanel;
+
+/**
+ * Moving a camera frame between JavaCV's Frame, OpenCV's Mat and Swing's BufferedImage:
+ * <ul>
+ *   <li>frameToMat: what every grab costs before detection</li>
+ *   <li>matToBufferedImage: Mat to Frame to BufferedImage through Java2DFrameConverter</li>
+ *   <li>matToPanelBuffer: MatRenderer's single copy into a reused VideoPanel buffer,
+ *       what the camera views do now</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true"})
+public class ConversionBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private final OpenCVFrameConverter.ToMat toMat = new OpenCVFrameConverter.ToMat();
+    private final Java2DFrameConverter toImage = new Java2DFrameConverter();
+    private final MatRenderer renderer = new MatRenderer();
+    private final VideoPanel panel = new VideoPanel();
+    private Mat mat;
+    private Frame frame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mat = BenchFrames.bgr(resolution);
+        // a Frame of its own, as the grabber hands out, not a view of mat
+        frame = new OpenCVFrameConverter.ToMat().convert(mat).clone();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        renderer.release();
+        mat.close();
+        frame.close();
+    }
+
+    @Benchmark
+    public Mat frameToMat() {
+        return toMat.convert(frame);
+    }
+
+    @Benchmark
+    public BufferedImage matToBufferedImage() {
+        return toImage.convert(toMat.convert(mat));
+    }
+
+    @Benchmark
+    public VideoPanel matToPanelBuffer() {
+        renderer.publish(mat, panel);
+        return panel;
+    }
+}
@@ -0,0 +1,79 @@
+package com.faceattendance.bench;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_objdetect.CascadeClassifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.faceattendance.DetectionProfile;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.COLOR_BGR2GRAY;
+import static org.bytedeco.opencv.global.opencv_imgproc.cvtColor;
+
+/**
+ * The detect stage on one camera frame: BGR to grayscale, then the Haar cascade with
+ * a detection profile (the app's default full-frame settings, or the downscaled kiosk
+ * preset), at common webcam resolutions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class DetectionBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"default", "kiosk"})
+    public String profile;
+
+    private CascadeClassifier cascade;
+    private DetectionProfile detection;
+    private Mat frame;
+    private Mat gray;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cascade = new CascadeClassifier(BenchFrames.cascadePath());
+        if (cascade.empty()) throw new IllegalStateException("Could not load " + BenchFrames.cascadePath());
+        detection = DetectionProfile.byName(profile);
+        frame = BenchFrames.bgr(resolution);
+        gray = new Mat();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cascade.close();
+        frame.close();
+        gray.close();
+    }
+
+    @Benchmark
+    public Mat cvtColorOnly() {
+        cvtColor(frame, gray, COLOR_BGR2GRAY);
+        return gray;
+    }
+
+    @Benchmark
+    public List<Rectangle> cvtColorAndDetect() {
+        cvtColor(frame, gray, COLOR_BGR2GRAY);
+        return detection.detect(cascade, gray, null);
+    }
+}
@@ -0,0 +1,132 @@
+package com.faceattendance.bench;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Future;
+
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import com.faceattendance.DetectionProfile;
+import com.faceattendance.DetectorPool;
+import com.faceattendance.FaceDetectors;
+import com.faceattendance.FrameSource;
+import com.faceattendance.FrameSources;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Detection throughput as the number of {@link DetectorPool} workers goes from 1 to N.
+ * <p>
+ * The clip is decoded to grayscale up front so only detection is timed. Two ways of
+ * using the workers are measured:
+ * <ul>
+ *   <li>frames: independent frames detected concurrently, as with several gate cameras</li>
+ *   <li>tiled: one frame at a time, split into strips across the workers, as for a single
+ *       high-resolution camera (only frames of 1280x720 and up, with a profile max face size)</li>
+ * </ul>
+ * <pre>
+ *   java -Dfaceattendance.detection.profile=kiosk -Dfaceattendance.detector=haar|lbp|yunet \
+ *       -cp benchmarks/target/benchmarks.jar com.faceattendance.bench.DetectionScalingBenchmark \
+ *       video:clips/gate.mp4 [max-workers] [detector-model]
+ * </pre>
+ */
+public class DetectionScalingBenchmark {
+    private static final int MAX_FRAMES = 300;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: DetectionScalingBenchmark <video:file|images:dir> [max-workers] [detector-model]");
+            System.exit(2);
+        }
+        int maxWorkers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String backend = FaceDetectors.backendFromSystemProperty();
+        String modelPath = new File(args.length > 2 ? args[2] : FaceDetectors.modelPath(backend)).getAbsolutePath();
+        Loader.load(org.bytedeco.opencv.global.opencv_core.class);
+        DetectionProfile profile = DetectionProfile.fromSystemProperty();
+
+        List<Mat> frames = load(args[0]);
+        if (frames.isEmpty()) {
+            System.err.println("No frames in " + args[0]);
+            System.exit(1);
+        }
+        System.out.println(String.format(Locale.US, "%d frames of %dx%d, %s detector, detection profile %s",
+                frames.size(), frames.get(0).cols(), frames.get(0).rows(), backend, profile));
+        System.out.println(String.format(Locale.US, "%8s %12s %8s %12s %8s", "workers", "frames fps", "speedup", "tiled fps", "speedup"));
+
+        double baseFrames = 0, baseTiled = 0;
+        for (int workers = 1; workers <= maxWorkers; workers = workers < maxWorkers ? Math.min(maxWorkers, workers * 2) : maxWorkers + 1) {
+            DetectorPool pool = new DetectorPool(() -> FaceDetectors.create(backend, modelPath, profile), profile, workers);
+            try {
+                runFrames(pool, frames); // warm-up: first use of each detector
+                double framesFps = runFrames(pool, frames);
+                double tiledFps = runTiled(pool, frames);
+                if (workers == 1) {
+                    baseFrames = framesFps;
+                    baseTiled = tiledFps;
+                }
+                System.out.println(String.format(Locale.US, "%8d %12.1f %7.2fx %12.1f %7.2fx",
+                        workers, framesFps, framesFps / baseFrames, tiledFps, tiledFps / baseTiled));
+            } finally {
+                pool.close();
+            }
+        }
+        for (Mat m : frames) {
+            m.close();
+        }
+    }
+
+    private static double runFrames(DetectorPool pool, List<Mat> frames) throws Exception {
+        long t0 = System.nanoTime();
+        List<Future<List<Rectangle>>> pending = new ArrayList<>(frames.size());
+        for (Mat gray : frames) {
+            pending.add(pool.submit(d -> d.detect(gray, null)));
+        }
+        for (Future<List<Rectangle>> f : pending) {
+            f.get();
+        }
+        return frames.size() / Math.max(1e-9, (System.nanoTime() - t0) / 1e9);
+    }
+
+    private static double runTiled(DetectorPool pool, List<Mat> frames) {
+        long t0 = System.nanoTime();
+        for (Mat gray : frames) {
+            pool.detect(gray, null);
+        }
+        return frames.size() / Math.max(1e-9, (System.nanoTime() - t0) / 1e9);
+    }
+
+    // Decodes up to MAX_FRAMES grayscale frames into memory
+    private static List<Mat> load(String spec) throws Exception {
+        FrameSource source = FrameSources.fromSpec(spec);
+        if (source.isLive()) {
+            throw new IllegalArgumentException("The benchmark needs a recorded source, got " + source.describe());
+        }
+        source.setGrayscale(true);
+        source.start();
+        OpenCVFrameConverter.ToMat convToMat = new OpenCVFrameConverter.ToMat();
+        List<Mat> frames = new ArrayList<>();
+        try {
+            Frame frame;
+            while (frames.size() < MAX_FRAMES && (frame = source.grab()) != null) {
+                Mat mat = convToMat.convert(frame);
+                if (mat == null) continue;
+                Mat gray = new Mat();
+                if (mat.channels() != 1) {
+                    cvtColor(mat, gray, COLOR_BGR2GRAY);
+                } else {
+                    mat.copyTo(gray);
+                }
+                frames.add(gray);
+            }
+        } finally {
+            source.stop();
+        }
+        return frames;
+    }
+}
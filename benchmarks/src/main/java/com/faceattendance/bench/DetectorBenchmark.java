@@ -0,0 +1,119 @@
+package com.faceattendance.bench;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import com.faceattendance.DetectionProfile;
+import com.faceattendance.DetectionProfileReport;
+import com.faceattendance.FaceDetector;
+import com.faceattendance.FaceDetectors;
+import com.faceattendance.FrameSource;
+import com.faceattendance.FrameSources;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Compares the face detector backends on a recorded clip, single-threaded, with the
+ * detection profile from -Dfaceattendance.detection.profile.
+ * <p>
+ * Reports mean and 95th percentile detection latency per frame, and recall against a
+ * reference backend (yunet by default, set with -Dfaceattendance.detector.reference):
+ * the share of reference faces found with IoU >= 0.5. Backends whose model file is
+ * missing are skipped. Use it to pick the fastest acceptable detector for a kiosk's CPU.
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar com.faceattendance.bench.DetectorBenchmark \
+ *       video:clips/gate.mp4 [haar,lbp,yunet]
+ * </pre>
+ */
+public class DetectorBenchmark {
+    public static final String REFERENCE_PROPERTY = "faceattendance.detector.reference";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: DetectorBenchmark <video:file|images:dir> [backend,backend,...]");
+            System.exit(2);
+        }
+        List<String> backends = new ArrayList<>(args.length > 1
+                ? Arrays.asList(args[1].split(",")) : FaceDetectors.backends());
+        String referenceName = System.getProperty(REFERENCE_PROPERTY, FaceDetectors.YUNET);
+        // the reference runs first so every backend can be scored against it
+        backends.remove(referenceName);
+        backends.add(0, referenceName);
+
+        Loader.load(org.bytedeco.opencv.global.opencv_core.class);
+        DetectionProfile profile = DetectionProfile.fromSystemProperty();
+        System.out.println("Detection profile " + profile + ", reference " + referenceName);
+        System.out.println(String.format(Locale.US, "%-8s %8s %10s %10s %8s %8s %10s",
+                "backend", "frames", "mean ms", "p95 ms", "fps", "recall", "faces/fr"));
+
+        List<List<Rectangle>> reference = null;
+        for (String backend : backends) {
+            String modelPath = new File(FaceDetectors.modelPath(backend)).getAbsolutePath();
+            FaceDetector detector;
+            try {
+                detector = FaceDetectors.create(backend, modelPath, profile);
+            } catch (IllegalStateException ex) {
+                System.out.println(String.format(Locale.US, "%-8s skipped: %s", backend, ex.getMessage()));
+                continue;
+            }
+            List<Long> nanos = new ArrayList<>();
+            List<List<Rectangle>> boxes;
+            try {
+                boxes = run(args[0], profile, detector, nanos);
+            } finally {
+                detector.close();
+            }
+            if (reference == null) reference = boxes;
+
+            long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+            double mean = Arrays.stream(sorted).average().orElse(0) / 1e6;
+            double p95 = sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.95))] / 1e6;
+            long faces = boxes.stream().mapToLong(List::size).sum();
+            System.out.println(String.format(Locale.US, "%-8s %8d %10.2f %10.2f %8.1f %7.1f%% %10.2f",
+                    backend, boxes.size(), mean, p95, mean > 0 ? 1000.0 / mean : 0.0,
+                    100.0 * DetectionProfileReport.recall(reference, boxes), faces / Math.max(1.0, boxes.size())));
+        }
+    }
+
+    // Detected boxes per frame; nanos receives the detection time of each frame (grayscale conversion included)
+    private static List<List<Rectangle>> run(String spec, DetectionProfile profile, FaceDetector detector,
+                                             List<Long> nanos) throws Exception {
+        FrameSource source = FrameSources.fromSpec(spec);
+        if (source.isLive()) {
+            throw new IllegalArgumentException("The benchmark needs a recorded source, got " + source.describe());
+        }
+        source.setGrayscale(profile.isGrayscaleCapture());
+        source.start();
+        OpenCVFrameConverter.ToMat convToMat = new OpenCVFrameConverter.ToMat();
+        Mat gray = new Mat();
+        List<List<Rectangle>> out = new ArrayList<>();
+        try {
+            Frame frame;
+            while ((frame = source.grab()) != null) {
+                Mat mat = convToMat.convert(frame);
+                if (mat == null) continue;
+                long t0 = System.nanoTime();
+                Mat g = mat;
+                if (mat.channels() != 1) {
+                    cvtColor(mat, gray, COLOR_BGR2GRAY);
+                    g = gray;
+                }
+                out.add(detector.detect(g, null));
+                nanos.add(System.nanoTime() - t0);
+            }
+        } finally {
+            source.stop();
+            gray.release();
+        }
+        return out;
+    }
+}
@@ -0,0 +1,74 @@
+package com.faceattendance.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.COLOR_BGR2GRAY;
+import static org.bytedeco.opencv.global.opencv_imgproc.cvtColor;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/**
+ * Cutting a detected face out of a 1280x720 grayscale frame and resizing it to the
+ * 200x200 crop the recognizer takes, the way the pipeline's predict step does it:
+ * a scoped ROI header and a preallocated destination.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaceCropBenchmark {
+
+    // side of the detected face box, in frame pixels
+    @Param({"120", "240", "400"})
+    public int faceSide;
+
+    private Mat gray;
+    private Rect box;
+    private final Size faceSize = new Size(200, 200);
+    private final Mat face = new Mat();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Mat bgr = BenchFrames.bgr("1280x720");
+        gray = new Mat();
+        cvtColor(bgr, gray, COLOR_BGR2GRAY);
+        bgr.close();
+        box = new Rect((gray.cols() - faceSide) / 2, (gray.rows() - faceSide) / 2, faceSide, faceSide);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gray.close();
+        box.close();
+        faceSize.close();
+        face.close();
+    }
+
+    @Benchmark
+    public Mat cropAndResize() {
+        try (PointerScope scope = new PointerScope()) {
+            Mat roi = new Mat(gray, box);
+            resize(roi, face, faceSize);
+        }
+        return face;
+    }
+}
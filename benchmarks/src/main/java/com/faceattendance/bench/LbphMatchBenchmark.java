@@ -0,0 +1,129 @@
+package com.faceattendance.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.faceattendance.ChiSquareKernel;
+import com.faceattendance.FaceMatcher;
+import com.faceattendance.LbphEngine;
+import com.faceattendance.OpenCvLbphMatcher;
+import com.faceattendance.ScalarChiSquareKernel;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_32SC1;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+
+/**
+ * One LBPH identification (features of a 200x200 crop plus the nearest-neighbour scan)
+ * with OpenCV's LBPHFaceRecognizer, the Java engine with the scalar kernel and the
+ * Java engine with the best kernel (the Vector API one when the fork has the module).
+ * <p>
+ * The gallery is trained on synthetic faces: noise images, ten per student, with
+ * per-sample jitter so histograms are not identical. It is trained in batches of
+ * {@value #BATCH} images so only the histograms stay in memory; at 100k samples those
+ * are about 6.5 GB in OpenCV plus the same again in the Java engine (kept off-heap from
+ * 10k samples on), and training takes a few minutes. Pick sizes with -p gallerySize=100,1000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "--add-modules=jdk.incubator.vector"})
+public class LbphMatchBenchmark {
+    static final int FACE = 200;
+    static final int BATCH = 1000;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int gallerySize;
+
+    @Param({"opencv", "java-scalar", "java-best"})
+    public String matcher;
+
+    private LBPHFaceRecognizer recognizer;
+    private FaceMatcher faceMatcher;
+    private Mat probe;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        int students = Math.max(1, gallerySize / 10);
+        byte[][] bases = new byte[students][];
+        for (int s = 0; s < students; s++) {
+            bases[s] = new byte[FACE * FACE];
+            random.nextBytes(bases[s]);
+        }
+        recognizer = LBPHFaceRecognizer.create();
+        for (int start = 0; start < gallerySize; start += BATCH) {
+            int n = Math.min(BATCH, gallerySize - start);
+            Mat[] batch = new Mat[n];
+            IntPointer labels = new IntPointer(n);
+            for (int i = 0; i < n; i++) {
+                int s = (start + i) % students;
+                batch[i] = jittered(bases[s], random);
+                labels.put(i, s + 1);
+            }
+            MatVector images = new MatVector(batch);
+            Mat labelMat = new Mat(n, 1, CV_32SC1, labels);
+            if (start == 0) recognizer.train(images, labelMat);
+            else recognizer.update(images, labelMat);
+            images.close();
+            for (Mat m : batch) m.close();
+            labelMat.close();
+            labels.close();
+        }
+        probe = jittered(bases[random.nextInt(students)], random);
+        boolean offHeap = gallerySize >= 10000;
+
+        switch (matcher) {
+            case "opencv":
+                faceMatcher = new OpenCvLbphMatcher(recognizer);
+                break;
+            case "java-scalar":
+                faceMatcher = LbphEngine.fromRecognizer(recognizer, offHeap, new ScalarChiSquareKernel());
+                break;
+            default:
+                faceMatcher = LbphEngine.fromRecognizer(recognizer, offHeap, ChiSquareKernel.best());
+        }
+        System.out.println("# " + faceMatcher.describe());
+    }
+
+    static Mat jittered(byte[] base, Random random) {
+        byte[] pixels = new byte[base.length];
+        for (int i = 0; i < base.length; i++) {
+            int v = (base[i] & 0xFF) + random.nextInt(41) - 20;
+            pixels[i] = (byte) Math.max(0, Math.min(255, v));
+        }
+        Mat m = new Mat(FACE, FACE, CV_8UC1);
+        m.data().put(pixels);
+        return m;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        recognizer.close();
+        probe.close();
+    }
+
+    @Benchmark
+    public FaceMatcher.Match predict() {
+        return faceMatcher.predict(probe);
+    }
+}
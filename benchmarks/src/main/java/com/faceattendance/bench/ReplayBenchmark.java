@@ -0,0 +1,124 @@
+package com.faceattendance.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.bytedeco.javacpp.Loader;
+
+import com.faceattendance.DetectionProfile;
+import com.faceattendance.DetectorPool;
+import com.faceattendance.FaceDetectors;
+import com.faceattendance.FaceTracker;
+import com.faceattendance.FrameSource;
+import com.faceattendance.FrameSources;
+import com.faceattendance.ModelRegistry;
+import com.faceattendance.RecognitionEngine;
+import com.faceattendance.RecognitionPipeline;
+
+/**
+ * Headless throughput run: pushes every frame of a recording through the
+ * detection/recognition pipeline as fast as possible and prints the stage timings.
+ * No webcam, display or database needed, so it runs on build boxes.
+ * <p>
+ * Several comma-separated sources replay concurrently the way several gate cameras
+ * run in the app: one shared model and inference pool, one pipeline per source.
+ * <pre>
+ *   java -Dfaceattendance.detector=haar|lbp|yunet \
+ *       -cp benchmarks/target/benchmarks.jar com.faceattendance.bench.ReplayBenchmark \
+ *       video:clips/gate.mp4[,video:clips/gate2.mp4...] [model.xml] [detector-model]
+ * </pre>
+ */
+public class ReplayBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayBenchmark <video:file|images:dir>[,...] [model.xml] [detector-model]");
+            System.exit(2);
+        }
+        File current = new ModelRegistry(new File("models"), System.err::println).currentFile();
+        String modelPath = args.length > 1 ? args[1] : current != null ? current.getPath() : "models/lbph_model.xml";
+        String backend = FaceDetectors.backendFromSystemProperty();
+        String detectorModel = new File(args.length > 2 ? args[2] : FaceDetectors.modelPath(backend)).getAbsolutePath();
+        DetectionProfile profile = DetectionProfile.fromSystemProperty();
+
+        Loader.load(org.bytedeco.opencv.global.opencv_core.class);
+        DetectorPool detectors;
+        RecognitionEngine engine;
+        try {
+            detectors = new DetectorPool(() -> FaceDetectors.create(backend, detectorModel, profile), profile, DetectorPool.defaultWorkers());
+            engine = RecognitionEngine.load(modelPath, detectors, System.err::println);
+        } catch (IllegalStateException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        String[] specs = args[0].split(",");
+        List<FrameSource> sources = new ArrayList<>();
+        List<RecognitionPipeline> pipelines = new ArrayList<>();
+        for (String spec : specs) {
+            FrameSource source = FrameSources.fromSpec(spec);
+            if (source.isLive()) {
+                System.err.println("Replay needs a recorded source (video: or images:), got " + source.describe());
+                System.exit(2);
+            }
+            source.setGrayscale(profile.isGrayscaleCapture());
+            sources.add(source);
+        }
+        System.out.println("Replaying " + specs.length + " source(s), detector " + detectors.describe());
+        System.out.println("Matcher: " + engine.getMatcher().describe());
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < specs.length; i++) {
+            FrameSource source = sources.get(i);
+            source.start();
+            System.out.println("  " + source.describe());
+            RecognitionPipeline pipeline = new RecognitionPipeline(source, detectors, engine.getMatcher(), 75.0,
+                    new RecognitionPipeline.Listener() {
+                @Override
+                public String describe(int studentId) {
+                    return "id " + studentId;
+                }
+
+                @Override
+                public void onRecognized(int studentId, double confidence) {}
+
+                @Override
+                public String overlay() {
+                    return null;
+                }
+
+                @Override
+                public void log(String message) {
+                    System.err.println(message);
+                }
+            }, false);
+
+            pipeline.setTracker(FaceTracker.fromSystemProperty());
+            if (specs.length > 1) {
+                pipeline.setInferencePool(engine.getInferencePool());
+            }
+            pipeline.start();
+            pipelines.add(pipeline);
+        }
+
+        long frames = 0;
+        for (int i = 0; i < specs.length; i++) {
+            RecognitionPipeline pipeline = pipelines.get(i);
+            pipeline.awaitCompletion();
+            sources.get(i).stop();
+            frames += pipeline.getFramesProcessed();
+            System.out.println(specs[i].trim() + ": " + pipeline.summary());
+        }
+        if (specs.length > 1) {
+            double seconds = (System.nanoTime() - t0) / 1e9;
+            System.out.println(String.format(Locale.US, "All sources: %d frames in %.1f s, %.1f fps combined",
+                    frames, seconds, frames / Math.max(1e-9, seconds)));
+        }
+        engine.shutdown();
+        detectors.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.faceattendance;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * The attendance table's check-in/check-out rules, without the UI around them.
+ * <p>
+ * A recognized student is checked in on their first recognition of the day and checked
+ * out on the next one. A session left open on an earlier day blocks check-in until the
+ * student logs out. The app turns the returned {@link Mark} into log lines and dialogs;
+ * the benchmarks call it against an embedded database.
+ */
+public class AttendanceStore {
+
+    public enum Outcome { CHECKED_IN, CHECKED_OUT, PREVIOUS_SESSION_OPEN, NO_OPEN_SESSION, ALREADY_CHECKED_OUT }
+
+    public static final class Mark {
+        public final Outcome outcome;
+        public final LocalDate openDate; // the earlier open session, for PREVIOUS_SESSION_OPEN
+        public final String name;
+        public final String rollno;
+
+        Mark(Outcome outcome, LocalDate openDate, String name, String rollno) {
+            this.outcome = outcome;
+            this.openDate = openDate;
+            this.name = name;
+            this.rollno = rollno;
+        }
+    }
+
+    private final Connection conn;
+
+    public AttendanceStore(Connection conn) {
+        this.conn = conn;
+    }
+
+    // Check-in, or check-out when the student already has today's session
+    public Mark mark(int studentId, LocalDate today, LocalTime time) throws SQLException {
+        // Check if student has an open session (check-in without check-out)
+        try (PreparedStatement openPs = conn.prepareStatement(
+                "SELECT id, attendance_date FROM attendance WHERE student_id = ? AND check_out_time IS NULL ORDER BY attendance_date DESC LIMIT 1")) {
+            openPs.setInt(1, studentId);
+            try (ResultSet openRs = openPs.executeQuery()) {
+                if (openRs.next()) {
+                    LocalDate openDate = openRs.getDate("attendance_date").toLocalDate();
+                    // If open session is from today, mark check-out; from a previous day, require logout first
+                    if (openDate.equals(today)) return checkOut(studentId, today, time);
+                    return new Mark(Outcome.PREVIOUS_SESSION_OPEN, openDate, null, null);
+                }
+            }
+        }
+
+        // No open session, check if already checked in today
+        try (PreparedStatement checkToday = conn.prepareStatement(
+                "SELECT id FROM attendance WHERE student_id = ? AND attendance_date = ?")) {
+            checkToday.setInt(1, studentId);
+            checkToday.setDate(2, Date.valueOf(today));
+            try (ResultSet todayRs = checkToday.executeQuery()) {
+                // Already checked in today, this should be check-out
+                if (todayRs.next()) return checkOut(studentId, today, time);
+            }
+        }
+
+        // New check-in for today
+        try (PreparedStatement ins = conn.prepareStatement(
+                "INSERT INTO attendance (student_id, attendance_date, check_in_time, status) VALUES (?, ?, ?, 'Present')")) {
+            ins.setInt(1, studentId);
+            ins.setDate(2, Date.valueOf(today));
+            ins.setTime(3, Time.valueOf(time));
+            ins.executeUpdate();
+        }
+        return withStudent(Outcome.CHECKED_IN, studentId);
+    }
+
+    public Mark checkOut(int studentId, LocalDate today, LocalTime time) throws SQLException {
+        // Ensure a check-in for today exists
+        try (PreparedStatement chk = conn.prepareStatement(
+                "SELECT id FROM attendance WHERE student_id = ? AND attendance_date = ? AND check_out_time IS NULL")) {
+            chk.setInt(1, studentId);
+            chk.setDate(2, Date.valueOf(today));
+            try (ResultSet chkRs = chk.executeQuery()) {
+                if (!chkRs.next()) return new Mark(Outcome.NO_OPEN_SESSION, null, null, null);
+            }
+        }
+
+        // Update check_out_time only if not already set
+        try (PreparedStatement upd = conn.prepareStatement(
+                "UPDATE attendance SET check_out_time = ? WHERE student_id = ? AND attendance_date = ? AND check_out_time IS NULL")) {
+            upd.setTime(1, Time.valueOf(time));
+            upd.setInt(2, studentId);
+            upd.setDate(3, Date.valueOf(today));
+            if (upd.executeUpdate() == 0) return new Mark(Outcome.ALREADY_CHECKED_OUT, null, null, null);
+        }
+        return withStudent(Outcome.CHECKED_OUT, studentId);
+    }
+
+    // roll & name for log and audit
+    private Mark withStudent(Outcome outcome, int studentId) throws SQLException {
+        String name = "", rollno = "";
+        try (PreparedStatement q2 = conn.prepareStatement("SELECT name, rollno FROM students WHERE id = ?")) {
+            q2.setInt(1, studentId);
+            try (ResultSet r2 = q2.executeQuery()) {
+                if (r2.next()) { name = r2.getString("name"); rollno = r2.getString("rollno"); }
+            }
+        }
+        return new Mark(outcome, null, name, rollno);
+    }
+}
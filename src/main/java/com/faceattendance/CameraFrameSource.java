@@ -0,0 +1,54 @@
+package com.faceattendance;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameGrabber;
+
+// Live webcam via OpenCV's VideoCapture
+public class CameraFrameSource implements FrameSource {
+    private final int deviceIndex;
+    private OpenCVFrameGrabber grabber;
+    private boolean grayscale;
+
+    public CameraFrameSource(int deviceIndex) {
+        this.deviceIndex = deviceIndex;
+    }
+
+    @Override
+    public void setGrayscale(boolean grayscale) {
+        this.grayscale = grayscale;
+    }
+
+    @Override
+    public void start() throws Exception {
+        grabber = new OpenCVFrameGrabber(deviceIndex);
+        if (grayscale) grabber.setImageMode(FrameGrabber.ImageMode.GRAY);
+        grabber.start();
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        return grabber.grab();
+    }
+
+    @Override
+    public void stop() {
+        try {
+            if (grabber != null) {
+                grabber.stop();
+                grabber.release();
+                grabber = null;
+            }
+        } catch (Exception ignored) {}
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    @Override
+    public String describe() {
+        return "camera " + deviceIndex;
+    }
+}
@@ -0,0 +1,267 @@
+package com.faceattendance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_videoio.VideoCapture;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Keeps a webcam open for the life of the app so check-in windows and enrollment
+ * do not pay the 1-2 s device open and auto-exposure settling every time.
+ * <p>
+ * One capture thread per device. While somebody is subscribed it grabs, decodes and
+ * publishes every frame; with no subscribers it only dequeues frames from the driver
+ * (VideoCapture.grab without retrieve), which keeps exposure settled and the driver
+ * queue fresh for almost no CPU. Consumers call {@link #subscribe()} and get an ordinary
+ * {@link FrameSource}; stopping it unsubscribes, the device stays open.
+ * <p>
+ * When every subscriber asked for grayscale (a detection profile with gray capture), the
+ * capture thread converts each frame once and publishes it in gray, so subscribers copy
+ * a third of the bytes and nobody runs cvtColor again. As soon as one subscriber wants
+ * color, frames are published in BGR and the gray subscribers convert their own copy.
+ * <p>
+ * FrameSources hands out subscriptions for camera:N specs unless
+ * -Dfaceattendance.camera.shared=false, which opens the device per consumer as before.
+ */
+public class CameraService {
+    public static final String SHARED_PROPERTY = "faceattendance.camera.shared";
+
+    private static final Map<Integer, CameraService> SERVICES = new TreeMap<>();
+
+    private final int deviceIndex;
+    private final Object lock = new Object();
+    private final Mat latest = new Mat(); // guarded by lock
+    private long seq;                     // guarded by lock, bumped for every published frame
+    private int subscribers;              // guarded by lock
+    private int graySubscribers;          // guarded by lock, those of subscribers that want grayscale
+    private Thread thread;                // guarded by lock
+    private volatile boolean open;
+    private volatile String error;
+    private volatile long openMillis = -1;
+    private volatile long lastFirstFrameMillis = -1;
+    private volatile long published, idleGrabs;
+
+    private CameraService(int deviceIndex) {
+        this.deviceIndex = deviceIndex;
+    }
+
+    public static synchronized CameraService forDevice(int deviceIndex) {
+        CameraService s = SERVICES.get(deviceIndex);
+        if (s == null) {
+            s = new CameraService(deviceIndex);
+            SERVICES.put(deviceIndex, s);
+        }
+        return s;
+    }
+
+    public static boolean isShared() {
+        return Boolean.parseBoolean(System.getProperty(SHARED_PROPERTY, "true"));
+    }
+
+    // Opens the device in the background so the first check-in finds it warm
+    public void warmUp() {
+        synchronized (lock) {
+            if (thread != null) return;
+            error = null;
+            thread = new Thread(this::captureLoop, "camera-" + deviceIndex);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // Frames from this device for one consumer; start() subscribes and stop() unsubscribes
+    public FrameSource subscribe() {
+        return new Subscription();
+    }
+
+    private void captureLoop() {
+        long t0 = System.nanoTime();
+        VideoCapture capture = new VideoCapture();
+        Mat frame = new Mat();
+        Mat grayFrame = new Mat();
+        try {
+            if (!capture.open(deviceIndex) || !capture.isOpened()) {
+                throw new IllegalStateException("Cannot open camera " + deviceIndex);
+            }
+            // the first frame is what actually takes long on most webcams
+            if (!capture.read(frame)) {
+                throw new IllegalStateException("Camera " + deviceIndex + " delivered no frame");
+            }
+            openMillis = (System.nanoTime() - t0) / 1_000_000L;
+            open = true;
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean wanted, gray;
+                synchronized (lock) {
+                    wanted = subscribers > 0;
+                    gray = wanted && graySubscribers == subscribers;
+                }
+                if (!capture.grab()) {
+                    throw new IllegalStateException("Camera " + deviceIndex + " stopped delivering frames");
+                }
+                if (!wanted) {
+                    idleGrabs++;
+                    continue;
+                }
+                if (!capture.retrieve(frame) || frame.empty()) continue;
+                if (gray && frame.channels() != 1) cvtColor(frame, grayFrame, COLOR_BGR2GRAY);
+                synchronized (lock) {
+                    (gray && frame.channels() != 1 ? grayFrame : frame).copyTo(latest);
+                    seq++;
+                    lock.notifyAll();
+                }
+                published++;
+            }
+        } catch (Exception ex) {
+            error = ex.getMessage();
+        } finally {
+            open = false;
+            capture.release();
+            capture.close();
+            frame.close();
+            grayFrame.close();
+            synchronized (lock) {
+                thread = null;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Releases the device; the next subscriber opens it again
+    public void shutdown() {
+        Thread t;
+        synchronized (lock) {
+            t = thread;
+        }
+        if (t == null) return;
+        t.interrupt();
+        try {
+            t.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static synchronized void shutdownAll() {
+        for (CameraService s : SERVICES.values()) {
+            s.shutdown();
+        }
+    }
+
+    public String describe() {
+        int subs;
+        synchronized (lock) {
+            subs = subscribers;
+        }
+        String state = open ? "open" : (error != null ? "failed: " + error : "closed");
+        return String.format(Locale.US, "camera %d: %s, %d subscriber(s), device open %s, last time-to-first-frame %s, %d frames published, %d idle grabs",
+                deviceIndex, state, subs, millis(openMillis), millis(lastFirstFrameMillis), published, idleGrabs);
+    }
+
+    public static synchronized List<String> describeAll() {
+        List<String> lines = new ArrayList<>();
+        for (CameraService s : SERVICES.values()) {
+            lines.add(s.describe());
+        }
+        return lines;
+    }
+
+    private static String millis(long ms) {
+        return ms < 0 ? "n/a" : ms + " ms";
+    }
+
+    private class Subscription implements FrameSource {
+        private final OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        private final Mat mine = new Mat();
+        private final Mat converted = new Mat();
+        private boolean grayscale;
+        private boolean countedGray; // what start() added to graySubscribers
+        private boolean subscribed;
+        private long lastSeq;
+        private long subscribedNanos;
+        private boolean firstFrame;
+        private volatile long firstFrameMillis = -1;
+
+        @Override
+        public void setGrayscale(boolean grayscale) {
+            this.grayscale = grayscale;
+        }
+
+        @Override
+        public void start() {
+            synchronized (lock) {
+                subscribers++;
+                countedGray = grayscale;
+                if (countedGray) graySubscribers++;
+                subscribed = true;
+                lastSeq = seq; // only frames captured from now on
+            }
+            subscribedNanos = System.nanoTime();
+            firstFrame = true;
+            warmUp();
+        }
+
+        @Override
+        public Frame grab() throws Exception {
+            synchronized (lock) {
+                while (subscribed && seq == lastSeq) {
+                    if (thread == null) {
+                        throw new IllegalStateException(error != null ? error : "Camera " + deviceIndex + " is closed");
+                    }
+                    lock.wait(500);
+                }
+                if (!subscribed) return null;
+                lastSeq = seq;
+                latest.copyTo(mine);
+            }
+            if (firstFrame) {
+                firstFrame = false;
+                firstFrameMillis = (System.nanoTime() - subscribedNanos) / 1_000_000L;
+                lastFirstFrameMillis = firstFrameMillis;
+            }
+            // with mixed subscribers frames come in BGR; a color subscriber may also get the
+            // one gray frame that was in flight when it subscribed
+            if (grayscale && mine.channels() != 1) {
+                cvtColor(mine, converted, COLOR_BGR2GRAY);
+                return converter.convert(converted);
+            }
+            if (!grayscale && mine.channels() == 1) {
+                cvtColor(mine, converted, COLOR_GRAY2BGR);
+                return converter.convert(converted);
+            }
+            return converter.convert(mine);
+        }
+
+        @Override
+        public void stop() {
+            synchronized (lock) {
+                if (subscribed) {
+                    subscribed = false;
+                    subscribers--;
+                    if (countedGray) graySubscribers--;
+                    lock.notifyAll();
+                }
+            }
+            mine.release();
+            converted.release();
+        }
+
+        @Override
+        public boolean isLive() {
+            return true;
+        }
+
+        @Override
+        public String describe() {
+            return "camera " + deviceIndex + " (shared" + (open ? ", warm" : "")
+                    + (firstFrameMillis >= 0 ? ", first frame after " + firstFrameMillis + " ms" : "") + ")";
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.faceattendance;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_objdetect.CascadeClassifier;
+
+// Haar or LBP cascade; both are run by the same CascadeClassifier, only the XML differs
+public class CascadeFaceDetector implements FaceDetector {
+    private final String name;
+    private final CascadeClassifier cascade;
+    private final DetectionProfile profile;
+
+    public CascadeFaceDetector(String name, String cascadePath, DetectionProfile profile) {
+        CascadeClassifier c = new CascadeClassifier(cascadePath);
+        if (c.empty()) {
+            c.close();
+            throw new IllegalStateException("Could not load cascade: " + cascadePath);
+        }
+        this.name = name;
+        this.cascade = c;
+        this.profile = profile;
+    }
+
+    @Override
+    public List<Rectangle> detect(Mat gray, Rectangle roi) {
+        return profile.detect(cascade, gray, roi);
+    }
+
+    @Override
+    public String describe() {
+        return name + " cascade, " + profile;
+    }
+
+    @Override
+    public void close() {
+        cascade.close();
+    }
+}
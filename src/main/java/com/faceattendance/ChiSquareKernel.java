@@ -0,0 +1,42 @@
+package com.faceattendance;
+
+import java.nio.ByteBuffer;
+
+/**
+ * OpenCV's HISTCMP_CHISQR_ALT distance, 2 * sum((g - p)^2 / (g + p)) over bins where
+ * g + p > 0, between a probe and one gallery histogram stored in a flat array or buffer.
+ * <p>
+ * All terms are non-negative, so the partial sum only grows: once it reaches
+ * abandonAt the sample cannot beat the current best and the kernel may stop early and
+ * return any value >= abandonAt.
+ * <p>
+ * {@link #best()} returns the Vector API kernel when the JVM has jdk.incubator.vector
+ * (run with --add-modules jdk.incubator.vector) and the plain loop otherwise.
+ */
+public interface ChiSquareKernel {
+    String VECTOR_PROPERTY = "faceattendance.lbph.vector";
+
+    // Floats between early-abandon checks: four 256-bin cells
+    int ABANDON_BLOCK = 1024;
+
+    float distance(float[] probe, float[] gallery, int offset, float abandonAt);
+
+    // gallery holds native-order floats; byteOffset is where this sample starts
+    float distance(float[] probe, ByteBuffer gallery, int byteOffset, float abandonAt);
+
+    String name();
+
+    static ChiSquareKernel best() {
+        if (Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) {
+            try {
+                // compiled separately against JDK 17+; absent or unlinkable on other JVMs
+                ChiSquareKernel k = (ChiSquareKernel) Class.forName("com.faceattendance.VectorChiSquareKernel")
+                        .getDeclaredConstructor().newInstance();
+                if (ScalarChiSquareKernel.selfTest(k)) return k;
+            } catch (Throwable ignored) {
+                // jdk.incubator.vector not resolved: fall through to the scalar loop
+            }
+        }
+        return new ScalarChiSquareKernel();
+    }
+}
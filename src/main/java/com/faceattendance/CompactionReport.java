@@ -0,0 +1,139 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_GRAYSCALE;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
+
+/**
+ * What gallery compaction costs and saves: for k = 1, 3, 5 prototypes per student and
+ * for all samples, the model size, search time per face and identification accuracy.
+ * <p>
+ * Every 5th image of each student is held out as a probe and the rest are compacted
+ * with {@link GalleryCompactor}. Accuracy is reported as rank-1 (nearest sample has the
+ * right student) and at the app's threshold of 75 (accepted and right, accepted and
+ * wrong). Search time excludes the histogram of the probe, which is the same for all k.
+ * <pre>
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.CompactionReport -Dexec.args="dataset [k,k,...]"
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.CompactionReport -Dexec.args="synthetic:200"
+ * </pre>
+ * synthetic:N uses N generated students with 25 samples each and needs no natives.
+ */
+public class CompactionReport {
+    private static final int HOLD_OUT_EVERY = 5;
+    private static final double APP_THRESHOLD = 75.0;
+
+    public static void main(String[] args) {
+        String spec = args.length > 0 ? args[0] : "dataset";
+        String ks = args.length > 1 ? args[1] : "1,3,5";
+        LbphFeatures features = LbphFeatures.defaults();
+        ChiSquareKernel kernel = ChiSquareKernel.best();
+
+        List<float[]> train = new ArrayList<>();
+        List<Integer> trainLabels = new ArrayList<>();
+        List<float[]> probes = new ArrayList<>();
+        List<Integer> probeLabels = new ArrayList<>();
+        if (spec.startsWith("synthetic:")) {
+            loadSynthetic(Integer.parseInt(spec.substring("synthetic:".length())), features, train, trainLabels, probes, probeLabels);
+        } else {
+            loadDataset(new File(spec), features, train, trainLabels, probes, probeLabels);
+        }
+        if (train.isEmpty() || probes.isEmpty()) {
+            System.err.println("No samples found in " + spec);
+            System.exit(2);
+        }
+        System.out.println(String.format(Locale.US, "%d gallery samples, %d probes, kernel %s",
+                train.size(), probes.size(), kernel.name()));
+        System.out.println(String.format(Locale.US, "%6s %9s %10s %10s %9s %11s %11s",
+                "k", "samples", "model MB", "search us", "rank-1", "accepted", "false acc"));
+
+        List<Integer> levels = new ArrayList<>();
+        for (String k : ks.split(",")) levels.add(Integer.parseInt(k.trim()));
+        levels.add(0);
+        for (int k : levels) {
+            long t0 = System.nanoTime();
+            List<Integer> keep = GalleryCompactor.select(train, trainLabels, k, kernel);
+            double compactSeconds = (System.nanoTime() - t0) / 1e9;
+            LbphGallery gallery = new LbphGallery(features.length(), false);
+            for (int i : keep) gallery.add(trainLabels.get(i), train.get(i));
+            LbphEngine engine = new LbphEngine(features, gallery, kernel, Double.MAX_VALUE);
+
+            int rank1 = 0, accepted = 0, falseAccepted = 0;
+            FaceMatcher.Match[] results = new FaceMatcher.Match[probes.size()];
+            for (int i = 0; i < probes.size(); i++) engine.nearest(probes.get(i)); // warm-up
+            t0 = System.nanoTime();
+            for (int i = 0; i < probes.size(); i++) results[i] = engine.nearest(probes.get(i));
+            double micros = (System.nanoTime() - t0) / 1e3 / probes.size();
+            for (int i = 0; i < probes.size(); i++) {
+                boolean right = results[i].label == probeLabels.get(i);
+                if (right) rank1++;
+                if (results[i].distance < APP_THRESHOLD) {
+                    if (right) accepted++;
+                    else falseAccepted++;
+                }
+            }
+            int n = probes.size();
+            System.out.println(String.format(Locale.US, "%6s %9d %10.1f %10.1f %8.1f%% %10.1f%% %10.1f%%%s",
+                    k == 0 ? "all" : String.valueOf(k), gallery.size(), gallery.bytes() / 1048576.0, micros,
+                    100.0 * rank1 / n, 100.0 * accepted / n, 100.0 * falseAccepted / n,
+                    k == 0 ? "" : String.format(Locale.US, "   (compacted in %.1f s)", compactSeconds)));
+        }
+    }
+
+    private static void loadSynthetic(int students, LbphFeatures features, List<float[]> train, List<Integer> trainLabels,
+                                      List<float[]> probes, List<Integer> probeLabels) {
+        Random random = new Random(11);
+        for (int s = 1; s <= students; s++) {
+            byte[] face = SyntheticFaces.student(random);
+            for (int i = 1; i <= 25; i++) {
+                float[] h = features.compute(SyntheticFaces.sample(face, random, 10.0), SyntheticFaces.SIZE, SyntheticFaces.SIZE);
+                add(i, s, h, train, trainLabels, probes, probeLabels);
+            }
+        }
+    }
+
+    private static void loadDataset(File dataset, LbphFeatures features, List<float[]> train, List<Integer> trainLabels,
+                                    List<float[]> probes, List<Integer> probeLabels) {
+        Loader.load(org.bytedeco.opencv.global.opencv_core.class);
+        File[] students = dataset.listFiles(File::isDirectory);
+        if (students == null) return;
+        Arrays.sort(students);
+        for (File dir : students) {
+            int label;
+            try {
+                label = Integer.parseInt(dir.getName());
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            File[] files = dir.listFiles((d, name) -> name.toLowerCase(Locale.ROOT).matches(".*\\.(png|jpg|jpeg|bmp|pgm)"));
+            if (files == null) continue;
+            Arrays.sort(files);
+            int i = 0;
+            for (File f : files) {
+                Mat img = imread(f.getAbsolutePath(), IMREAD_GRAYSCALE);
+                if (img == null || img.empty()) continue;
+                add(++i, label, features.compute(img), train, trainLabels, probes, probeLabels);
+                img.close();
+            }
+        }
+    }
+
+    private static void add(int position, int label, float[] h, List<float[]> train, List<Integer> trainLabels,
+                            List<float[]> probes, List<Integer> probeLabels) {
+        if (position % HOLD_OUT_EVERY == 0) {
+            probes.add(h);
+            probeLabels.add(label);
+        } else {
+            train.add(h);
+            trainLabels.add(label);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.faceattendance;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.RectVector;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.bytedeco.opencv.opencv_objdetect.CascadeClassifier;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * detectMultiScale settings plus the resolution detection runs at.
+ * <p>
+ * Students stand 0.5-1.5 m from the kiosk, so faces are never tiny: the "kiosk" and
+ * "fast" presets detect on a downscaled copy of the frame with explicit min/max face
+ * sizes and grab frames in grayscale, so each frame is converted once where it is
+ * captured and moves through the pipeline at a third of the size. (A shared camera
+ * converts once for all of its windows, but only while none of them wants color; see
+ * {@link CameraService}.) Boxes are always
+ * returned in full-resolution frame coordinates so the crop for recognition is unchanged.
+ * <p>
+ * The app picks a preset with -Dfaceattendance.detection.profile=default|kiosk|fast.
+ */
+public class DetectionProfile {
+    public static final String PROFILE_PROPERTY = "faceattendance.detection.profile";
+
+    private final String name;
+    private final double scaleFactor;
+    private final int minNeighbors;
+    private final int minFace;         // px at full resolution, 0 = no limit
+    private final int maxFace;         // px at full resolution, 0 = no limit
+    private final double detectScale; // 1.0 = detect on the full frame
+    private final boolean grayscaleCapture;
+
+    public DetectionProfile(String name, double scaleFactor, int minNeighbors, int minFace, int maxFace,
+                            double detectScale, boolean grayscaleCapture) {
+        this.name = name;
+        this.scaleFactor = scaleFactor;
+        this.minNeighbors = minNeighbors;
+        this.minFace = minFace;
+        this.maxFace = maxFace;
+        this.detectScale = detectScale;
+        this.grayscaleCapture = grayscaleCapture;
+    }
+
+    // OpenCV's detectMultiScale defaults on the full frame: what the app always did
+    public static final DetectionProfile DEFAULT = new DetectionProfile("default", 1.1, 3, 0, 0, 1.0, false);
+    // Half-resolution, faces 80-480 px, grayscale capture
+    public static final DetectionProfile KIOSK = new DetectionProfile("kiosk", 1.15, 4, 80, 480, 0.5, true);
+    // Third-resolution, coarser pyramid; for slow kiosk PCs
+    public static final DetectionProfile FAST = new DetectionProfile("fast", 1.2, 3, 100, 420, 0.33, true);
+
+    public static Map<String, DetectionProfile> presets() {
+        Map<String, DetectionProfile> m = new LinkedHashMap<>();
+        m.put(DEFAULT.name, DEFAULT);
+        m.put(KIOSK.name, KIOSK);
+        m.put(FAST.name, FAST);
+        return m;
+    }
+
+    public static DetectionProfile byName(String name) {
+        DetectionProfile p = presets().get(name == null ? "" : name.trim().toLowerCase(Locale.ROOT));
+        if (p == null) {
+            throw new IllegalArgumentException("Unknown detection profile: " + name + " (use " + presets().keySet() + ")");
+        }
+        return p;
+    }
+
+    public static DetectionProfile fromSystemProperty() {
+        return byName(System.getProperty(PROFILE_PROPERTY, DEFAULT.name));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMinFace() {
+        return minFace;
+    }
+
+    public int getMaxFace() {
+        return maxFace;
+    }
+
+    public double getDetectScale() {
+        return detectScale;
+    }
+
+    public boolean isGrayscaleCapture() {
+        return grayscaleCapture;
+    }
+
+    // Detects in the whole frame (roi == null) or inside roi; boxes come back in full-resolution frame coordinates.
+    // All temporary native objects live in a PointerScope and are freed before returning.
+    public List<Rectangle> detect(CascadeClassifier cascade, Mat gray, Rectangle roi) {
+        List<Rectangle> boxes = new ArrayList<>();
+        try (PointerScope scope = new PointerScope()) {
+            Mat img = roi == null ? gray : new Mat(gray, FaceTracker.toRect(roi));
+            if (detectScale < 1.0) {
+                Mat small = new Mat();
+                resize(img, small, new Size(), detectScale, detectScale, INTER_AREA);
+                img = small;
+            }
+
+            RectVector faces = new RectVector();
+            cascade.detectMultiScale(img, faces, scaleFactor, minNeighbors, 0,
+                    new Size(scaled(minFace), scaled(minFace)), new Size(scaled(maxFace), scaled(maxFace)));
+
+            Rectangle frame = new Rectangle(0, 0, gray.cols(), gray.rows());
+            int ox = roi == null ? 0 : roi.x;
+            int oy = roi == null ? 0 : roi.y;
+            for (int i = 0; i < faces.size(); i++) {
+                Rect f = faces.get(i);
+                Rectangle r = new Rectangle(ox + (int) Math.round(f.x() / detectScale),
+                        oy + (int) Math.round(f.y() / detectScale),
+                        (int) Math.round(f.width() / detectScale),
+                        (int) Math.round(f.height() / detectScale));
+                // rounding can push the box a pixel past the frame edge
+                boxes.add(r.intersection(frame));
+            }
+        }
+        return boxes;
+    }
+
+    private int scaled(int px) {
+        return px <= 0 ? 0 : Math.max(1, (int) Math.round(px * detectScale));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s (scale %.2f, factor %.2f, neighbors %d, face %d-%d px%s)",
+                name, detectScale, scaleFactor, minNeighbors, minFace, maxFace, grayscaleCapture ? ", gray capture" : "");
+    }
+}
@@ -0,0 +1,106 @@
+package com.faceattendance;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_objdetect.CascadeClassifier;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Compares the detection profiles on a recorded clip.
+ * <p>
+ * The clip is first run through the "default" profile (full resolution, OpenCV defaults)
+ * and those boxes are taken as the reference. Every preset is then replayed against the
+ * same clip and reported as detection frames per second (capture conversion + cvtColor +
+ * detectMultiScale) and recall: the share of reference faces it finds with IoU >= 0.5.
+ * <pre>
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.DetectionProfileReport \
+ *       -Dexec.args="video:clips/gate.mp4 [haarcascade_frontalface_alt.xml]"
+ * </pre>
+ */
+public class DetectionProfileReport {
+    private static final double MATCH_IOU = 0.5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: DetectionProfileReport <video:file|images:dir> [cascade.xml]");
+            System.exit(2);
+        }
+        String cascadePath = args.length > 1 ? args[1] : "haarcascade_frontalface_alt.xml";
+        Loader.load(org.bytedeco.opencv.global.opencv_core.class);
+        CascadeClassifier cascade = new CascadeClassifier(new File(cascadePath).getAbsolutePath());
+        if (cascade.empty()) {
+            System.err.println("Could not load cascade: " + cascadePath);
+            System.exit(1);
+        }
+
+        List<List<Rectangle>> reference = null;
+        System.out.println(String.format(Locale.US, "%-10s %8s %10s %8s  %s", "profile", "frames", "fps", "recall", "settings"));
+        for (DetectionProfile profile : DetectionProfile.presets().values()) {
+            long[] nanos = new long[1];
+            List<List<Rectangle>> boxes = run(args[0], profile, cascade, nanos);
+            if (reference == null) reference = boxes; // first preset is "default"
+            double fps = boxes.size() / Math.max(1e-9, nanos[0] / 1e9);
+            System.out.println(String.format(Locale.US, "%-10s %8d %10.1f %7.1f%%  %s",
+                    profile.getName(), boxes.size(), fps, 100.0 * recall(reference, boxes), profile));
+        }
+    }
+
+    // Detected boxes per frame; nanos[0] receives the time spent in detection
+    private static List<List<Rectangle>> run(String spec, DetectionProfile profile, CascadeClassifier cascade,
+                                             long[] nanos) throws Exception {
+        FrameSource source = FrameSources.fromSpec(spec);
+        if (source.isLive()) {
+            throw new IllegalArgumentException("The report needs a recorded source, got " + source.describe());
+        }
+        source.setGrayscale(profile.isGrayscaleCapture());
+        source.start();
+        OpenCVFrameConverter.ToMat convToMat = new OpenCVFrameConverter.ToMat();
+        Mat gray = new Mat();
+        List<List<Rectangle>> out = new ArrayList<>();
+        try {
+            Frame frame;
+            while ((frame = source.grab()) != null) {
+                long t0 = System.nanoTime();
+                Mat mat = convToMat.convert(frame);
+                if (mat == null) continue;
+                Mat g = mat;
+                if (mat.channels() != 1) {
+                    cvtColor(mat, gray, COLOR_BGR2GRAY);
+                    g = gray;
+                }
+                out.add(profile.detect(cascade, g, null));
+                nanos[0] += System.nanoTime() - t0;
+            }
+        } finally {
+            source.stop();
+            gray.release();
+        }
+        return out;
+    }
+
+    public static double recall(List<List<Rectangle>> reference, List<List<Rectangle>> found) {
+        int total = 0, hit = 0;
+        for (int i = 0; i < reference.size(); i++) {
+            List<Rectangle> got = i < found.size() ? found.get(i) : new ArrayList<>();
+            for (Rectangle ref : reference.get(i)) {
+                total++;
+                for (Rectangle r : got) {
+                    if (FaceTracker.iou(ref, r) >= MATCH_IOU) {
+                        hit++;
+                        break;
+                    }
+                }
+            }
+        }
+        return total == 0 ? 1.0 : hit / (double) total;
+    }
+}
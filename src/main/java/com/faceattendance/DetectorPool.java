@@ -0,0 +1,197 @@
+package com.faceattendance;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * Detection workers, each with its own pre-loaded {@link FaceDetector}.
+ * <p>
+ * Detector backends keep per-call scratch state inside the object (CascadeClassifier,
+ * FaceDetectorYN), so one must never be used by two threads at once. Here every worker
+ * thread owns exactly one detector for its whole life; callers hand work to the pool
+ * instead of touching a detector, and frames from several cameras are detected in
+ * parallel without locking. Model files are read once per worker when the pool is
+ * built, never on the detection path.
+ * <p>
+ * Large frames are split into vertical strips that overlap by the profile's largest
+ * face size, so every face lies wholly inside at least one strip. Strips run on
+ * different workers and faces found twice in an overlap are merged.
+ * <p>
+ * The pool is itself a FaceDetector, so a pipeline cannot tell it from a single backend.
+ */
+public class DetectorPool implements FaceDetector {
+    public static final String WORKERS_PROPERTY = "faceattendance.detection.workers";
+
+    // Frames at least this large (after the profile's downscale) are tiled across workers
+    private static final long TILE_MIN_PIXELS = 1280L * 720L;
+    private static final double MERGE_IOU = 0.3;
+
+    private final int workers;
+    private final DetectionProfile profile;
+    private final ExecutorService pool;
+    private final List<FaceDetector> all = new ArrayList<>();
+    private final ThreadLocal<FaceDetector> mine;
+    private final String description;
+
+    // factory is called once per worker, on the calling thread; a failure closes what was built and propagates
+    public DetectorPool(Supplier<FaceDetector> factory, DetectionProfile profile, int workers) {
+        this.workers = Math.max(1, workers);
+        this.profile = profile;
+        BlockingQueue<FaceDetector> unclaimed = new ArrayBlockingQueue<>(this.workers);
+        try {
+            for (int i = 0; i < this.workers; i++) {
+                FaceDetector d = factory.get();
+                all.add(d);
+                unclaimed.add(d);
+            }
+        } catch (RuntimeException ex) {
+            for (FaceDetector d : all) d.close();
+            throw ex;
+        }
+        this.description = this.workers + " x " + all.get(0).describe();
+        // a fixed pool has exactly one thread per detector; each claims one on first use and keeps it
+        this.mine = ThreadLocal.withInitial(unclaimed::remove);
+        AtomicInteger n = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.workers, r -> {
+            Thread t = new Thread(r, "detect-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // One worker per core unless -Dfaceattendance.detection.workers says otherwise
+    public static int defaultWorkers() {
+        return Math.max(1, Integer.getInteger(WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    // Runs a task on a worker with that worker's detector
+    public <T> Future<T> submit(Function<FaceDetector, T> task) {
+        return pool.submit(() -> task.apply(mine.get()));
+    }
+
+    // Detects on the pool, tiling large frames across workers; blocks until done.
+    // Interrupted callers get an empty list with their interrupt flag set.
+    @Override
+    public List<Rectangle> detect(Mat gray, Rectangle roi) {
+        Rectangle area = roi != null ? roi : new Rectangle(0, 0, gray.cols(), gray.rows());
+        List<Rectangle> tiles = tiles(area);
+        List<Future<List<Rectangle>>> parts = new ArrayList<>(tiles.size());
+        for (Rectangle tile : tiles) {
+            parts.add(submit(d -> d.detect(gray, tile)));
+        }
+        List<Rectangle> boxes = new ArrayList<>();
+        boolean interrupted = false;
+        // gray must not be touched after we return, so every part is waited for
+        for (Future<List<Rectangle>> f : parts) {
+            while (true) {
+                try {
+                    boxes.addAll(f.get());
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException("Detection failed: " + ex.getCause().getMessage(), ex.getCause());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        }
+        return tiles.size() > 1 ? merge(boxes) : boxes;
+    }
+
+    // Vertical strips over area, one per worker, overlapping by the largest face the profile looks for
+    List<Rectangle> tiles(Rectangle area) {
+        List<Rectangle> tiles = new ArrayList<>();
+        int overlap = profile.getMaxFace();
+        double scale = profile.getDetectScale();
+        boolean large = (long) (area.width * scale) * (long) (area.height * scale) >= TILE_MIN_PIXELS;
+        // without a max face size no overlap is safe, so such frames are never split
+        int count = (!large || overlap <= 0) ? 1 : workers;
+        // each strip must still hold a whole face next to the overlap
+        while (count > 1 && (area.width + (count - 1) * overlap) / count < 2 * overlap) count--;
+        if (count == 1) {
+            tiles.add(area);
+            return tiles;
+        }
+        int width = (area.width + (count - 1) * overlap + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            int x = area.x + i * (width - overlap);
+            int w = Math.min(width, area.x + area.width - x);
+            tiles.add(new Rectangle(x, area.y, w, area.height));
+        }
+        return tiles;
+    }
+
+    // Collapses boxes that are the same face seen from two overlapping strips into their average
+    static List<Rectangle> merge(List<Rectangle> boxes) {
+        List<Rectangle> merged = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        List<long[]> sums = new ArrayList<>();
+        for (Rectangle b : boxes) {
+            int match = -1;
+            for (int i = 0; i < merged.size(); i++) {
+                Rectangle m = merged.get(i);
+                Rectangle overlap = m.intersection(b);
+                boolean contained = !overlap.isEmpty()
+                        && (long) overlap.width * overlap.height >= 0.8 * Math.min((long) m.width * m.height, (long) b.width * b.height);
+                if (FaceTracker.iou(m, b) >= MERGE_IOU || contained) {
+                    match = i;
+                    break;
+                }
+            }
+            if (match < 0) {
+                merged.add(new Rectangle(b));
+                counts.add(1);
+                sums.add(new long[]{b.x, b.y, b.width, b.height});
+            } else {
+                long[] s = sums.get(match);
+                s[0] += b.x;
+                s[1] += b.y;
+                s[2] += b.width;
+                s[3] += b.height;
+                int n = counts.get(match) + 1;
+                counts.set(match, n);
+                merged.set(match, new Rectangle((int) (s[0] / n), (int) (s[1] / n), (int) (s[2] / n), (int) (s[3] / n)));
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public String describe() {
+        return description;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (FaceDetector d : all) {
+            d.close();
+        }
+        all.clear();
+    }
+}
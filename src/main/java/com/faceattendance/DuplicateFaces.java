@@ -0,0 +1,214 @@
+package com.faceattendance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+
+/**
+ * Finds the same face enrolled under two students.
+ * <p>
+ * check() is the 1:N test run during enrollment: the first good crops of the new
+ * student are matched against the trained gallery, and if most of them land on one
+ * existing student under the threshold, that student is reported.
+ * <p>
+ * audit() compares every student with every other without the quadratic cost:
+ * <ol>
+ *   <li>each student is reduced to a few prototypes (k-medoids of their samples)</li>
+ *   <li>blocking: an HNSW index holds each student's most central sample, and every
+ *       prototype asks it for its nearest students</li>
+ *   <li>only those candidate pairs are compared sample by sample, in parallel, keeping
+ *       the closest cross-student distance and how many of either student's samples
+ *       would be recognized as the other</li>
+ * </ol>
+ * At 10k students and the default 3 prototypes and 10 neighbours that is about 100k
+ * pairs instead of 50M.
+ */
+public final class DuplicateFaces {
+    public static final String THRESHOLD_PROPERTY = "faceattendance.duplicate.threshold";
+    public static final int PROBES = 5; // enrollment crops checked before capture goes on
+
+    private DuplicateFaces() {}
+
+    // The distance under which two faces count as the same person; the recognition threshold unless overridden
+    public static double thresholdFromSystemProperty(double recognitionThreshold) {
+        String s = System.getProperty(THRESHOLD_PROPERTY);
+        return s == null ? recognitionThreshold : Double.parseDouble(s.trim());
+    }
+
+    public static final class Hit {
+        public final int label;
+        public final int votes;
+        public final int probes;
+        public final double distance; // best distance among the agreeing probes
+
+        Hit(int label, int votes, int probes, double distance) {
+            this.label = label;
+            this.votes = votes;
+            this.probes = probes;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * The existing student most of the crops are recognized as, or null. Matches to
+     * exclude (the student being enrolled) are ignored.
+     */
+    public static Hit check(FaceMatcher matcher, List<byte[]> crops, int rows, int cols, int exclude, double threshold) {
+        Map<Integer, int[]> votes = new HashMap<>();
+        Map<Integer, Double> best = new HashMap<>();
+        try (FaceMatcher.Lease lease = matcher.lease()) {
+            Mat face = new Mat(rows, cols, CV_8UC1);
+            try {
+                for (byte[] crop : crops) {
+                    face.data().put(crop);
+                    FaceMatcher.Match m = lease.matcher().predict(face);
+                    if (m.label == -1 || m.label == exclude || m.distance >= threshold) continue;
+                    votes.computeIfAbsent(m.label, k -> new int[1])[0]++;
+                    best.merge(m.label, m.distance, Math::min);
+                }
+            } finally {
+                face.close();
+            }
+        }
+        for (Map.Entry<Integer, int[]> e : votes.entrySet()) {
+            if (2 * e.getValue()[0] > crops.size()) {
+                return new Hit(e.getKey(), e.getValue()[0], crops.size(), best.get(e.getKey()));
+            }
+        }
+        return null;
+    }
+
+    public static final class Pair {
+        public final int first, second;   // student ids, first < second
+        public final float distance;      // closest pair of samples
+        public final int confused;        // samples of either student whose nearest in the other is under the threshold
+        public final int samples;         // samples of both students
+
+        Pair(int first, int second, float distance, int confused, int samples) {
+            this.first = first;
+            this.second = second;
+            this.distance = distance;
+            this.confused = confused;
+            this.samples = samples;
+        }
+    }
+
+    public static final class Audit {
+        public final int students;
+        public final int candidatePairs; // compared sample by sample
+        public final List<Pair> pairs;   // under the threshold, closest first
+        public final long[] stageMillis; // prototypes, blocking, comparison
+
+        Audit(int students, int candidatePairs, List<Pair> pairs, long[] stageMillis) {
+            this.students = students;
+            this.candidatePairs = candidatePairs;
+            this.pairs = pairs;
+            this.stageMillis = stageMillis;
+        }
+    }
+
+    /**
+     * Student pairs whose closest samples are under the threshold. prototypes and
+     * neighbours (per student) set how wide the blocking is.
+     */
+    public static Audit audit(LbphEngine engine, int prototypes, int neighbours, double threshold, ForkJoinPool pool)
+            throws InterruptedException, ExecutionException {
+        LbphGallery gallery = engine.getGallery();
+        ChiSquareKernel kernel = engine.getKernel();
+        // sample indices per student; histograms are read from the gallery when needed, never all copied
+        Map<Integer, List<Integer>> byStudent = new LinkedHashMap<>();
+        for (int i = 0; i < gallery.size(); i++) {
+            int label = gallery.label(i);
+            if (label != -1) byStudent.computeIfAbsent(label, k -> new ArrayList<>()).add(i);
+        }
+        List<Integer> students = new ArrayList<>(byStudent.keySet());
+
+        long t0 = System.nanoTime();
+        // 1. prototypes
+        List<float[][]> protos = pool.submit(() -> students.parallelStream().map(s -> {
+            List<Integer> members = byStudent.get(s);
+            float[][] samples = new float[members.size()][];
+            for (int i = 0; i < samples.length; i++) samples[i] = gallery.histogram(members.get(i));
+            // [0] is the single most central sample, the rest the student's prototypes
+            int[] m = GalleryCompactor.medoids(samples, prototypes, kernel);
+            float[][] out = new float[m.length + 1][];
+            out[0] = samples[GalleryCompactor.medoids(samples, 1, kernel)[0]];
+            for (int i = 0; i < m.length; i++) out[i + 1] = samples[m[i]];
+            return out;
+        }).collect(Collectors.toList())).get();
+        // one node per student keeps the (sequential) index build short; all prototypes query it
+        LbphGallery centres = new LbphGallery(engine.getFeatures().length(), true);
+        for (int s = 0; s < students.size(); s++) centres.add(students.get(s), protos.get(s)[0]);
+
+        long t1 = System.nanoTime();
+        // 2. blocking: the students nearest to each of a student's prototypes
+        HnswIndex index = HnswIndex.build(centres, kernel);
+        List<Set<Long>> found = pool.submit(() -> IntStream.range(0, students.size()).parallel()
+                .mapToObj(s -> {
+                    Set<Long> pairs = new HashSet<>();
+                    int a = students.get(s);
+                    float[][] p = protos.get(s);
+                    for (int q = p.length > 1 ? 1 : 0; q < p.length; q++) {
+                        for (long key : index.search(p[q], neighbours + 1)) {
+                            int b = centres.label(HnswIndex.node(key));
+                            if (b != a) pairs.add(pairKey(Math.min(a, b), Math.max(a, b)));
+                        }
+                    }
+                    return pairs;
+                }).collect(Collectors.toList())).get();
+        Set<Long> candidates = new HashSet<>();
+        for (Set<Long> s : found) candidates.addAll(s);
+
+        long t2 = System.nanoTime();
+        // 3. exact comparison of the candidate pairs
+        List<Long> work = new ArrayList<>(candidates);
+        List<Pair> flagged = pool.submit(() -> work.parallelStream().map(key -> {
+            int a = (int) (key >>> 32), b = (int) (long) key;
+            return compare(gallery, a, byStudent.get(a), b, byStudent.get(b), kernel, threshold);
+        }).filter(p -> p != null).collect(Collectors.toList())).get();
+        flagged.sort((x, y) -> Float.compare(x.distance, y.distance));
+        long t3 = System.nanoTime();
+        return new Audit(students.size(), work.size(), flagged,
+                new long[] {(t1 - t0) / 1000000, (t2 - t1) / 1000000, (t3 - t2) / 1000000});
+    }
+
+    private static Pair compare(LbphGallery gallery, int a, List<Integer> as, int b, List<Integer> bs,
+                                ChiSquareKernel kernel, double threshold) {
+        float min = Float.MAX_VALUE;
+        int confused = 0;
+        float[] nearestB = new float[bs.size()];
+        Arrays.fill(nearestB, Float.MAX_VALUE);
+        for (int i : as) {
+            float[] x = gallery.histogram(i);
+            float nearest = Float.MAX_VALUE;
+            for (int j = 0; j < bs.size(); j++) {
+                // only distances under the threshold matter, so nothing needs to be computed past it
+                float d = gallery.distance(kernel, x, bs.get(j), (float) Math.min(threshold, Math.max(nearest, nearestB[j])));
+                if (d < nearest) nearest = d;
+                if (d < nearestB[j]) nearestB[j] = d;
+            }
+            if (nearest < threshold) confused++;
+            min = Math.min(min, nearest);
+        }
+        for (float d : nearestB) if (d < threshold) confused++;
+        if (min >= threshold) return null;
+        return new Pair(a, b, min, confused, as.size() + bs.size());
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,263 @@
+package com.faceattendance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Burst enrollment: every face crop the camera delivers goes into a ring buffer, and
+ * the samples saved for the student are picked from it afterwards instead of taking
+ * the first 25 faces seen.
+ * <p>
+ * Each crop is scored for
+ * <ul>
+ *   <li>sharpness: variance of the Laplacian, relative to the burst's median, so motion
+ *       blur is rejected whatever the camera</li>
+ *   <li>exposure: mean brightness near mid-grey and few clipped pixels</li>
+ *   <li>pose: left/right symmetry of the crop, which drops when the head is turned</li>
+ * </ul>
+ * Crops below the quality floor are discarded. From the rest, samples are chosen by
+ * farthest-point selection over their LBPH histograms (chi-square), starting from the
+ * best crop: each pick is the one farthest from everything picked so far, weighted by
+ * quality. Selection stops at the requested count or when the farthest remaining crop
+ * is a near-duplicate (closer than a quarter of the median pairwise distance), so a
+ * student who stood perfectly still gets fewer, non-redundant samples.
+ * <p>
+ * -Dfaceattendance.enroll.buffer sets the ring size (default 150 crops, about 5 s at
+ * 30 fps) and -Dfaceattendance.enroll.burstMillis how long to capture (default 3000).
+ */
+public class EnrollmentSelector {
+    public static final String BUFFER_PROPERTY = "faceattendance.enroll.buffer";
+    public static final String BURST_PROPERTY = "faceattendance.enroll.burstMillis";
+    public static final int DEFAULT_BUFFER = 150;
+    public static final int DEFAULT_BURST_MILLIS = 3000;
+
+    private static final double MIN_RELATIVE_SHARPNESS = 0.5; // of the burst's median
+    private static final double MIN_EXPOSURE = 0.35;
+    private static final double MIN_POSE = 0.5;
+    private static final double DUPLICATE_FRACTION = 0.25;   // of the median pairwise distance
+
+    public static final class Candidate {
+        public final byte[] pixels;  // rows x cols grayscale
+        public final long capturedNanos;
+        final double sharpness;      // Laplacian variance
+        final double exposure;       // 0..1
+        final double pose;           // 0..1
+        double quality;              // 0..1, set by select()
+        float[] histogram;
+
+        Candidate(byte[] pixels, long capturedNanos, double sharpness, double exposure, double pose) {
+            this.pixels = pixels;
+            this.capturedNanos = capturedNanos;
+            this.sharpness = sharpness;
+            this.exposure = exposure;
+            this.pose = pose;
+        }
+
+        public double getQuality() {
+            return quality;
+        }
+    }
+
+    private final int rows, cols;
+    private final Candidate[] ring;
+    private final LbphFeatures features;
+    private final ChiSquareKernel kernel;
+    private int next;
+    private int count;
+    private long offered;
+
+    // what the last select() did, for describe()
+    private int blurred, badlyLit, turned, duplicates, kept;
+
+    public EnrollmentSelector(int rows, int cols, int capacity, LbphFeatures features, ChiSquareKernel kernel) {
+        this.rows = rows;
+        this.cols = cols;
+        this.ring = new Candidate[Math.max(1, capacity)];
+        this.features = features;
+        this.kernel = kernel;
+    }
+
+    public static EnrollmentSelector fromSystemProperties(int rows, int cols) {
+        return new EnrollmentSelector(rows, cols, Integer.getInteger(BUFFER_PROPERTY, DEFAULT_BUFFER),
+                LbphFeatures.defaults(), ChiSquareKernel.best());
+    }
+
+    public static int burstMillisFromSystemProperty() {
+        return Math.max(0, Integer.getInteger(BURST_PROPERTY, DEFAULT_BURST_MILLIS));
+    }
+
+    // Scores the crop and keeps it, replacing the oldest once the ring is full; the array is not copied
+    public void offer(byte[] pixels, long capturedNanos) {
+        Candidate c = new Candidate(pixels, capturedNanos, laplacianVariance(pixels), exposure(pixels), symmetry(pixels));
+        ring[next] = c;
+        next = (next + 1) % ring.length;
+        count = Math.min(count + 1, ring.length);
+        offered++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long offered() {
+        return offered;
+    }
+
+    // Crops in the ring that currently pass the quality floor
+    public int acceptable() {
+        double floor = sharpnessFloor();
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (passes(ring[i], floor)) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Up to n diverse, good-quality crops, best first. Falls back to the sharpest crop
+     * when nothing passes the quality floor, so an enrollment never ends empty-handed.
+     */
+    public List<Candidate> select(int n) {
+        blurred = badlyLit = turned = duplicates = kept = 0;
+        List<Candidate> pool = new ArrayList<>();
+        double floor = sharpnessFloor();
+        double maxSharpness = 0;
+        for (int i = 0; i < count; i++) maxSharpness = Math.max(maxSharpness, ring[i].sharpness);
+        for (int i = 0; i < count; i++) {
+            Candidate c = ring[i];
+            if (c.sharpness < floor) blurred++;
+            else if (c.exposure < MIN_EXPOSURE) badlyLit++;
+            else if (c.pose < MIN_POSE) turned++;
+            else pool.add(c);
+            c.quality = 0.5 * (maxSharpness > 0 ? c.sharpness / maxSharpness : 0) + 0.25 * c.exposure + 0.25 * c.pose;
+        }
+        if (pool.isEmpty()) {
+            Candidate sharpest = null;
+            for (int i = 0; i < count; i++) {
+                if (sharpest == null || ring[i].sharpness > sharpest.sharpness) sharpest = ring[i];
+            }
+            List<Candidate> one = new ArrayList<>();
+            if (sharpest != null && n > 0) one.add(sharpest);
+            kept = one.size();
+            return one;
+        }
+        pool.sort((a, b) -> Double.compare(b.quality, a.quality));
+        for (Candidate c : pool) {
+            if (c.histogram == null) c.histogram = features.compute(c.pixels, rows, cols);
+        }
+
+        // nearest-selected distance of every remaining candidate, updated after each pick
+        int m = pool.size();
+        float[] nearest = new float[m];
+        Arrays.fill(nearest, Float.MAX_VALUE);
+        boolean[] taken = new boolean[m];
+        double duplicateBelow = DUPLICATE_FRACTION * medianPairwise(pool);
+        List<Candidate> chosen = new ArrayList<>();
+        int pick = n > 0 ? 0 : -1; // the best-quality crop comes first
+        while (pick >= 0 && chosen.size() < n) {
+            taken[pick] = true;
+            Candidate p = pool.get(pick);
+            chosen.add(p);
+            pick = -1;
+            double best = 0;
+            for (int i = 0; i < m; i++) {
+                if (taken[i]) continue;
+                float d = kernel.distance(p.histogram, pool.get(i).histogram, 0, Float.MAX_VALUE);
+                if (d < nearest[i]) nearest[i] = d;
+                if (nearest[i] < duplicateBelow) continue;
+                double score = nearest[i] * (0.5 + 0.5 * pool.get(i).quality);
+                if (score > best) {
+                    best = score;
+                    pick = i;
+                }
+            }
+        }
+        kept = chosen.size();
+        for (int i = 0; i < m; i++) {
+            if (!taken[i] && nearest[i] < duplicateBelow) duplicates++;
+        }
+        return chosen;
+    }
+
+    public String describe() {
+        return String.format(Locale.US, "kept %d of %d frames (%d blurred, %d badly lit, %d turned away, %d near-duplicates)",
+                kept, offered, blurred, badlyLit, turned, duplicates);
+    }
+
+    private boolean passes(Candidate c, double sharpnessFloor) {
+        return c.sharpness >= sharpnessFloor && c.exposure >= MIN_EXPOSURE && c.pose >= MIN_POSE;
+    }
+
+    private double sharpnessFloor() {
+        if (count == 0) return 0;
+        double[] s = new double[count];
+        for (int i = 0; i < count; i++) s[i] = ring[i].sharpness;
+        Arrays.sort(s);
+        return MIN_RELATIVE_SHARPNESS * s[count / 2];
+    }
+
+    // Median chi-square distance over (a sample of) the candidate pairs
+    private double medianPairwise(List<Candidate> pool) {
+        int m = pool.size();
+        if (m < 2) return 0;
+        int step = Math.max(1, m / 40); // at most about 40x40 pairs
+        List<Float> d = new ArrayList<>();
+        for (int i = 0; i < m; i += step) {
+            for (int j = i + 1; j < m; j += step) {
+                d.add(kernel.distance(pool.get(i).histogram, pool.get(j).histogram, 0, Float.MAX_VALUE));
+            }
+        }
+        if (d.isEmpty()) return 0;
+        d.sort(null);
+        return d.get(d.size() / 2);
+    }
+
+    // 4-neighbour Laplacian, variance over the interior
+    double laplacianVariance(byte[] p) {
+        double sum = 0, sumSq = 0;
+        int n = 0;
+        for (int y = 1; y < rows - 1; y++) {
+            int row = y * cols;
+            for (int x = 1; x < cols - 1; x++) {
+                int i = row + x;
+                int lap = (p[i - 1] & 0xFF) + (p[i + 1] & 0xFF) + (p[i - cols] & 0xFF) + (p[i + cols] & 0xFF) - 4 * (p[i] & 0xFF);
+                sum += lap;
+                sumSq += (double) lap * lap;
+                n++;
+            }
+        }
+        if (n == 0) return 0;
+        double mean = sum / n;
+        return sumSq / n - mean * mean;
+    }
+
+    // 1 at mid-grey with nothing clipped; falls with distance from mid-grey and with clipped pixels
+    static double exposure(byte[] p) {
+        long sum = 0;
+        int clipped = 0;
+        for (byte b : p) {
+            int v = b & 0xFF;
+            sum += v;
+            if (v < 10 || v > 245) clipped++;
+        }
+        double mean = (double) sum / p.length;
+        double score = 1.0 - Math.abs(mean - 128) / 128.0 - 2.0 * clipped / p.length;
+        return Math.max(0, Math.min(1, score));
+    }
+
+    // 1 for a perfectly mirror-symmetric crop; a head turned sideways is much less symmetric
+    double symmetry(byte[] p) {
+        long diff = 0;
+        int half = cols / 2;
+        for (int y = 0; y < rows; y++) {
+            int row = y * cols;
+            for (int x = 0; x < half; x++) {
+                diff += Math.abs((p[row + x] & 0xFF) - (p[row + cols - 1 - x] & 0xFF));
+            }
+        }
+        double meanDiff = (double) diff / ((long) rows * half);
+        return Math.max(0, 1.0 - meanDiff / 64.0);
+    }
+}
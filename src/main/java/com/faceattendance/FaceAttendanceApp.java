@@ -11,10 +11,13 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.awt.event.*;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -25,24 +28,20 @@ import java.net.URI;
 
 import com.formdev.flatlaf.FlatLightLaf;
 
-import org.bytedeco.javacv.OpenCVFrameGrabber;
 import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.OpenCVFrameConverter;
-import org.bytedeco.javacv.Java2DFrameConverter;
 
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.bytedeco.opencv.opencv_core.Rect;
-import org.bytedeco.opencv.opencv_core.RectVector;
 import org.bytedeco.opencv.opencv_core.Size;
 import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
 import org.bytedeco.opencv.opencv_core.MatVector;
 
 import org.bytedeco.javacpp.IntPointer;
-import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.PointerScope;
 
 import static org.bytedeco.opencv.global.opencv_imgproc.*;
 import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
-import org.bytedeco.opencv.opencv_objdetect.CascadeClassifier;
 import org.bytedeco.javacpp.Loader;
 
 public class FaceAttendanceApp extends JFrame {
@@ -51,12 +50,11 @@ public class FaceAttendanceApp extends JFrame {
     private CardLayout contentCards;
     private JPanel contentPanel;
     private JTable studentsTable;
-    private JLabel cameraLabel;
+    private volatile VideoPanel cameraView; // where the active camera session draws
     private JTextArea logArea;
     private JLabel statusBar;
     private JProgressBar enrollBar;
     private JDialog trainingDialog;
-    private BufferedImage lastCameraFrame; // cache for responsive resizing
 
     // Dashboard statistics labels
     private JLabel totalStudentsLabel;
@@ -76,26 +74,25 @@ public class FaceAttendanceApp extends JFrame {
 
     // DB
     private Connection conn;
+    private String dbUrl, dbUser, dbPassword; // what conn was opened with, for work that needs its own transaction
 
     // Face / camera helpers
-    private CascadeClassifier faceCascade;
-    private volatile boolean recognitionRunning = false;
-    private volatile boolean stopAfterFirstRecognize = false; // auto close mode for Mark Attendance
-    private volatile boolean checkoutMode = false; // if true, mark check-out instead of check-in
-    private OpenCVFrameGrabber grabber;
-
-    // Separate recognition window controls
-    private JDialog recognitionDialog;
-    private JLabel recognitionLabel; // video label used inside dialog
-    private volatile boolean usingRecognitionDialog = false;
-    private volatile boolean waitingToClose = false;
-    private volatile long closeAtMillis = 0L;
+
+    // Recognition windows, one per gate camera; they share the model and inference pool in engine
+    private final Map<String, RecognitionSession> sessions = new ConcurrentHashMap<>();
+    private final Object engineLock = new Object();
+    private RecognitionEngine engine; // guarded by engineLock, released when the last session ends
+    private final Object detectorLock = new Object();
+    private DetectorPool detectorPool; // guarded by detectorLock, loaded once and kept for the app's life
+    // Serializes full training with incremental enrollment/removal so no change is lost when the journal is reset
+    private final Object modelLock = new Object();
 
     // Paths & settings
     private final File datasetDir = new File("dataset");
     private final File modelsDir = new File("models");
     private final String cascadeFile = "haarcascade_frontalface_alt.xml"; // put in project root
-    private final String modelFile = "models/lbph_model.xml";
+    // Versioned models and the resident one the gates share
+    private final ModelRegistry models = new ModelRegistry(modelsDir, this::log);
     private final int ENROLL_SAMPLES = 25; // images per student
     private final double THRESHOLD = 75.0; // LBPH distance threshold (tune it)
 
@@ -193,7 +190,7 @@ public class FaceAttendanceApp extends JFrame {
         pack(); // Pack to preferred size
 
         // Initialize components
-        cameraLabel = new JLabel();
+        cameraView = new VideoPanel();
         enrollBar = new JProgressBar();
 
         // DB connect
@@ -260,14 +257,19 @@ public class FaceAttendanceApp extends JFrame {
             
             // Try to connect to MySQL
             try {
-                conn = DriverManager.getConnection("jdbc:mysql://localhost:3306/face_recognition_db", "root", "1234");
+                dbUrl = "jdbc:mysql://localhost:3306/face_recognition_db";
+                dbUser = "root";
+                dbPassword = "1234";
+                conn = DriverManager.getConnection(dbUrl, dbUser, dbPassword);
                 log("Connected to MySQL database successfully.");
             } catch (SQLException e) {
                 // If MySQL connection fails, try SQLite as fallback
                 log("MySQL connection failed: " + e.getMessage() + ". Trying SQLite as fallback...");
                 Class.forName("org.sqlite.JDBC");
                 String dbPath = new File("face_recognition.db").getAbsolutePath();
-                conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+                dbUrl = "jdbc:sqlite:" + dbPath;
+                dbUser = dbPassword = null;
+                conn = DriverManager.getConnection(dbUrl);
                 log("Connected to SQLite database: " + dbPath);
             }
             
@@ -481,64 +483,17 @@ public class FaceAttendanceApp extends JFrame {
         try {
             LocalDate today = LocalDate.now();
             LocalTime time = LocalTime.now();
-
-            // Check if student has an open session (check-in without check-out)
-            PreparedStatement openPs = conn.prepareStatement(
-                    "SELECT id, attendance_date FROM attendance WHERE student_id = ? AND check_out_time IS NULL ORDER BY attendance_date DESC LIMIT 1");
-            openPs.setInt(1, studentId);
-            ResultSet openRs = openPs.executeQuery();
-
-            if (openRs.next()) {
-                LocalDate openDate = openRs.getDate("attendance_date").toLocalDate();
-
-                // If open session is from today, mark check-out
-                if (openDate.equals(today)) {
-                    markLogoutDB(studentId); // Mark check-out for today's session
-                    return;
-                } else {
-                    // If open session is from previous day, require logout first
-                    log("Cannot check-in: previous session from " + openDate + " is not logged out. Please logout first.");
-                    if (!usingRecognitionDialog) {
-                        JOptionPane.showMessageDialog(this,
-                                "Cannot mark attendance. You have a previous session (" + openDate + ") without logout. Please logout first.",
-                                "Logout Required", JOptionPane.WARNING_MESSAGE);
-                    }
-                    return;
+            AttendanceStore.Mark m = new AttendanceStore(conn).mark(studentId, today, time);
+            if (m.outcome == AttendanceStore.Outcome.PREVIOUS_SESSION_OPEN) {
+                log("Cannot check-in: previous session from " + m.openDate + " is not logged out. Please logout first.");
+                if (sessions.isEmpty()) {
+                    JOptionPane.showMessageDialog(this,
+                            "Cannot mark attendance. You have a previous session (" + m.openDate + ") without logout. Please logout first.",
+                            "Logout Required", JOptionPane.WARNING_MESSAGE);
                 }
-            }
-
-            // No open session, check if already checked in today
-            PreparedStatement checkToday = conn.prepareStatement(
-                    "SELECT id FROM attendance WHERE student_id = ? AND attendance_date = ?");
-            checkToday.setInt(1, studentId);
-            checkToday.setDate(2, Date.valueOf(today));
-            ResultSet todayRs = checkToday.executeQuery();
-
-            if (todayRs.next()) {
-                // Already checked in today, this should be check-out
-                markLogoutDB(studentId);
                 return;
             }
-
-            // New check-in for today
-            PreparedStatement ins = conn.prepareStatement(
-                    "INSERT INTO attendance (student_id, attendance_date, check_in_time, status) VALUES (?, ?, ?, 'Present')");
-            ins.setInt(1, studentId);
-            ins.setDate(2, Date.valueOf(today));
-            ins.setTime(3, Time.valueOf(time));
-            ins.executeUpdate();
-
-            // get roll & name for log and audit
-            PreparedStatement q2 = conn.prepareStatement("SELECT name, rollno FROM students WHERE id = ?");
-            q2.setInt(1, studentId);
-            ResultSet r2 = q2.executeQuery();
-            String name = "", rollno = "";
-            if (r2.next()) { name = r2.getString("name"); rollno = r2.getString("rollno"); }
-
-            log("Check-IN marked: " + name + " (" + rollno + ") at " + time);
-            auditLog(rollno, null, "Attendance Check-IN", "Date: " + today + ", Time: " + time);
-            refreshDashboardStats(); // Update dashboard statistics
-
+            reportMark(m, studentId, today, time);
         } catch (Exception ex) {
             log("markAttendanceDB error: " + ex.getMessage());
         }
@@ -548,53 +503,42 @@ public class FaceAttendanceApp extends JFrame {
         try {
             LocalDate today = LocalDate.now();
             LocalTime time = LocalTime.now();
+            reportMark(new AttendanceStore(conn).checkOut(studentId, today, time), studentId, today, time);
+        } catch (Exception ex) {
+            log("markLogoutDB error: " + ex.getMessage());
+        }
+    }
 
-            // Ensure a check-in for today exists
-            PreparedStatement chk = conn.prepareStatement(
-                    "SELECT id FROM attendance WHERE student_id = ? AND attendance_date = ? AND check_out_time IS NULL");
-            chk.setInt(1, studentId);
-            chk.setDate(2, Date.valueOf(today));
-            ResultSet chkRs = chk.executeQuery();
-            if (!chkRs.next()) {
+    private void reportMark(AttendanceStore.Mark m, int studentId, LocalDate today, LocalTime time) {
+        switch (m.outcome) {
+            case CHECKED_IN:
+                log("Check-IN marked: " + m.name + " (" + m.rollno + ") at " + time);
+                auditLog(m.rollno, null, "Attendance Check-IN", "Date: " + today + ", Time: " + time);
+                refreshDashboardStats(); // Update dashboard statistics
+                break;
+            case CHECKED_OUT:
+                log("Check-OUT marked: " + m.name + " (" + m.rollno + ") at " + time);
+                auditLog(m.rollno, null, "Attendance Check-OUT", "Date: " + today + ", Time: " + time);
+                refreshDashboardStats(); // Update dashboard statistics
+                break;
+            case NO_OPEN_SESSION:
                 log("Cannot logout: no open check-in found for today.");
-                if (!usingRecognitionDialog) {
+                if (sessions.isEmpty()) {
                     JOptionPane.showMessageDialog(this,
                             "Cannot logout. No open attendance session found for today.",
                             "No Check-In", JOptionPane.WARNING_MESSAGE);
                 }
-                return;
-            }
-
-            // Update check_out_time only if not already set
-            PreparedStatement upd = conn.prepareStatement(
-                    "UPDATE attendance SET check_out_time = ? WHERE student_id = ? AND attendance_date = ? AND check_out_time IS NULL");
-            upd.setTime(1, Time.valueOf(time));
-            upd.setInt(2, studentId);
-            upd.setDate(3, Date.valueOf(today));
-            int updated = upd.executeUpdate();
-            if (updated == 0) {
+                break;
+            case ALREADY_CHECKED_OUT:
                 log("Logout already recorded earlier today for student id=" + studentId);
-                if (!usingRecognitionDialog) {
+                if (sessions.isEmpty()) {
                     JOptionPane.showMessageDialog(this,
                             "Logout already recorded for today.",
                             "Already Logged Out", JOptionPane.INFORMATION_MESSAGE);
                 }
-                return;
-            }
-
-            // get roll & name for log and audit
-            PreparedStatement q2 = conn.prepareStatement("SELECT name, rollno FROM students WHERE id = ?");
-            q2.setInt(1, studentId);
-            ResultSet r2 = q2.executeQuery();
-            String name = "", rollno = "";
-            if (r2.next()) { name = r2.getString("name"); rollno = r2.getString("rollno"); }
-
-            log("Check-OUT marked: " + name + " (" + rollno + ") at " + time);
-            auditLog(rollno, null, "Attendance Check-OUT", "Date: " + today + ", Time: " + time);
-            refreshDashboardStats(); // Update dashboard statistics
-
-        } catch (Exception ex) {
-            log("markLogoutDB error: " + ex.getMessage());
+                break;
+            default:
+                break;
         }
     }
 
@@ -604,117 +548,224 @@ public class FaceAttendanceApp extends JFrame {
             log("OpenCV not available. Cannot enroll without native libraries.");
             return;
         }
-        if (!ensureCascadeLoaded()) {
-            log("OpenCV not available. Cannot enroll without cascade.");
+        // the gates' detector and profile, so enrollment crops are cut the way recognition cuts them
+        DetectorPool detectors = acquireDetectors();
+        if (detectors == null) {
+            log("Cannot enroll without a face detector.");
             return;
         }
         // create folder dataset/{studentId}
         File d = new File(datasetDir, String.valueOf(studentId));
         if (!d.exists()) d.mkdirs();
 
-        log("Starting enrollment for id=" + studentId + ". Look at camera. Collecting " + ENROLL_SAMPLES + " samples.");
+        log("Starting enrollment for id=" + studentId + ". Look at camera. Capturing a burst for up to " + ENROLL_SAMPLES + " samples.");
         try {
             // reset progress bar
             if (enrollBar != null) {
                 SwingUtilities.invokeLater(() -> {
                     enrollBar.setMaximum(ENROLL_SAMPLES);
                     enrollBar.setValue(0);
-                    enrollBar.setString("Enrollment progress: 0/" + ENROLL_SAMPLES);
+                    enrollBar.setString("Capturing: 0/" + ENROLL_SAMPLES);
                 });
             }
 
-            OpenCVFrameGrabber g = new OpenCVFrameGrabber(0);
+            // loaded now, not mid-burst while the student stands in front of the camera
+            FaceMatcher duplicateMatcher = duplicateCheckMatcher();
+
+            FrameSource g = FrameSources.fromSystemProperty("camera:0");
             g.start();
             OpenCVFrameConverter.ToMat convToMat = new OpenCVFrameConverter.ToMat();
-            Java2DFrameConverter java2d = new Java2DFrameConverter();
-
-            int collected = 0;
-            long lastSaved = 0;
-            while (collected < ENROLL_SAMPLES) {
+            MatRenderer renderer = new MatRenderer();
+
+            // Per-session native buffers, reused for every frame and freed when enrollment ends
+            Mat gray = new Mat();
+            Mat face = new Mat();
+            Size faceSize = new Size(200, 200);
+
+            // Burst: every detected face goes into the selector's ring buffer at full camera rate.
+            // Capture stops once the burst time is over and enough good crops are in the ring,
+            // or at the hard limit with whatever was captured.
+            EnrollmentSelector selector = EnrollmentSelector.fromSystemProperties(200, 200);
+            long burstMillis = EnrollmentSelector.burstMillisFromSystemProperty();
+            long started = System.currentTimeMillis();
+            long deadline = started + Math.max(3 * burstMillis, 10000);
+            int acceptable = 0;
+            boolean duplicateChecked = false;
+            DuplicateFaces.Hit duplicate = null;
+            while (true) {
+                long now = System.currentTimeMillis();
+                if ((now - started >= burstMillis && acceptable >= ENROLL_SAMPLES) || now >= deadline) break;
                 Frame frame = g.grab();
-                if (frame == null) continue;
+                if (frame == null) {
+                    if (g.isLive()) continue;
+                    break; // recorded source ran out
+                }
                 Mat mat = convToMat.convert(frame);
                 if (mat == null) continue;
 
-                Mat gray = new Mat();
                 cvtColor(mat, gray, COLOR_BGR2GRAY);
-                RectVector faces = new RectVector();
-                if (faceCascade != null) {
-                    faceCascade.detectMultiScale(gray, faces);
-                }
+                Rectangle r = largest(detectors.detect(gray, null));
 
-                if (faces.size() > 0) {
-                    Rect r = faces.get(0);
-                    Mat face = new Mat(gray, r);
-                    org.bytedeco.opencv.global.opencv_imgproc.resize(face, face, new Size(200, 200));
-                    long now = System.currentTimeMillis();
-                    // save at most once per 300 ms to avoid duplicates
-                    if (now - lastSaved > 300) {
-                        String fname = String.format("%s/%03d.png", (Object) d.getAbsolutePath(), (Object) (collected + 1));
-                        imwrite(fname, face);
-                        // store path in DB for training
-                        try {
-                            if (conn != null && !conn.isClosed()) {
-                                PreparedStatement fps = conn.prepareStatement(
-                                    "INSERT INTO face_data (student_id, image_path) VALUES (?, ?)");
-                                fps.setInt(1, studentId);
-                                // Normalize to use forward slashes so OpenCV can read consistently
-                                String normPath = fname.replace('\\', '/');
-                                fps.setString(2, normPath);
-                                fps.executeUpdate();
-                            }
-                        } catch (Exception dbx) {
-                            log("Warning: could not insert face_data: " + dbx.getMessage());
-                        }
-                        collected++;
-                        lastSaved = now;
-                        int current = collected;
-                        log("Saved " + fname + " (" + current + "/" + ENROLL_SAMPLES + ")");
-                        if (enrollBar != null) {
-                            SwingUtilities.invokeLater(() -> {
-                                enrollBar.setValue(current);
-                                enrollBar.setString("Enrollment progress: " + current + "/" + ENROLL_SAMPLES);
-                            });
-                        }
+                if (r != null) {
+                    // the ROI header is scoped so it is freed right away instead of by the GC
+                    try (PointerScope scope = new PointerScope()) {
+                        Mat roi = new Mat(gray, new Rect(r.x, r.y, r.width, r.height));
+                        org.bytedeco.opencv.global.opencv_imgproc.resize(roi, face, faceSize);
+                    }
+                    byte[] pixels = new byte[200 * 200];
+                    face.data().get(pixels);
+                    selector.offer(pixels, System.nanoTime());
+                    acceptable = selector.acceptable();
+                    // 1:N check on the first good crops, before the student spends the burst on a duplicate
+                    if (duplicateMatcher != null && !duplicateChecked && acceptable >= DuplicateFaces.PROBES) {
+                        duplicateChecked = true;
+                        duplicate = findDuplicateFace(duplicateMatcher, studentId, selector.select(DuplicateFaces.PROBES));
+                        if (duplicate != null) break;
+                    }
+                    int current = Math.min(acceptable, ENROLL_SAMPLES);
+                    if (enrollBar != null) {
+                        SwingUtilities.invokeLater(() -> {
+                            enrollBar.setValue(current);
+                            enrollBar.setString("Capturing: " + current + "/" + ENROLL_SAMPLES);
+                        });
                     }
 
                     // draw rectangle on preview (so user can align)
-                    BufferedImage bi = java2d.convert(convToMat.convert(mat));
-                    Graphics2D g2 = bi.createGraphics();
-                    g2.setColor(Color.YELLOW);
-                    g2.setStroke(new BasicStroke(3));
-                    g2.drawRect(r.x(), r.y(), r.width(), r.height());
-                    g2.dispose();
-                    SwingUtilities.invokeLater(() -> updateCameraView(bi));
-                } else {
-                    BufferedImage bi = java2d.convert(convToMat.convert(mat));
-                    SwingUtilities.invokeLater(() -> updateCameraView(bi));
+                    renderer.drawGuideBox(mat, r.x, r.y, r.width, r.height);
                 }
-                Thread.sleep(80); // small delay
+                renderer.publish(mat, cameraView);
             }
 
             g.stop();
-            log("Enrollment complete for id=" + studentId);
+            renderer.release();
+            gray.close();
+            faceSize.close();
+            if (duplicate != null) {
+                face.close();
+                updateCameraView(null);
+                rejectDuplicate(studentId, duplicate);
+                return;
+            }
+
+            // Keep the most diverse good crops; near-duplicates are dropped, so there may be fewer than ENROLL_SAMPLES
+            List<EnrollmentSelector.Candidate> chosen = selector.select(ENROLL_SAMPLES);
+            int saved = 0;
+            for (EnrollmentSelector.Candidate c : chosen) {
+                face.data().put(c.pixels);
+                String fname = String.format("%s/%03d.png", (Object) d.getAbsolutePath(), (Object) (saved + 1));
+                imwrite(fname, face);
+                // store path in DB for training
+                try {
+                    if (conn != null && !conn.isClosed()) {
+                        try (PreparedStatement fps = conn.prepareStatement(
+                                "INSERT INTO face_data (student_id, image_path) VALUES (?, ?)")) {
+                            fps.setInt(1, studentId);
+                            // Normalize to use forward slashes so OpenCV can read consistently
+                            fps.setString(2, fname.replace('\\', '/'));
+                            fps.executeUpdate();
+                        }
+                    }
+                } catch (Exception dbx) {
+                    log("Warning: could not insert face_data: " + dbx.getMessage());
+                }
+                saved++;
+            }
+            face.close();
+            int total = saved;
+            if (total == 0) log("No face was captured for id=" + studentId + "; enroll again facing the camera.");
+            log("Enrollment complete for id=" + studentId + ": " + selector.describe() + " in "
+                    + (System.currentTimeMillis() - started) + " ms. " + NativeMemory.describe());
             // finalize progress bar
             if (enrollBar != null) {
                 SwingUtilities.invokeLater(() -> {
-                    enrollBar.setValue(ENROLL_SAMPLES);
-                    enrollBar.setString("Enrollment complete: " + ENROLL_SAMPLES + "/" + ENROLL_SAMPLES);
+                    enrollBar.setMaximum(Math.max(1, total));
+                    enrollBar.setValue(total);
+                    enrollBar.setString("Enrollment complete: " + total + " samples");
                 });
             }
             // Hide camera panel after enrollment
-            SwingUtilities.invokeLater(() -> {
-                cameraLabel.setIcon(null);
-            });
-            // Auto-train the model after enrollment
-            new Thread(() -> trainModel()).start();
+            updateCameraView(null);
+            // Add the new student to the model; a full retrain only happens when there is no model yet
+            new Thread(() -> updateModel(studentId)).start();
         } catch (Exception ex) {
             log("Enroll error: " + ex.getMessage());
         }
     }
 
+    // The shared model for the enrollment duplicate check, loaded if no gate has yet; null when
+    // there is no model or it cannot be read, and the check is then skipped
+    private FaceMatcher duplicateCheckMatcher() {
+        if (models.currentFile() == null) return null;
+        try {
+            return models.resident();
+        } catch (Exception ex) {
+            log("Duplicate face check skipped: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // The existing student the new face is recognized as, or null
+    private DuplicateFaces.Hit findDuplicateFace(FaceMatcher matcher, int studentId, List<EnrollmentSelector.Candidate> probes) {
+        List<byte[]> crops = new ArrayList<>();
+        for (EnrollmentSelector.Candidate c : probes) crops.add(c.pixels);
+        try {
+            return DuplicateFaces.check(matcher, crops, 200, 200, studentId,
+                    DuplicateFaces.thresholdFromSystemProperty(THRESHOLD));
+        } catch (Exception ex) {
+            log("Duplicate face check skipped: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // Cancels the enrollment and drops the student row and dataset folder just created for it
+    // (both only when they are still empty: a re-enrolled student keeps their earlier data)
+    private void rejectDuplicate(int studentId, DuplicateFaces.Hit hit) {
+        String existing = "student id=" + hit.label;
+        String rollno = null;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT name, rollno FROM students WHERE id = ?")) {
+            ps.setInt(1, hit.label);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    rollno = rs.getString("rollno");
+                    existing = rs.getString("name") + " (" + rollno + ")";
+                }
+            }
+        } catch (Exception ex) {
+            log("Duplicate lookup error: " + ex.getMessage());
+        }
+        log(String.format(Locale.US, "Enrollment cancelled for id=%d: %d of %d samples match %s (distance %.1f).",
+                studentId, hit.votes, hit.probes, existing, hit.distance));
+        auditLog(rollno, null, "Duplicate Face Rejected", "New student id=" + studentId + " matches " + existing);
+        try (PreparedStatement count = conn.prepareStatement("SELECT COUNT(*) c FROM face_data WHERE student_id = ?")) {
+            count.setInt(1, studentId);
+            try (ResultSet rs = count.executeQuery()) {
+                if (rs.next() && rs.getInt("c") == 0) {
+                    try (PreparedStatement del = conn.prepareStatement("DELETE FROM students WHERE id = ?")) {
+                        del.setInt(1, studentId);
+                        del.executeUpdate();
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            log("Could not remove the cancelled registration: " + ex.getMessage());
+        }
+        new File(datasetDir, String.valueOf(studentId)).delete(); // only succeeds on an empty folder
+        String message = "This face is already registered as " + existing + ". Registration cancelled.";
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, message,
+                "Face Already Registered", JOptionPane.WARNING_MESSAGE));
+    }
+
     // -------------------- Training --------------------
     private void trainModel() {
+        synchronized (modelLock) {
+            trainModelFromScratch();
+        }
+    }
+
+    // Retrains on every face_data image and folds the enrollment journal into the new model.
+    // Students are trained per department/class shard; shards whose images did not change
+    // since the last training are reused from models/shards/ instead of being recomputed.
+    private void trainModelFromScratch() {
         log("Training started...");
         try {
             showTrainingDialog(true);
@@ -723,21 +774,12 @@ public class FaceAttendanceApp extends JFrame {
                 showTrainingDialog(false);
                 return;
             }
-            // collect image paths and labels
-            List<Mat> images = new ArrayList<>();
-            List<Integer> labels = new ArrayList<>();
-
+            Map<String, List<TrainingSetLoader.Sample>> byShard = new TreeMap<>();
             try {
-                PreparedStatement ps = conn.prepareStatement("SELECT student_id, image_path FROM face_data");
-                ResultSet rs = ps.executeQuery();
-                while (rs.next()) {
-                    int label = rs.getInt("student_id");
-                    String path = rs.getString("image_path");
-                    Mat img = imread(path, IMREAD_GRAYSCALE);
-                    if (img != null && !img.empty()) {
-                        images.add(img);
-                        labels.add(Integer.valueOf(label));
-                    }
+                Map<Integer, String> shardOf = GalleryShards.shardOfStudents(conn);
+                for (TrainingSetLoader.Sample sample : TrainingSetLoader.query(conn)) {
+                    String key = shardOf.getOrDefault(sample.label, "?/?");
+                    byShard.computeIfAbsent(key, k -> new ArrayList<>()).add(sample);
                 }
             } catch (Exception ex) {
                 log("Error loading face data: " + ex.getMessage());
@@ -745,27 +787,51 @@ public class FaceAttendanceApp extends JFrame {
                 return;
             }
 
-            if (images.isEmpty()) {
+            long t0 = System.currentTimeMillis();
+            int prototypes = GalleryCompactor.prototypesFromSystemProperty();
+            LbphFeatures features = LbphFeatures.defaults();
+            ChiSquareKernel kernel = ChiSquareKernel.best();
+            ShardStore store = new ShardStore(new File(modelsDir, "shards"));
+            LbphGallery gallery = new LbphGallery(features.length(), false);
+            int loaded = 0;
+            int rebuilt = 0;
+            String loadStats;
+            try (TrainingSetLoader loader = new TrainingSetLoader(new File(modelsDir, "crop_cache"))) {
+                for (Map.Entry<String, List<TrainingSetLoader.Sample>> e : byShard.entrySet()) {
+                    String digest = ShardStore.digest(e.getValue(), features, prototypes);
+                    LbphEngine shard = store.load(e.getKey(), digest);
+                    if (shard == null) {
+                        int[] count = {0};
+                        shard = trainShard(loader, e.getValue(), features, prototypes, kernel, count);
+                        store.save(e.getKey(), shard, digest);
+                        loaded += count[0];
+                        rebuilt++;
+                    }
+                    LbphGallery g = shard.getGallery();
+                    for (int i = 0; i < g.size(); i++) {
+                        if (g.label(i) != -1) gallery.add(g.label(i), g.histogram(i));
+                    }
+                }
+                store.retain(byShard.keySet());
+                loadStats = loader.describe();
+            }
+
+            if (gallery.size() == 0) {
                 log("No valid images found for training.");
                 showTrainingDialog(false);
                 return;
             }
-
-            MatVector matVec = new MatVector(images.size());
-            for (int i = 0; i < images.size(); i++) matVec.put(i, images.get(i));
-            IntPointer labelsPointer = new IntPointer(labels.size());
-            for (int i = 0; i < labels.size(); i++) labelsPointer.put(i, labels.get(i));
-
-            // Create labels Mat (rows = number of images, 1 column, 32-bit signed int)
-            Mat labelsMat = new Mat(labels.size(), 1,
-                    org.bytedeco.opencv.global.opencv_core.CV_32SC1,
-                    labelsPointer);
-
-            LBPHFaceRecognizer recognizer = LBPHFaceRecognizer.create();
-            recognizer.train(matVec, labelsMat);
-            recognizer.save(modelFile);
-
-            log("Training finished. Model saved to " + modelFile);
+            log("Training set: " + byShard.size() + " shards, " + rebuilt + " retrained from " + loaded + " images ("
+                    + loadStats + "), " + (byShard.size() - rebuilt) + " unchanged; " + gallery.size()
+                    + (prototypes > 0 ? " prototypes (" + prototypes + " per student)" : " samples") + " in "
+                    + (System.currentTimeMillis() - t0) + " ms");
+            // saved beside the live model and published by rename; open gates switch over between frames
+            LbphEngine model = new LbphEngine(features, gallery, kernel, Double.MAX_VALUE); // OpenCV's default threshold
+            File staged = models.stagingFile();
+            LbphModelFile.writeXml(model, staged);
+            int version = models.publish(staged, model);
+
+            log("Training finished. Model v" + version + " published: " + models.describe());
         } catch (Exception ex) {
             log("Training error: " + ex.getMessage());
         } finally {
@@ -773,26 +839,192 @@ public class FaceAttendanceApp extends JFrame {
         }
     }
 
+    // Trains one shard with OpenCV, a batch at a time so memory stays bounded; count gets the images loaded
+    private static LbphEngine trainShard(TrainingSetLoader loader, List<TrainingSetLoader.Sample> samples,
+                                         LbphFeatures features, int prototypes, ChiSquareKernel kernel,
+                                         int[] count) throws InterruptedException {
+        LBPHFaceRecognizer recognizer = LBPHFaceRecognizer.create(features.getRadius(), features.getNeighbors(),
+                features.getGridX(), features.getGridY(), Double.MAX_VALUE);
+        try {
+            int[] trained = {0};
+            count[0] = loader.forEachBatch(samples, batch -> {
+                List<Mat> images = batch.images;
+                List<Integer> labels = batch.labels;
+                if (prototypes > 0) {
+                    List<Integer> keep = GalleryCompactor.select(loader.histograms(batch, features), labels, prototypes, kernel);
+                    images = new ArrayList<>(keep.size());
+                    labels = new ArrayList<>(keep.size());
+                    for (int i : keep) {
+                        images.add(batch.images.get(i));
+                        labels.add(batch.labels.get(i));
+                    }
+                }
+                trainBatch(recognizer, images, labels, trained[0] == 0);
+                trained[0] += images.size();
+            });
+            if (trained[0] == 0) return new LbphEngine(features, new LbphGallery(features.length(), false), kernel, Double.MAX_VALUE);
+            return LbphEngine.fromRecognizer(recognizer, false, kernel);
+        } finally {
+            recognizer.close();
+        }
+    }
+
+    // First batch trains the recognizer, later ones are appended with update (same result as one train call)
+    private static void trainBatch(LBPHFaceRecognizer recognizer, List<Mat> images, List<Integer> labels, boolean first) {
+        if (images.isEmpty()) return;
+        MatVector matVec = new MatVector(images.size());
+        IntPointer labelsPointer = new IntPointer(labels.size());
+        // labels Mat: rows = number of images, 1 column, 32-bit signed int
+        Mat labelsMat = new Mat(labels.size(), 1, org.bytedeco.opencv.global.opencv_core.CV_32SC1, labelsPointer);
+        try {
+            for (int i = 0; i < images.size(); i++) {
+                matVec.put(i, images.get(i));
+                labelsPointer.put(i, labels.get(i));
+            }
+            if (first) {
+                recognizer.train(matVec, labelsMat);
+            } else {
+                recognizer.update(matVec, labelsMat);
+            }
+        } finally {
+            labelsMat.close();
+            labelsPointer.close();
+            matVec.close();
+        }
+    }
+
+    // Appends one student's samples to the model journal and to the running engine, so the
+    // student is recognized within seconds whatever the gallery size; no model yet = full training
+    private void updateModel(int studentId) {
+        synchronized (modelLock) {
+            File modelFile = models.currentFile();
+            if (modelFile == null) {
+                trainModelFromScratch();
+                return;
+            }
+            long t0 = System.currentTimeMillis();
+            try {
+                if (!ensureOpenCvLoaded()) {
+                    log("OpenCV not available. Cannot update the model without native libraries.");
+                    return;
+                }
+                LbphFeatures features = LbphFeatures.defaults(); // trainModel uses LBPHFaceRecognizer.create() defaults
+                List<float[]> histograms;
+                try (TrainingSetLoader loader = new TrainingSetLoader(new File(modelsDir, "crop_cache"))) {
+                    TrainingSetLoader.Batch batch = loader.load(TrainingSetLoader.query(conn, studentId));
+                    try {
+                        histograms = loader.histograms(batch, features);
+                    } finally {
+                        batch.release();
+                    }
+                }
+                if (histograms.isEmpty()) {
+                    log("No face images found for id=" + studentId + "; model unchanged.");
+                    return;
+                }
+                int prototypes = GalleryCompactor.prototypesFromSystemProperty();
+                if (prototypes > 0) {
+                    List<Integer> labels = new ArrayList<>(Collections.nCopies(histograms.size(), studentId));
+                    List<float[]> kept = new ArrayList<>();
+                    for (int i : GalleryCompactor.select(histograms, labels, prototypes, ChiSquareKernel.best())) {
+                        kept.add(histograms.get(i));
+                    }
+                    histograms = kept;
+                }
+                // a re-enrolled student replaces their old samples
+                ModelJournal journal = new ModelJournal(modelFile.getPath());
+                journal.appendRemove(studentId, features);
+                journal.appendAdd(studentId, features, histograms);
+                applyToRunningModel(studentId, histograms);
+                log("Model updated for id=" + studentId + ": " + histograms.size() + " samples in "
+                        + (System.currentTimeMillis() - t0) + " ms (no retrain)");
+            } catch (Exception ex) {
+                log("Model update error: " + ex.getMessage() + ". Use Model Management > Retrain Model.");
+            }
+        }
+    }
+
+    // Drops a student from the database, their images and the model. The rows are deleted in
+    // one transaction on a connection of its own, so gate marks on conn never join it, and
+    // the removal is journaled before the commit: if the journal cannot be written the rows
+    // stay, and the live model never recognizes a student whose row is gone.
+    private boolean removeStudent(int studentId) {
+        synchronized (modelLock) {
+            File modelFile = models.currentFile();
+            try (Connection tx = DriverManager.getConnection(dbUrl, dbUser, dbPassword)) {
+                tx.setAutoCommit(false);
+                try {
+                    for (String table : new String[] {"face_data", "attendance", "students"}) {
+                        try (PreparedStatement ps = tx.prepareStatement(
+                                "DELETE FROM " + table + " WHERE " + ("students".equals(table) ? "id" : "student_id") + " = ?")) {
+                            ps.setInt(1, studentId);
+                            ps.executeUpdate();
+                        }
+                    }
+                    if (modelFile != null) {
+                        new ModelJournal(modelFile.getPath()).appendRemove(studentId, LbphFeatures.defaults());
+                    }
+                    tx.commit();
+                } catch (Exception ex) {
+                    tx.rollback();
+                    throw ex;
+                }
+            } catch (Exception ex) {
+                log("Remove student error: " + ex.getMessage() + "; the student's rows were kept.");
+                return false;
+            }
+            if (modelFile != null) applyToRunningModel(studentId, Collections.emptyList());
+            File dir = new File(datasetDir, String.valueOf(studentId));
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) f.delete();
+            }
+            dir.delete();
+            log("Student id=" + studentId + " removed from the database and the model.");
+            return true;
+        }
+    }
+
+    // Replaces a student's samples in the resident model the gates use (the Java matcher only)
+    private void applyToRunningModel(int studentId, List<float[]> histograms) {
+        ResidentModel resident = models.residentIfLoaded();
+        if (resident == null) return; // the journal is replayed when it is loaded
+        if (resident.current() instanceof LbphEngine) {
+            LbphEngine live = (LbphEngine) resident.current();
+            live.remove(studentId);
+            for (float[] h : histograms) live.add(studentId, h);
+        } else {
+            log("The resident model uses the OpenCV matcher; the change applies after a retrain.");
+        }
+        synchronized (engineLock) {
+            if (engine != null) engine.forget(studentId);
+        }
+    }
+
     private void openRecognitionDialog(boolean isCheckout) {
-        if (recognitionRunning) {
-            JOptionPane.showMessageDialog(this, "Camera is already running.");
+        if (models.currentFile() == null) {
+            JOptionPane.showMessageDialog(this, "Model not found. Train first.");
             return;
         }
-        if (!new File(modelFile).exists()) {
-            JOptionPane.showMessageDialog(this, "Model not found. Train first.");
+        List<String> free = new ArrayList<>();
+        for (String spec : FrameSources.gateSpecs("camera:0")) {
+            if (!sessions.containsKey(spec)) free.add(spec);
+        }
+        if (free.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Camera is already running.");
             return;
         }
+        Object choice = free.get(0);
+        if (free.size() > 1) {
+            choice = JOptionPane.showInputDialog(this, "Select the gate camera:", "Gate",
+                    JOptionPane.QUESTION_MESSAGE, null, free.toArray(), choice);
+            if (choice == null) return;
+        }
+        String gate = choice.toString();
 
-        checkoutMode = isCheckout;
-        stopAfterFirstRecognize = true; // auto-close but with 5s hold
-        recognitionRunning = true;
-        waitingToClose = false;
-        closeAtMillis = 0L;
-        usingRecognitionDialog = true;
-
-        recognitionLabel = new JLabel();
-        recognitionLabel.setPreferredSize(new Dimension(800, 600));
-        recognitionDialog = new JDialog(this, isCheckout ? "Check-OUT - Face Recognition" : "Check-IN - Face Recognition", false);
+        VideoPanel view = new VideoPanel();
+        view.setPreferredSize(new Dimension(800, 600));
+        JDialog dialog = new JDialog(this, (isCheckout ? "Check-OUT" : "Check-IN") + " - Face Recognition - " + gate, false);
 
         GradientPanel content = new GradientPanel(PRIMARY, PRIMARY.darker());
         content.setLayout(new BorderLayout(10, 10));
@@ -808,9 +1040,56 @@ public class FaceAttendanceApp extends JFrame {
 
         JPanel videoWrap = new JPanel(new BorderLayout());
         videoWrap.setOpaque(false);
-        videoWrap.add(recognitionLabel, BorderLayout.CENTER);
+        videoWrap.add(view, BorderLayout.CENTER);
         content.add(videoWrap, BorderLayout.CENTER);
 
+        JLabel stats = new JLabel(gate + ": starting...");
+        stats.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        stats.setForeground(Color.WHITE);
+
+        RecognitionSession session = new RecognitionSession(gate, isCheckout, THRESHOLD, view, new RecognitionSession.Callbacks() {
+            @Override
+            public String describe(int studentId) {
+                // map id -> name, rollno; runs on the gates' recognize threads, cached by the engine and session
+                try (PreparedStatement q = conn.prepareStatement("SELECT name, rollno FROM students WHERE id = ?")) {
+                    q.setInt(1, studentId);
+                    try (ResultSet rs = q.executeQuery()) {
+                        if (rs.next()) {
+                            return rs.getString("name") + " (" + rs.getString("rollno") + ")";
+                        }
+                    }
+                } catch (SQLException ex) {
+                    log("Student lookup error: " + ex.getMessage());
+                }
+                return null;
+            }
+
+            @Override
+            public void mark(int studentId, boolean checkout) {
+                // DB writes from every gate are serialized on the EDT
+                if (checkout) {
+                    SwingUtilities.invokeLater(() -> markLogoutDB(studentId));
+                } else {
+                    SwingUtilities.invokeLater(() -> markAttendanceDB(studentId));
+                }
+            }
+
+            @Override
+            public void log(String message) {
+                FaceAttendanceApp.this.log(message);
+            }
+
+            @Override
+            public void finished(RecognitionSession s, boolean recognized) {
+                endSession(s);
+                SwingUtilities.invokeLater(() -> {
+                    dialog.dispose();
+                    log(s.getGate() + ": " + (recognized ? "Recognition finished and attendance marked. Camera closed." : "Recognition stopped."));
+                });
+            }
+        });
+        sessions.put(gate, session);
+
         JButton closeBtn = new JButton("Close");
         closeBtn.setBackground(new Color(244, 67, 54));
         closeBtn.setFont(new Font("Segoe UI", Font.BOLD, 16));
@@ -820,185 +1099,136 @@ public class FaceAttendanceApp extends JFrame {
         closeBtn.setOpaque(false);
         closeBtn.setUI(new GradientButtonUI(new Color(244, 67, 54), new Color(200, 40, 40)));
         closeBtn.addActionListener(ev -> {
-            recognitionRunning = false;
-            safeStopGrabber();
-            if (recognitionDialog != null) recognitionDialog.dispose();
+            session.stop();
+            dialog.dispose();
         });
-        JPanel south = new JPanel();
+        JPanel south = new JPanel(new BorderLayout());
         south.setOpaque(false);
-        south.add(closeBtn);
+        JPanel buttons = new JPanel();
+        buttons.setOpaque(false);
+        buttons.add(closeBtn);
+        south.add(stats, BorderLayout.WEST);
+        south.add(buttons, BorderLayout.CENTER);
         content.add(south, BorderLayout.SOUTH);
 
-        recognitionDialog.setContentPane(content);
-        recognitionDialog.pack();
-        recognitionDialog.setLocationRelativeTo(this);
-        recognitionDialog.addWindowListener(new java.awt.event.WindowAdapter() {
+        // Per-camera fps and latency, refreshed while the window is open
+        Timer statsTimer = new Timer(1000, ev -> stats.setText(session.statsLine()));
+        statsTimer.start();
+
+        dialog.setContentPane(content);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
             public void windowClosing(java.awt.event.WindowEvent e) {
-                recognitionRunning = false;
-                safeStopGrabber();
-                usingRecognitionDialog = false;
-                waitingToClose = false;
-                closeAtMillis = 0L;
-                cameraLabel = null;
-                recognitionLabel = null;
+                session.stop();
+            }
+
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                statsTimer.stop();
+                session.stop();
             }
         });
-        recognitionDialog.setVisible(true);
+        dialog.setVisible(true);
 
-        // Redirect camera output to the dialog's label and start recognition
-        this.cameraLabel = recognitionLabel;
-        new Thread(() -> runRecognition()).start();
+        new Thread(() -> {
+            log(gate + ": recognition started. Press Close to end.");
+            RecognitionEngine e = acquireEngine();
+            if (e == null) {
+                endSession(session);
+                SwingUtilities.invokeLater(dialog::dispose);
+                return;
+            }
+            session.run(e, matcherForGate(gate, e));
+        }, "recognition-" + gate).start();
     }
 
     // -------------------- Recognition --------------------
-    private void runRecognition() {
-        log("Recognition started. Press Stop to end.");
-        if (!ensureOpenCvLoaded()) {
-            log("OpenCV not available. Cannot recognize without native libraries.");
-            return;
-        }
-        LBPHFaceRecognizer recognizer = LBPHFaceRecognizer.create();
-        try {
-            recognizer.read(modelFile);
-        } catch (Exception ex) {
-            log("Cannot read model: " + ex.getMessage());
-            return;
+    // Loads the shared model on first use; null if it cannot be loaded
+    private RecognitionEngine acquireEngine() {
+        synchronized (engineLock) {
+            if (engine != null) return engine;
+            if (!ensureOpenCvLoaded()) {
+                log("OpenCV not available. Cannot recognize without native libraries.");
+                return null;
+            }
+            DetectorPool detectors = acquireDetectors();
+            if (detectors == null) {
+                log("Cannot run recognition without a face detector.");
+                return null;
+            }
+            try {
+                engine = RecognitionEngine.create(models.resident(), detectors);
+                log("Recognition model for all gates: " + engine.getMatcher().describe());
+            } catch (Exception ex) {
+                log("Cannot read model: " + ex.getMessage());
+            }
+            return engine;
         }
+    }
 
-        if (!ensureCascadeLoaded()) {
-            log("OpenCV not available. Cannot run recognition without cascade.");
-            return;
+    // The detection workers of the -Dfaceattendance.detector backend and detection profile, shared by
+    // every gate and by enrollment; built on first use, null if the backend's model cannot be loaded
+    private DetectorPool acquireDetectors() {
+        synchronized (detectorLock) {
+            if (detectorPool != null) return detectorPool;
+            if (!ensureOpenCvLoaded()) {
+                log("OpenCV not available. Cannot detect faces without native libraries.");
+                return null;
+            }
+            String backend = FaceDetectors.backendFromSystemProperty();
+            // the bundled Haar cascade is searched for like before unless a path is given
+            String path = FaceDetectors.HAAR.equals(backend) && !FaceDetectors.isModelOverridden(backend)
+                    ? resolveCascadePath() : FaceDetectors.modelPath(backend);
+            String modelPath = new File(path).getAbsolutePath();
+            DetectionProfile profile = DetectionProfile.fromSystemProperty();
+            try {
+                detectorPool = new DetectorPool(() -> FaceDetectors.create(backend, modelPath, profile), profile,
+                        DetectorPool.defaultWorkers());
+                log("Face detection: " + detectorPool.describe());
+            } catch (RuntimeException ex) {
+                log("ERROR: " + ex.getMessage() + " — ensure the file exists. Working dir: " + System.getProperty("user.dir"));
+            }
+            return detectorPool;
         }
+    }
 
-        boolean recognizedThisSession = false;
-        try {
-            grabber = new OpenCVFrameGrabber(0);
-            grabber.start();
-            OpenCVFrameConverter.ToMat convToMat = new OpenCVFrameConverter.ToMat();
-            Java2DFrameConverter java2d = new Java2DFrameConverter();
-
-            boolean actionDoneThisSession = false;
-            while (recognitionRunning) {
-                Frame frame = grabber.grab();
-                if (frame == null) continue;
-                Mat mat = convToMat.convert(frame);
-                if (mat == null) continue;
-
-                Mat gray = new Mat();
-                cvtColor(mat, gray, COLOR_BGR2GRAY);
-                RectVector faces = new RectVector();
-                if (faceCascade != null) {
-                    faceCascade.detectMultiScale(gray, faces);
-                }
-
-                BufferedImage bi = java2d.convert(convToMat.convert(mat));
-                Graphics2D g2 = bi.createGraphics();
-                g2.setStroke(new BasicStroke(2));
-                g2.setFont(new Font("Arial", Font.BOLD, 18));
-
-                for (int i = 0; i < faces.size(); i++) {
-                    Rect r = faces.get(i);
-                    Mat face = new Mat(gray, r);
-                    org.bytedeco.opencv.global.opencv_imgproc.resize(face, face, new Size(200, 200));
-
-                    IntPointer label = new IntPointer(1);
-                    DoublePointer confidence = new DoublePointer(1);
-                    recognizer.predict(face, label, confidence);
-                    int predictedId = label.get(0);
-                    double conf = confidence.get(0);
-
-                    String text = "Unknown";
-                    if (predictedId > 0 && conf < THRESHOLD) {
-                        // map id -> name, rollno
-                        PreparedStatement q = conn.prepareStatement("SELECT name, rollno FROM students WHERE id = ?");
-                        q.setInt(1, predictedId);
-                        ResultSet rs = q.executeQuery();
-                        if (rs.next()) {
-                            String name = rs.getString("name");
-                            String rollno = rs.getString("rollno");
-                            text = name + " (" + rollno + ")";
-                            // mark attendance or logout (async) only once per session
-                            if (!actionDoneThisSession) {
-                                final int idToMark = predictedId;
-                                actionDoneThisSession = true;
-                                if (checkoutMode) {
-                                    SwingUtilities.invokeLater(() -> markLogoutDB(idToMark));
-                                } else {
-                                    SwingUtilities.invokeLater(() -> markAttendanceDB(idToMark));
-                                }
-                            }
-                            if (stopAfterFirstRecognize) {
-                                recognizedThisSession = true;
-                                if (!waitingToClose) {
-                                    waitingToClose = true;
-                                    closeAtMillis = System.currentTimeMillis() + 5000L; // keep window open for 5 seconds
-                                }
-                                // Do not stop immediately; the loop will continue rendering until the timer elapses
-                            }
-                        }
-                    } else {
-                        text = String.format(Locale.US, "Unknown (%.1f)", Double.valueOf(conf));
-                    }
-
-                    // draw box + label
-                    g2.setColor(Color.GREEN);
-                    g2.drawRect(r.x(), r.y(), r.width(), r.height());
-                    g2.setColor(Color.YELLOW);
-                    g2.drawString(text, Math.max(0, r.x()), Math.max(0, r.y() - 8));
-                }
-
-                // Show countdown overlay if we are in the 5-second hold window
-                if (waitingToClose && stopAfterFirstRecognize) {
-                    long remain = Math.max(0L, closeAtMillis - System.currentTimeMillis());
-                    String msg = "Recognized. Closing in " + ((remain / 1000L) + 1) + "s";
-                    g2.setColor(new Color(0, 0, 0, 160));
-                    g2.fillRoundRect(10, 10, 260, 36, 12, 12);
-                    g2.setColor(Color.WHITE);
-                    g2.drawString(msg, 20, 36);
-                }
-
-                g2.dispose();
-                SwingUtilities.invokeLater(() -> updateCameraView(bi));
-
-                // If recognized and hold time elapsed, stop recognition
-                if (waitingToClose && stopAfterFirstRecognize && System.currentTimeMillis() >= closeAtMillis) {
-                    recognitionRunning = false;
-                }
-
-                Thread.sleep(80);
-            }
-            safeStopGrabber();
-            // Cleanup: close recognition dialog if used
-            if (usingRecognitionDialog) {
-                final boolean finalRecognized = recognizedThisSession;
-                SwingUtilities.invokeLater(() -> {
-                    try {
-                        if (recognitionDialog != null) {
-                            recognitionDialog.dispose();
-                        }
-                    } catch (Exception ignore) {}
-                    cameraLabel = null;
-                    recognitionLabel = null;
-                    usingRecognitionDialog = false;
-                    waitingToClose = false;
-                    closeAtMillis = 0L;
-                    log(finalRecognized ? "Recognition finished and attendance marked. Camera closed." : "Recognition stopped.");
-                });
-            }
-        } catch (Exception ex) {
-            log("Recognition error: " + ex.getMessage());
+    // The biggest box, i.e. the face nearest the camera, or null
+    private static Rectangle largest(List<Rectangle> boxes) {
+        Rectangle best = null;
+        for (Rectangle b : boxes) {
+            if (best == null || (long) b.width * b.height > (long) best.width * best.height) best = b;
         }
+        return best;
     }
 
-    private void safeStopGrabber() {
-        try {
-            if (grabber != null) {
-                grabber.stop();
-                grabber.release();
-                grabber = null;
+    // The gate's department/class shards if it is configured with some, else the whole model
+    private FaceMatcher matcherForGate(String gate, RecognitionEngine e) {
+        GalleryShards shards = GalleryShards.forGate(gate);
+        if (shards.isAll()) return e.getMatcher();
+        log(gate + ": searching " + shards + " first");
+        ShardedMatcher m = new ShardedMatcher(e.getMatcher(), shards, () -> {
+            try {
+                return shards.roster(conn);
+            } catch (SQLException ex) {
+                log(gate + ": roster lookup error, searching everyone until the next update: " + ex.getMessage());
+                return null; // the gate searches the whole model, whatever the fallback setting
+            }
+        }, THRESHOLD, GalleryShards.fallbackFromSystemProperty());
+        m.refresh(); // here, before the first frame; later rebuilds run in the background
+        return m;
+    }
+
+    // Forgets a finished session; the last one out releases the workers (the registry keeps the model)
+    private void endSession(RecognitionSession session) {
+        synchronized (engineLock) {
+            sessions.remove(session.getGate(), session);
+            if (sessions.isEmpty() && engine != null) {
+                engine.shutdown();
+                engine = null;
             }
-        } catch (Exception ignored) {}
+        }
     }
 
     private void log(String s) {
@@ -1056,71 +1286,12 @@ public class FaceAttendanceApp extends JFrame {
         }
     }
 
-    // Scales and centers the camera frame to fit the current label size while preserving aspect ratio
+    // Hands the frame to the active video panel; safe to call from capture threads.
+    // The panel keeps only the newest frame and does the scaling itself when it paints.
     private void updateCameraView(BufferedImage bi) {
-        if (bi == null || cameraLabel == null) {
-            if (cameraLabel != null) {
-                cameraLabel.setIcon(null);
-            }
-            lastCameraFrame = null;
-            return;
-        }
-        lastCameraFrame = bi;
-        int w = cameraLabel.getWidth();
-        int h = cameraLabel.getHeight();
-        if (w <= 0 || h <= 0) {
-            cameraLabel.setIcon(new ImageIcon(bi));
-            return;
-        }
-        double arSrc = bi.getWidth() / (double) bi.getHeight();
-        double arDst = w / (double) h;
-        int drawW, drawH;
-        if (arSrc > arDst) {
-            drawW = w;
-            drawH = (int) Math.max(1, Math.round(w / arSrc));
-        } else {
-            drawH = h;
-            drawW = (int) Math.max(1, Math.round(h * arSrc));
-        }
-        int x = (w - drawW) / 2;
-        int y = (h - drawH) / 2;
-
-        BufferedImage canvas = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = canvas.createGraphics();
-        try {
-            g.setColor(Color.BLACK);
-            g.fillRect(0, 0, w, h);
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g.drawImage(bi, x, y, drawW, drawH, null);
-        } finally {
-            g.dispose();
-        }
-        cameraLabel.setIcon(new ImageIcon(canvas));
-    }
-
-    private boolean ensureCascadeLoaded() {
-        try {
-            if (faceCascade != null && !faceCascade.empty()) return true;
-
-            // Ensure OpenCV native libraries are extracted and loaded
-            if (!ensureOpenCvLoaded()) return false;
-
-            // Resolve absolute path for the cascade to handle different working directories
-            String resolvedPath = resolveCascadePath();
-            CascadeClassifier cc = new CascadeClassifier(resolvedPath);
-            if (cc.empty()) {
-                log("ERROR: Could not load cascade from: " + new java.io.File(resolvedPath).getAbsolutePath() +
-                        " — ensure the file exists. Working dir: " + System.getProperty("user.dir"));
-                return false;
-            }
-            faceCascade = cc;
-            log("Cascade loaded: " + new java.io.File(resolvedPath).getAbsolutePath());
-            return true;
-        } catch (Throwable t) {
-            log("OpenCV init error: " + t.getMessage());
-            return false;
+        VideoPanel view = cameraView;
+        if (view != null) {
+            view.submit(bi);
         }
     }
 
@@ -1161,6 +1332,20 @@ public class FaceAttendanceApp extends JFrame {
         }
     }
 
+    // Opens the gate webcams in the background so the first check-in does not wait for the device
+    private void warmUpCameras() {
+        new Thread(() -> {
+            if (!ensureOpenCvLoaded()) return;
+            List<String> specs = new ArrayList<>(FrameSources.gateSpecs("camera:0"));
+            specs.add(System.getProperty(FrameSources.SOURCE_PROPERTY, "camera:0")); // enrollment camera
+            try {
+                FrameSources.warmUp(specs);
+            } catch (Exception ex) {
+                log("Camera warm-up error: " + ex.getMessage());
+            }
+        }, "camera-warmup").start();
+    }
+
     public static void main(String[] args) {
         try {
             UIManager.setLookAndFeel(new FlatLightLaf());
@@ -1168,7 +1353,9 @@ public class FaceAttendanceApp extends JFrame {
         SwingUtilities.invokeLater(() -> {
             FaceAttendanceApp app = new FaceAttendanceApp();
             app.setVisible(true);
+            app.warmUpCameras();
         });
+        Runtime.getRuntime().addShutdownHook(new Thread(CameraService::shutdownAll));
     }
 
     private void openRegisterDialog() {
@@ -1400,7 +1587,7 @@ public class FaceAttendanceApp extends JFrame {
                     return;
                 }
 
-                // Check for face similarity (if face data exists for this SRN)
+                // Face data already stored for this SRN; the face itself is compared with everyone during enrollment
                 PreparedStatement faceCheck = conn.prepareStatement(
                     "SELECT COUNT(*) c FROM face_data fd JOIN students s ON fd.student_id = s.id WHERE s.rollno = ?");
                 faceCheck.setString(1, rollno);
@@ -1445,11 +1632,11 @@ public class FaceAttendanceApp extends JFrame {
         top.add(info);
         content.add(top, BorderLayout.NORTH);
 
-        JLabel videoLabel = new JLabel();
-        videoLabel.setPreferredSize(new Dimension(800, 600));
+        VideoPanel videoView = new VideoPanel();
+        videoView.setPreferredSize(new Dimension(800, 600));
         JPanel videoWrap = new JPanel(new BorderLayout());
         videoWrap.setOpaque(false);
-        videoWrap.add(videoLabel, BorderLayout.CENTER);
+        videoWrap.add(videoView, BorderLayout.CENTER);
         content.add(videoWrap, BorderLayout.CENTER);
 
         JProgressBar progress = new JProgressBar(0, ENROLL_SAMPLES);
@@ -1488,22 +1675,22 @@ public class FaceAttendanceApp extends JFrame {
         dialog.pack();
         dialog.setLocationRelativeTo(this);
 
-        // Redirect camera output for enrollment to the dialog's label and progress bar
-        JLabel prevLabel = this.cameraLabel;
+        // Redirect camera output for enrollment to the dialog's video panel and progress bar
+        VideoPanel prevView = this.cameraView;
         JProgressBar prevBar = this.enrollBar;
-        this.cameraLabel = videoLabel;
+        this.cameraView = videoView;
         this.enrollBar = progress;
 
         dialog.addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
             public void windowClosing(java.awt.event.WindowEvent e) {
                 // Restore references when window closes
-                cameraLabel = prevLabel;
+                cameraView = prevView;
                 enrollBar = prevBar;
             }
             @Override
             public void windowClosed(java.awt.event.WindowEvent e) {
-                cameraLabel = prevLabel;
+                cameraView = prevView;
                 enrollBar = prevBar;
             }
         });
@@ -1532,7 +1719,7 @@ public class FaceAttendanceApp extends JFrame {
             } finally {
                 SwingUtilities.invokeLater(() -> {
                     try { dialog.dispose(); } catch (Exception ignore) {}
-                    cameraLabel = prevLabel;
+                    cameraView = prevView;
                     enrollBar = prevBar;
                 });
             }
@@ -2203,6 +2390,11 @@ public class FaceAttendanceApp extends JFrame {
             stats.append("Total Attendance Records: ").append(attendanceCount).append("\n");
             stats.append("Today's Attendance: ").append(todayCount).append("\n");
             stats.append("Audit Log Entries: ").append(auditCount).append("\n\n");
+            stats.append(NativeMemory.describe()).append("\n");
+            for (String camera : CameraService.describeAll()) {
+                stats.append(camera).append("\n");
+            }
+            stats.append("\n");
             stats.append("System Status: Operational\n");
             stats.append("Last Updated: ").append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
 
@@ -2234,7 +2426,41 @@ public class FaceAttendanceApp extends JFrame {
     }
 
     private void showStudentManagement() {
-        JOptionPane.showMessageDialog(this, "Student Management feature coming soon!\n\nThis will allow admins to:\n• View all students\n• Edit student information\n• Remove students\n• Reset face data", "Student Management", JOptionPane.INFORMATION_MESSAGE);
+        String[] options = {"Remove Student", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(this, "Student Management Options",
+                "Student Management", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
+                null, options, options[0]);
+        if (choice != 0) return;
+
+        String rollno = JOptionPane.showInputDialog(this, "Roll No of the student to remove:",
+                "Remove Student", JOptionPane.QUESTION_MESSAGE);
+        if (rollno == null || rollno.trim().isEmpty()) return;
+        try {
+            int id;
+            String name;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT id, name FROM students WHERE rollno = ?")) {
+                ps.setString(1, rollno.trim());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        JOptionPane.showMessageDialog(this, "No student with Roll No " + rollno.trim(),
+                            "Not Found", JOptionPane.WARNING_MESSAGE);
+                        return;
+                    }
+                    id = rs.getInt("id");
+                    name = rs.getString("name");
+                }
+            }
+            int confirm = JOptionPane.showConfirmDialog(this,
+                "Remove " + name + " (" + rollno.trim() + ")?\n\n" +
+                "Their face images and attendance records are deleted and they are no longer recognized.",
+                "Confirm Remove Student", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (confirm != JOptionPane.YES_OPTION) return;
+            new Thread(() -> {
+                if (removeStudent(id)) auditLog(null, "admin", "Student Removed", "Removed " + name + " (" + rollno.trim() + ", id " + id + ")");
+            }).start();
+        } catch (Exception ex) {
+            log("Remove student error: " + ex.getMessage());
+        }
     }
 
     private void showAuditLogs() {
@@ -2504,8 +2730,7 @@ public class FaceAttendanceApp extends JFrame {
 
     private void backupAIModel() {
         try {
-            File modelFile = new File(this.modelFile);
-            if (!modelFile.exists()) {
+            if (models.currentFile() == null) {
                 JOptionPane.showMessageDialog(this, "No trained model found to backup.",
                     "No Model", JOptionPane.WARNING_MESSAGE);
                 return;
@@ -2519,9 +2744,8 @@ public class FaceAttendanceApp extends JFrame {
             if (result == JFileChooser.APPROVE_OPTION) {
                 File backupFile = chooser.getSelectedFile();
 
-                // Copy model file
-                java.nio.file.Files.copy(modelFile.toPath(), backupFile.toPath(),
-                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                // Current version, including enrollments since the last training
+                models.backup(backupFile);
 
                 JOptionPane.showMessageDialog(this,
                     "AI Model backed up successfully!\nFile: " + backupFile.getName(),
@@ -2537,43 +2761,49 @@ public class FaceAttendanceApp extends JFrame {
     }
 
     private void restoreAIModel() {
-        try {
-            JFileChooser chooser = new JFileChooser();
-            chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("XML Model Files", "xml"));
-            int result = chooser.showOpenDialog(this);
-
-            if (result == JFileChooser.APPROVE_OPTION) {
-                File backupFile = chooser.getSelectedFile();
-
-                int confirm = JOptionPane.showConfirmDialog(this,
-                    "This will replace the current AI model!\n\n" +
-                    "Are you sure you want to restore from: " + backupFile.getName() + "?",
-                    "Confirm Model Restore", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("XML Model Files", "xml"));
+        int result = chooser.showOpenDialog(this);
+
+        if (result == JFileChooser.APPROVE_OPTION) {
+            File backupFile = chooser.getSelectedFile();
+
+            int confirm = JOptionPane.showConfirmDialog(this,
+                "This will replace the current AI model!\n\n" +
+                "Are you sure you want to restore from: " + backupFile.getName() + "?",
+                "Confirm Model Restore", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+
+            if (confirm == JOptionPane.YES_OPTION) {
+                // In the background: it waits for any training in progress and loads the restored model
+                log("Restoring model from " + backupFile.getName() + "...");
+                new Thread(() -> {
+                    try {
+                        // Published as a new version; the current one stays in the registry
+                        int previous = models.currentVersion();
+                        int version;
+                        synchronized (modelLock) {
+                            version = models.publishCopy(backupFile);
+                        }
+                        log("Model v" + version + " restored from " + backupFile.getName()
+                            + (previous > 0 ? " (previous model kept as v" + previous + ")" : ""));
+                        auditLog(null, "admin", "Model Restore", "Restored from: " + backupFile.getName());
+
+                        SwingUtilities.invokeLater(() -> {
+                            JOptionPane.showMessageDialog(this,
+                                "AI Model restored successfully from: " + backupFile.getName(),
+                                "Restore Complete", JOptionPane.INFORMATION_MESSAGE);
+                        });
+                    } catch (Exception ex) {
+                        log("Model restore error: " + ex.getMessage());
 
-                if (confirm == JOptionPane.YES_OPTION) {
-                    // Backup current model first
-                    File currentModel = new File(modelFile);
-                    if (currentModel.exists()) {
-                        File autoBackup = new File(modelFile + ".autobackup");
-                        java.nio.file.Files.copy(currentModel.toPath(), autoBackup.toPath(),
-                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                        SwingUtilities.invokeLater(() -> {
+                            JOptionPane.showMessageDialog(this,
+                                "Error restoring model: " + ex.getMessage(),
+                                "Restore Error", JOptionPane.ERROR_MESSAGE);
+                        });
                     }
-
-                    // Restore from backup
-                    java.nio.file.Files.copy(backupFile.toPath(), currentModel.toPath(),
-                        java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-
-                    JOptionPane.showMessageDialog(this,
-                        "AI Model restored successfully from: " + backupFile.getName(),
-                        "Restore Complete", JOptionPane.INFORMATION_MESSAGE);
-                    auditLog(null, "admin", "Model Restore", "Restored from: " + backupFile.getName());
-                }
+                }, "model-restore").start();
             }
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this,
-                "Error restoring model: " + ex.getMessage(),
-                "Restore Error", JOptionPane.ERROR_MESSAGE);
-            log("Model restore error: " + ex.getMessage());
         }
     }
 
@@ -2594,13 +2824,9 @@ public class FaceAttendanceApp extends JFrame {
 
                     auditLog(null, "admin", "Model Retraining", "Started manual retraining");
 
-                    // Backup current model before retraining
-                    File currentModel = new File(modelFile);
-                    if (currentModel.exists()) {
-                        File backupBeforeRetrain = new File(modelFile + ".pre_retrain_backup");
-                        java.nio.file.Files.copy(currentModel.toPath(), backupBeforeRetrain.toPath(),
-                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                    }
+                    // The current version stays in the registry; retraining publishes a new one
+                    int previous = models.currentVersion();
+                    if (previous > 0) log("Retraining; model v" + previous + " is kept for restore.");
 
                     // Perform retraining
                     trainModel();
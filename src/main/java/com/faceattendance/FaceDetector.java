@@ -0,0 +1,16 @@
+package com.faceattendance;
+
+/**
+ * A face detection backend bound to one {@link DetectionProfile}. Input is the grayscale
+ * frame (roi == null for the whole frame) and boxes come back in full-resolution frame
+ * coordinates, whatever scale the backend works at internally.
+ * <p>
+ * Instances hold native state and are not thread-safe; {@link DetectorPool} gives each
+ * worker thread its own. Backends are created by {@link FaceDetectors}.
+ */
+public interface FaceDetector extends FaceTracker.RegionDetector {
+
+    String describe();
+
+    void close();
+}
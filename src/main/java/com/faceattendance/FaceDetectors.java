@@ -0,0 +1,71 @@
+package com.faceattendance;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds {@link FaceDetector} backends by name:
+ * <pre>
+ *   haar   haarcascade_frontalface_alt.xml (the original detector)
+ *   lbp    lbpcascade_frontalface_improved.xml, several times faster than Haar
+ *   yunet  face_detection_yunet_2023mar.onnx via FaceDetectorYN, the most accurate
+ * </pre>
+ * The app picks one with -Dfaceattendance.detector=haar|lbp|yunet; model files are read
+ * from the working directory unless -Dfaceattendance.detector.&lt;name&gt;=path says otherwise.
+ */
+public final class FaceDetectors {
+    public static final String BACKEND_PROPERTY = "faceattendance.detector";
+    public static final String HAAR = "haar";
+    public static final String LBP = "lbp";
+    public static final String YUNET = "yunet";
+
+    private FaceDetectors() {}
+
+    public static List<String> backends() {
+        return Arrays.asList(HAAR, LBP, YUNET);
+    }
+
+    public static String backendFromSystemProperty() {
+        return normalize(System.getProperty(BACKEND_PROPERTY, HAAR));
+    }
+
+    // Model file for a backend: the -Dfaceattendance.detector.<name> override or the default file name
+    public static String modelPath(String backend) {
+        String b = normalize(backend);
+        String fallback;
+        switch (b) {
+            case LBP:
+                fallback = "lbpcascade_frontalface_improved.xml";
+                break;
+            case YUNET:
+                fallback = "models/face_detection_yunet_2023mar.onnx";
+                break;
+            default:
+                fallback = "haarcascade_frontalface_alt.xml";
+        }
+        return System.getProperty(BACKEND_PROPERTY + "." + b, fallback);
+    }
+
+    public static boolean isModelOverridden(String backend) {
+        return System.getProperty(BACKEND_PROPERTY + "." + normalize(backend)) != null;
+    }
+
+    // Throws IllegalStateException if the model file cannot be loaded
+    public static FaceDetector create(String backend, String modelPath, DetectionProfile profile) {
+        switch (normalize(backend)) {
+            case HAAR:
+                return new CascadeFaceDetector(HAAR, modelPath, profile);
+            case LBP:
+                return new CascadeFaceDetector(LBP, modelPath, profile);
+            case YUNET:
+                return new YuNetFaceDetector(modelPath, profile);
+            default:
+                throw new IllegalArgumentException("Unknown face detector: " + backend + " (use " + backends() + ")");
+        }
+    }
+
+    private static String normalize(String backend) {
+        return backend == null ? HAAR : backend.trim().toLowerCase(Locale.ROOT);
+    }
+}
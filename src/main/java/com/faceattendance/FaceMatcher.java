@@ -0,0 +1,64 @@
+package com.faceattendance;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * Identifies a 200x200 grayscale face crop against the trained gallery: nearest gallery
+ * entry and its distance (lower is closer, compared against the app's threshold).
+ * <p>
+ * Implementations are safe to call from several threads. They are not necessarily
+ * read-only: {@link LbphEngine} takes enrollment changes ({@link LbphEngine#add},
+ * {@link LbphEngine#remove}) while other threads predict. Each predict sees the gallery
+ * either before or after a change, never half of one, but two predicts may see different
+ * galleries, and {@link #gallerySize} may change between calls.
+ * <p>
+ * A {@link Lease} pins which model a frame is matched against (a publish does not swap it
+ * away mid-frame), not that model's contents: a student added or removed during the frame
+ * can show up in its later predictions. Code that needs a fixed set of samples copies
+ * them first (e.g. {@link LbphEngine#subset}).
+ */
+public interface FaceMatcher {
+
+    final class Match {
+        public final int label;       // -1 when nothing matched
+        public final double distance;
+
+        public Match(int label, double distance) {
+            this.label = label;
+            this.distance = distance;
+        }
+    }
+
+    // A matcher held for the faces of one frame; close it when the frame is done
+    interface Lease extends AutoCloseable {
+        FaceMatcher matcher();
+
+        @Override
+        void close();
+    }
+
+    Match predict(Mat face);
+
+    // Pins the model for one frame so all its faces are matched against the same one;
+    // matchers that are never swapped for another model lend themselves (see ResidentModel)
+    default Lease lease() {
+        FaceMatcher self = this;
+        return new Lease() {
+            @Override
+            public FaceMatcher matcher() {
+                return self;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // Number of stored samples searched per prediction
+    int gallerySize();
+
+    String describe();
+
+    void close();
+}
@@ -0,0 +1,256 @@
+package com.faceattendance;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import static org.bytedeco.opencv.global.opencv_core.minMaxLoc;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Keeps faces between detections so the expensive detector only runs every N frames.
+ * <p>
+ * Between detections every face is followed with a small normalized-correlation
+ * template match on a downscaled search window. A detection pass runs when the
+ * interval is reached or any track's match score drops below the confidence floor;
+ * it first searches a padded region around each known face and only falls back to
+ * the full frame when a face is not found there (or periodically, to pick up
+ * newcomers).
+ */
+public class FaceTracker {
+
+    // Runs the real detector on the whole frame (roi == null) or inside roi; boxes are in frame coordinates
+    public interface RegionDetector {
+        List<Rectangle> detect(Mat gray, Rectangle roi);
+    }
+
+    public static class Track {
+        final int id;
+        Rectangle box;
+        Mat template;
+        double confidence = 1.0;
+
+        Track(int id, Rectangle box) {
+            this.id = id;
+            this.box = box;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public Rectangle getBox() {
+            return box;
+        }
+
+        void release() {
+            if (template != null) {
+                template.close();
+                template = null;
+            }
+        }
+    }
+
+    // Full detection runs every N frames, faces are tracked in between (1 = detect every frame)
+    public static final String INTERVAL_PROPERTY = "faceattendance.tracking.interval";
+    public static final int DEFAULT_INTERVAL = 5;
+
+    private static final int TEMPLATE_WIDTH = 32;      // tracking runs at this face width
+    private static final double SEARCH_PADDING = 0.5;  // search window = box grown by half its size
+    private static final int FULL_SCAN_EVERY = 4;      // every 4th detection pass scans the whole frame
+
+    private final int detectInterval;
+    private final double minConfidence;
+    private final double roiPadding;
+    private final List<Track> tracks = new ArrayList<>();
+    private final DoublePointer maxVal = new DoublePointer(1);
+    private final Point maxLoc = new Point();
+    private final Mat result = new Mat();
+    private final Mat window = new Mat();
+    private int frameIndex = 0;
+    private int detectionPasses = 0;
+    private int nextId = 1;
+
+    // counters for the pipeline summary
+    private long fullDetections, roiDetections, trackedFrames;
+
+    public FaceTracker(int detectInterval, double minConfidence, double roiPadding) {
+        this.detectInterval = Math.max(1, detectInterval);
+        this.minConfidence = minConfidence;
+        this.roiPadding = roiPadding;
+    }
+
+    // Tracker configured from faceattendance.tracking.interval, or null when tracking is off
+    public static FaceTracker fromSystemProperty() {
+        int interval = Integer.getInteger(INTERVAL_PROPERTY, DEFAULT_INTERVAL);
+        return interval > 1 ? new FaceTracker(interval, 0.6, 0.5) : null;
+    }
+
+    public List<Track> update(Mat gray, RegionDetector detector) {
+        boolean redetect = tracks.isEmpty() || frameIndex % detectInterval == 0;
+        if (!redetect) {
+            for (Track t : tracks) {
+                follow(gray, t);
+                if (t.confidence < minConfidence) redetect = true;
+            }
+            trackedFrames++;
+        }
+        if (redetect) {
+            detect(gray, detector);
+        }
+        frameIndex++;
+        return tracks;
+    }
+
+    public void reset() {
+        for (Track t : tracks) t.release();
+        tracks.clear();
+        frameIndex = 0;
+    }
+
+    // Frees the tracks' templates and the matching buffers; the counters stay readable for summary()
+    public void close() {
+        reset();
+        maxVal.close();
+        maxLoc.close();
+        result.close();
+        window.close();
+    }
+
+    public String summary() {
+        return "tracker: full " + fullDetections + ", roi " + roiDetections + ", tracked " + trackedFrames;
+    }
+
+    // -------------------- Detection --------------------
+
+    private void detect(Mat gray, RegionDetector detector) {
+        Rectangle frame = new Rectangle(0, 0, gray.cols(), gray.rows());
+        boolean fullScan = tracks.isEmpty() || detectionPasses % FULL_SCAN_EVERY == 0;
+        detectionPasses++;
+
+        List<Track> kept = new ArrayList<>();
+        if (!fullScan) {
+            // Re-find each known face near where it was last seen
+            for (Track t : tracks) {
+                Rectangle roi = grow(t.box, roiPadding).intersection(frame);
+                Rectangle best = bestOverlap(detector.detect(gray, roi), t.box);
+                if (best == null) {
+                    fullScan = true;
+                    break;
+                }
+                t.box = best;
+                kept.add(t);
+            }
+            roiDetections++;
+        }
+
+        if (fullScan) {
+            kept.clear();
+            List<Rectangle> found = detector.detect(gray, null);
+            List<Track> unmatched = new ArrayList<>(tracks);
+            for (Rectangle r : found) {
+                Track owner = null;
+                for (Track t : unmatched) {
+                    if (iou(t.box, r) > 0.3) {
+                        owner = t;
+                        break;
+                    }
+                }
+                if (owner != null) {
+                    unmatched.remove(owner);
+                    owner.box = r;
+                    kept.add(owner);
+                } else {
+                    kept.add(new Track(nextId++, r));
+                }
+            }
+            for (Track t : unmatched) t.release();
+            fullDetections++;
+        }
+
+        tracks.clear();
+        tracks.addAll(kept);
+        for (Track t : tracks) {
+            refreshTemplate(gray, t);
+            t.confidence = 1.0;
+        }
+    }
+
+    // -------------------- Tracking --------------------
+
+    private double scaleFor(Rectangle box) {
+        return TEMPLATE_WIDTH / (double) Math.max(1, box.width);
+    }
+
+    private void refreshTemplate(Mat gray, Track t) {
+        double s = scaleFor(t.box);
+        if (t.template == null) t.template = new Mat(); // lives with the track, outside the scope
+        try (PointerScope scope = new PointerScope()) {
+            Mat roi = new Mat(gray, toRect(t.box));
+            resize(roi, t.template, new Size(TEMPLATE_WIDTH, Math.max(1, (int) Math.round(t.box.height * s))),
+                    0, 0, INTER_AREA);
+        }
+    }
+
+    private void follow(Mat gray, Track t) {
+        Rectangle frame = new Rectangle(0, 0, gray.cols(), gray.rows());
+        Rectangle search = grow(t.box, SEARCH_PADDING).intersection(frame);
+        if (search.width < t.box.width || search.height < t.box.height) {
+            t.confidence = 0.0; // face left the frame
+            return;
+        }
+        double s = scaleFor(t.box);
+        try (PointerScope scope = new PointerScope()) {
+            Mat roi = new Mat(gray, toRect(search));
+            Size size = new Size(Math.max(t.template.cols(), (int) Math.round(search.width * s)),
+                    Math.max(t.template.rows(), (int) Math.round(search.height * s)));
+            resize(roi, window, size, 0, 0, INTER_AREA);
+        }
+        matchTemplate(window, t.template, result, TM_CCOEFF_NORMED);
+        minMaxLoc(result, (DoublePointer) null, maxVal, null, maxLoc, null);
+
+        t.confidence = maxVal.get();
+        int x = search.x + (int) Math.round(maxLoc.x() / s);
+        int y = search.y + (int) Math.round(maxLoc.y() / s);
+        t.box = new Rectangle(x, y, t.box.width, t.box.height).intersection(frame);
+    }
+
+    // -------------------- Geometry helpers --------------------
+
+    static Rectangle grow(Rectangle r, double padding) {
+        int dx = (int) Math.round(r.width * padding);
+        int dy = (int) Math.round(r.height * padding);
+        return new Rectangle(r.x - dx, r.y - dy, r.width + 2 * dx, r.height + 2 * dy);
+    }
+
+    static double iou(Rectangle a, Rectangle b) {
+        Rectangle i = a.intersection(b);
+        if (i.isEmpty()) return 0.0;
+        double inter = (double) i.width * i.height;
+        return inter / ((double) a.width * a.height + (double) b.width * b.height - inter);
+    }
+
+    static Rect toRect(Rectangle r) {
+        return new Rect(r.x, r.y, r.width, r.height);
+    }
+
+    private static Rectangle bestOverlap(List<Rectangle> candidates, Rectangle previous) {
+        Rectangle best = null;
+        double bestIou = 0.0;
+        for (Rectangle c : candidates) {
+            double v = iou(c, previous);
+            if (v > bestIou) {
+                bestIou = v;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
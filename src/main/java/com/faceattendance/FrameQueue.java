@@ -0,0 +1,58 @@
+package com.faceattendance;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Small bounded hand-off queue between two pipeline stages.
+ * When the consumer falls behind, the oldest queued item is dropped so the
+ * newest frame always gets through ("latest frame wins").
+ */
+public class FrameQueue<T> {
+    private final ArrayBlockingQueue<T> queue;
+    private final Consumer<T> onDrop;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public FrameQueue(int capacity, Consumer<T> onDrop) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.onDrop = onDrop;
+    }
+
+    // Never blocks the producer: evicts the oldest item(s) until the new one fits
+    public void offerLatest(T item) {
+        while (!queue.offer(item)) {
+            T old = queue.poll();
+            if (old != null) {
+                dropped.incrementAndGet();
+                if (onDrop != null) onDrop.accept(old);
+            }
+        }
+    }
+
+    // Blocks the producer instead of dropping; used when replaying recorded frames
+    public void put(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public T poll(long timeoutMillis) throws InterruptedException {
+        return queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Releases whatever is still queued (used on shutdown)
+    public void clear() {
+        T item;
+        while ((item = queue.poll()) != null) {
+            if (onDrop != null) onDrop.accept(item);
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
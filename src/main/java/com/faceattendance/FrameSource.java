@@ -0,0 +1,26 @@
+package com.faceattendance;
+
+import org.bytedeco.javacv.Frame;
+
+/**
+ * Where recognition and enrollment get their frames from: a live camera,
+ * a recorded video file or a directory of still images.
+ */
+public interface FrameSource {
+
+    // Deliver single-channel frames so callers can skip cvtColor; call before start()
+    void setGrayscale(boolean grayscale);
+
+    void start() throws Exception;
+
+    // Next frame, or null when a recorded source has run out of frames.
+    // The returned frame may be reused by the next call, so copy what you keep.
+    Frame grab() throws Exception;
+
+    void stop();
+
+    // Live sources never end; recorded ones do and may be replayed faster than real time
+    boolean isLive();
+
+    String describe();
+}
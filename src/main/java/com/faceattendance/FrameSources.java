@@ -0,0 +1,86 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a {@link FrameSource} from a short spec string:
+ * <pre>
+ *   camera:0              live webcam, device index 0
+ *   video:clips/gate.mp4  recorded clip, replayed as fast as possible
+ *   images:frames/        directory of stills, replayed as fast as possible
+ * </pre>
+ * Append "@realtime" to a recorded source to pace it like a camera.
+ * The app reads its spec from the faceattendance.source system property. A building
+ * with several entrances lists one spec per gate in faceattendance.cameras, comma
+ * separated (e.g. "camera:0,camera:1,camera:2,camera:3"). Webcams are shared and kept
+ * open by {@link CameraService}.
+ */
+public final class FrameSources {
+    public static final String SOURCE_PROPERTY = "faceattendance.source";
+    public static final String CAMERAS_PROPERTY = "faceattendance.cameras";
+    private static final String REALTIME_SUFFIX = "@realtime";
+
+    private FrameSources() {}
+
+    public static FrameSource fromSystemProperty(String defaultSpec) {
+        return fromSpec(System.getProperty(SOURCE_PROPERTY, defaultSpec));
+    }
+
+    // Specs of every gate camera; falls back to the single faceattendance.source spec
+    public static List<String> gateSpecs(String defaultSpec) {
+        List<String> specs = new ArrayList<>();
+        String list = System.getProperty(CAMERAS_PROPERTY, "");
+        for (String s : list.split(",")) {
+            if (!s.trim().isEmpty() && !specs.contains(s.trim())) specs.add(s.trim());
+        }
+        if (specs.isEmpty()) specs.add(System.getProperty(SOURCE_PROPERTY, defaultSpec).trim());
+        return specs;
+    }
+
+    // Opens the listed webcams in the background so the first consumer finds them warm
+    public static void warmUp(List<String> specs) {
+        if (!CameraService.isShared()) return;
+        for (String spec : specs) {
+            String s = spec.trim();
+            if (s.startsWith("camera:")) {
+                CameraService.forDevice(Integer.parseInt(s.substring("camera:".length()).trim())).warmUp();
+            }
+        }
+    }
+
+    public static FrameSource fromSpec(String spec) {
+        String s = spec == null ? "" : spec.trim();
+        boolean realtime = s.endsWith(REALTIME_SUFFIX);
+        if (realtime) s = s.substring(0, s.length() - REALTIME_SUFFIX.length());
+
+        if (s.isEmpty() || s.startsWith("camera:")) {
+            int index = s.isEmpty() ? 0 : Integer.parseInt(s.substring("camera:".length()).trim());
+            // one warm device shared by every consumer, see CameraService
+            return CameraService.isShared() ? CameraService.forDevice(index).subscribe() : new CameraFrameSource(index);
+        }
+        if (s.startsWith("video:")) {
+            return new VideoFileFrameSource(s.substring("video:".length()), realtime);
+        }
+        if (s.startsWith("images:")) {
+            return new ImageDirectoryFrameSource(new File(s.substring("images:".length())), realtime, 30.0);
+        }
+        throw new IllegalArgumentException("Unknown frame source: " + spec + " (use camera:N, video:path or images:dir)");
+    }
+
+    // Sleeps until the scheduled frame time and returns the next one
+    static long pace(long scheduledNanos, long intervalNanos) {
+        long wait = scheduledNanos - System.nanoTime();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return scheduledNanos + intervalNanos;
+        }
+        // running late: don't try to catch up with a burst
+        return System.nanoTime() + intervalNanos;
+    }
+}
@@ -0,0 +1,147 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.bytedeco.javacpp.Loader;
+
+/**
+ * Offline audit for one person enrolled under two roll numbers: lists the student pairs
+ * whose faces are close enough to be recognized as each other (see
+ * {@link DuplicateFaces#audit}) and writes them to gallery-audit.csv.
+ * <pre>
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.GalleryAudit
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.GalleryAudit -Dexec.args="models/versions/lbph_model-000012.xml 60 3 10"
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.GalleryAudit -Dexec.args="synthetic:2000"
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.GalleryAudit -Dexec.args="url=jdbc:mysql://db:3306/face_recognition_db user=audit password=secret"
+ * </pre>
+ * Arguments: model (default the current version, journal included), threshold (default
+ * -Dfaceattendance.duplicate.threshold or 75), prototypes per student (3) and candidate
+ * neighbours per student (10). Names and roll numbers are added when the app's database
+ * is reachable: the JDBC URL, user and password can be given as url=, user=, password=;
+ * otherwise the app's MySQL database is tried and then its SQLite file, as the app does.
+ * synthetic:N builds N students and enrolls every tenth one a second time under another
+ * id, to check that the audit finds them.
+ */
+public class GalleryAudit {
+    private static final double APP_THRESHOLD = 75.0;
+    private static final int SHOWN = 50;
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> opts = new HashMap<>();
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (eq > 0) opts.put(a.substring(0, eq), a.substring(eq + 1));
+            else positional.add(a);
+        }
+        String source = positional.size() > 0 ? positional.get(0) : null;
+        double threshold = positional.size() > 1 ? Double.parseDouble(positional.get(1)) : DuplicateFaces.thresholdFromSystemProperty(APP_THRESHOLD);
+        int prototypes = positional.size() > 2 ? Integer.parseInt(positional.get(2)) : 3;
+        int neighbours = positional.size() > 3 ? Integer.parseInt(positional.get(3)) : 10;
+
+        long t0 = System.nanoTime();
+        LbphEngine engine;
+        if (source != null && source.startsWith("synthetic:")) {
+            engine = synthetic(Integer.parseInt(source.substring("synthetic:".length())));
+        } else {
+            Loader.load(org.bytedeco.opencv.global.opencv_core.class);
+            File model = source != null ? new File(source) : new ModelRegistry(new File("models"), System.err::println).currentFile();
+            if (model == null || !model.isFile()) {
+                System.err.println("Model not found. Train first or pass a model file.");
+                System.exit(2);
+            }
+            engine = LbphEngine.load(model.getPath(), System.err::println);
+            System.out.println("Model: " + model.getPath());
+        }
+        long t1 = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        DuplicateFaces.Audit audit = DuplicateFaces.audit(engine, prototypes, neighbours, threshold, pool);
+        pool.shutdown();
+        long t2 = System.nanoTime();
+
+        long all = (long) audit.students * (audit.students - 1) / 2;
+        System.out.println(String.format(Locale.US,
+                "%d students, %d samples; %d candidate pairs compared of %d (%.2f%%), %d under threshold %.1f; loaded in %.1f s, audited in %.1f s (prototypes %.1f s, blocking %.1f s, comparison %.1f s)",
+                audit.students, engine.gallerySize(), audit.candidatePairs, all, all == 0 ? 0 : 100.0 * audit.candidatePairs / all,
+                audit.pairs.size(), threshold, (t1 - t0) / 1e9, (t2 - t1) / 1e9,
+                audit.stageMillis[0] / 1e3, audit.stageMillis[1] / 1e3, audit.stageMillis[2] / 1e3));
+
+        Map<Integer, String> names = source != null && source.startsWith("synthetic:") ? new HashMap<>() : studentNames(opts);
+        File out = new File("gallery-audit.csv");
+        try (PrintWriter w = new PrintWriter(out, "UTF-8")) {
+            w.println("student_a,student_b,closest_distance,confused_samples,samples,name_a,name_b");
+            for (DuplicateFaces.Pair p : audit.pairs) {
+                w.println(String.format(Locale.US, "%d,%d,%.2f,%d,%d,\"%s\",\"%s\"", p.first, p.second, p.distance,
+                        p.confused, p.samples, names.getOrDefault(p.first, ""), names.getOrDefault(p.second, "")));
+            }
+        }
+        int shown = 0;
+        for (DuplicateFaces.Pair p : audit.pairs) {
+            if (shown++ == SHOWN) {
+                System.out.println("  ... " + (audit.pairs.size() - SHOWN) + " more in " + out.getPath());
+                break;
+            }
+            System.out.println(String.format(Locale.US, "  %6d %-30s %6d %-30s distance %6.2f, %d of %d samples confusable",
+                    p.first, names.getOrDefault(p.first, ""), p.second, names.getOrDefault(p.second, ""),
+                    p.distance, p.confused, p.samples));
+        }
+        System.out.println("Written to " + out.getPath());
+    }
+
+    // "name (rollno)" by student id, or empty when the database is not reachable
+    private static Map<Integer, String> studentNames(Map<String, String> opts) {
+        Map<Integer, String> names = new HashMap<>();
+        try (Connection conn = connect(opts);
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, name, rollno FROM students")) {
+            while (rs.next()) names.put(rs.getInt("id"), rs.getString("name") + " (" + rs.getString("rollno") + ")");
+        } catch (Exception ex) {
+            System.err.println("Student names not available: " + ex.getMessage());
+        }
+        return names;
+    }
+
+    // The database given by url=/user=/password=, else the app's MySQL database with its SQLite fallback
+    private static Connection connect(Map<String, String> opts) throws SQLException {
+        String url = opts.get("url");
+        if (url != null) return DriverManager.getConnection(url, opts.get("user"), opts.get("password"));
+        try {
+            return DriverManager.getConnection("jdbc:mysql://localhost:3306/face_recognition_db",
+                    opts.getOrDefault("user", "root"), opts.getOrDefault("password", "1234"));
+        } catch (SQLException ex) {
+            return DriverManager.getConnection("jdbc:sqlite:" + new File("face_recognition.db").getAbsolutePath());
+        }
+    }
+
+    private static LbphEngine synthetic(int students) {
+        LbphFeatures features = LbphFeatures.defaults();
+        LbphGallery gallery = new LbphGallery(features.length(), false);
+        Random random = new Random(23);
+        int duplicates = 0;
+        for (int s = 1; s <= students; s++) {
+            byte[] face = SyntheticFaces.student(random);
+            for (int i = 0; i < 10; i++) gallery.add(s, features.compute(SyntheticFaces.sample(face, random, 10.0), 200, 200));
+            if (s % 10 == 0) {
+                int twin = students + s;
+                for (int i = 0; i < 10; i++) gallery.add(twin, features.compute(SyntheticFaces.sample(face, random, 10.0), 200, 200));
+                duplicates++;
+            }
+        }
+        System.out.println("Synthetic gallery: " + students + " students, " + duplicates + " enrolled twice (as id + " + students + ")");
+        return new LbphEngine(features, gallery, ChiSquareKernel.best(), Double.MAX_VALUE);
+    }
+}
@@ -0,0 +1,141 @@
+package com.faceattendance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces each student's enrollment samples to k prototypes so the model grows with
+ * the number of students rather than the number of images.
+ * <p>
+ * Prototypes are k-medoids of the student's LBPH histograms under the chi-square
+ * distance (PAM: greedy build, then swaps while they lower the total distance). Medoids
+ * are real samples, so the compacted model is trained on the chosen images and works
+ * with either matcher. At 25 samples per student the distance matrix is 25x25 and the
+ * search is exhaustive and cheap.
+ * <p>
+ * -Dfaceattendance.training.prototypes=k turns it on for trainModel (0, the default,
+ * keeps every sample).
+ */
+public final class GalleryCompactor {
+    public static final String PROTOTYPES_PROPERTY = "faceattendance.training.prototypes";
+    private static final int MAX_SWAP_ROUNDS = 100;
+
+    private GalleryCompactor() {}
+
+    public static int prototypesFromSystemProperty() {
+        return Math.max(0, Integer.getInteger(PROTOTYPES_PROPERTY, 0));
+    }
+
+    /**
+     * Indices of the samples to keep: up to k medoids per label, in their original order.
+     * k &lt;= 0 keeps everything.
+     */
+    public static List<Integer> select(List<float[]> histograms, List<Integer> labels, int k, ChiSquareKernel kernel) {
+        List<Integer> keep = new ArrayList<>();
+        if (k <= 0) {
+            for (int i = 0; i < histograms.size(); i++) keep.add(i);
+            return keep;
+        }
+        Map<Integer, List<Integer>> byLabel = new LinkedHashMap<>();
+        for (int i = 0; i < labels.size(); i++) {
+            byLabel.computeIfAbsent(labels.get(i), l -> new ArrayList<>()).add(i);
+        }
+        for (List<Integer> members : byLabel.values()) {
+            float[][] samples = new float[members.size()][];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = histograms.get(members.get(i));
+            }
+            for (int m : medoids(samples, k, kernel)) {
+                keep.add(members.get(m));
+            }
+        }
+        keep.sort(null);
+        return keep;
+    }
+
+    // Positions of the k medoids within samples, ascending
+    static int[] medoids(float[][] samples, int k, ChiSquareKernel kernel) {
+        int n = samples.length;
+        if (n <= k) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) all[i] = i;
+            return all;
+        }
+        float[][] d = new float[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                d[i][j] = d[j][i] = kernel.distance(samples[i], samples[j], 0, Float.MAX_VALUE);
+            }
+        }
+
+        // build: start from the most central sample, then add whichever lowers the cost most
+        int[] medoids = new int[k];
+        boolean[] chosen = new boolean[n];
+        float[] nearest = new float[n];
+        Arrays.fill(nearest, Float.MAX_VALUE);
+        for (int c = 0; c < k; c++) {
+            int best = -1;
+            double bestCost = Double.MAX_VALUE;
+            for (int cand = 0; cand < n; cand++) {
+                if (chosen[cand]) continue;
+                double cost = 0;
+                for (int j = 0; j < n; j++) {
+                    cost += Math.min(nearest[j], d[cand][j]);
+                }
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = cand;
+                }
+            }
+            medoids[c] = best;
+            chosen[best] = true;
+            for (int j = 0; j < n; j++) {
+                nearest[j] = Math.min(nearest[j], d[best][j]);
+            }
+        }
+
+        // swap: replace a medoid by a non-medoid while that lowers the cost
+        double cost = cost(d, medoids);
+        for (int round = 0; round < MAX_SWAP_ROUNDS; round++) {
+            int bestSlot = -1, bestCand = -1;
+            double bestCost = cost;
+            for (int slot = 0; slot < k; slot++) {
+                int old = medoids[slot];
+                for (int cand = 0; cand < n; cand++) {
+                    if (chosen[cand]) continue;
+                    medoids[slot] = cand;
+                    double c = cost(d, medoids);
+                    if (c < bestCost - 1e-9) {
+                        bestCost = c;
+                        bestSlot = slot;
+                        bestCand = cand;
+                    }
+                }
+                medoids[slot] = old;
+            }
+            if (bestSlot < 0) break;
+            chosen[medoids[bestSlot]] = false;
+            chosen[bestCand] = true;
+            medoids[bestSlot] = bestCand;
+            cost = bestCost;
+        }
+        Arrays.sort(medoids);
+        return medoids;
+    }
+
+    // Sum over samples of the distance to their nearest medoid
+    private static double cost(float[][] d, int[] medoids) {
+        double total = 0;
+        for (int j = 0; j < d.length; j++) {
+            float best = Float.MAX_VALUE;
+            for (int m : medoids) {
+                best = Math.min(best, d[m][j]);
+            }
+            total += best;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,114 @@
+package com.faceattendance;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The department/class shards a kiosk serves, e.g. "CSE" (the whole department) or
+ * "CSE/III Sem A" (one class), comma separated.
+ * <p>
+ * -Dfaceattendance.shards sets them for every gate and -Dfaceattendance.shards.&lt;gate&gt;
+ * (e.g. faceattendance.shards.camera:1) for one gate; unset means the gate searches
+ * everyone. Shard keys are students.department and students.class, compared without
+ * regard to case.
+ */
+public final class GalleryShards {
+    public static final String PROPERTY = "faceattendance.shards";
+    public static final String FALLBACK_PROPERTY = "faceattendance.shards.fallback";
+
+    private static final GalleryShards ALL = new GalleryShards(new ArrayList<>());
+
+    private final List<String[]> entries; // {department, class or null}
+
+    private GalleryShards(List<String[]> entries) {
+        this.entries = entries;
+    }
+
+    public static GalleryShards parse(String spec) {
+        List<String[]> entries = new ArrayList<>();
+        if (spec != null) {
+            for (String s : spec.split(",")) {
+                if (s.trim().isEmpty()) continue;
+                int slash = s.indexOf('/');
+                String department = (slash < 0 ? s : s.substring(0, slash)).trim();
+                String clazz = slash < 0 ? null : s.substring(slash + 1).trim();
+                entries.add(new String[] {department, clazz == null || clazz.isEmpty() ? null : clazz});
+            }
+        }
+        return entries.isEmpty() ? ALL : new GalleryShards(entries);
+    }
+
+    public static GalleryShards forGate(String gate) {
+        String spec = System.getProperty(PROPERTY + "." + gate);
+        return parse(spec != null ? spec : System.getProperty(PROPERTY));
+    }
+
+    // Whether a gate with shards searches everyone when its roster has no match (default true)
+    public static boolean fallbackFromSystemProperty() {
+        return !"false".equals(System.getProperty(FALLBACK_PROPERTY));
+    }
+
+    // True when no shard is configured: the whole gallery is the roster
+    public boolean isAll() {
+        return entries.isEmpty();
+    }
+
+    public boolean contains(String department, String clazz) {
+        if (entries.isEmpty()) return true;
+        for (String[] e : entries) {
+            if (e[0].equalsIgnoreCase(department.trim()) && (e[1] == null || e[1].equalsIgnoreCase(clazz.trim()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Ids of the students in these shards
+    public Set<Integer> roster(Connection conn) throws SQLException {
+        Set<Integer> ids = new HashSet<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, department, class FROM students")) {
+            while (rs.next()) {
+                if (contains(rs.getString("department"), rs.getString("class"))) ids.add(rs.getInt("id"));
+            }
+        }
+        return ids;
+    }
+
+    // Training shard of every student: "department/class"
+    public static Map<Integer, String> shardOfStudents(Connection conn) throws SQLException {
+        Map<Integer, String> out = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, department, class FROM students")) {
+            while (rs.next()) {
+                out.put(rs.getInt("id"), key(rs.getString("department"), rs.getString("class")));
+            }
+        }
+        return out;
+    }
+
+    public static String key(String department, String clazz) {
+        return department.trim().toUpperCase(Locale.ROOT) + "/" + clazz.trim().toUpperCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        if (entries.isEmpty()) return "all students";
+        StringBuilder sb = new StringBuilder();
+        for (String[] e : entries) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(e[0]);
+            if (e[1] != null) sb.append('/').append(e[1]);
+        }
+        return sb.toString();
+    }
+}
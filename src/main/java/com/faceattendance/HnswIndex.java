@@ -0,0 +1,441 @@
+package com.faceattendance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Approximate nearest-neighbour search over a {@link LbphGallery} with a hierarchical
+ * navigable small-world graph (HNSW, Malkov and Yashunin) under the same chi-square
+ * distance as exhaustive LBPH.
+ * <p>
+ * Node i is gallery sample i. A search greedily descends the sparse upper layers and
+ * then runs a best-first search of width ef on layer 0; ef is the recall/latency knob
+ * (-Dfaceattendance.lbph.ann.ef, default 64). Candidates are scored with early abandoning
+ * against the worst of the current ef results.
+ * <p>
+ * Samples are inserted one at a time in gallery order, so a grown gallery only needs
+ * its new samples inserted. Searches may run concurrently; inserts must not overlap
+ * with searches or with each other.
+ */
+public class HnswIndex {
+    public static final String ANN_PROPERTY = "faceattendance.lbph.ann";
+    public static final String EF_PROPERTY = "faceattendance.lbph.ann.ef";
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 100;
+    public static final int DEFAULT_EF = 64;
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+
+    private final LbphGallery gallery;
+    private final ChiSquareKernel kernel;
+    private final int m;
+    private final int maxM0; // layer 0 keeps twice as many links
+    private final int efConstruction;
+    private final double levelFactor;
+    private final Random random = new Random(42);
+    private volatile int ef;
+
+    // links[node][level] = {count, neighbor...}
+    private int[][][] links = new int[256][][];
+    private int size;
+    private int entry = -1;
+    private int maxLevel = -1;
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+    public HnswIndex(LbphGallery gallery, ChiSquareKernel kernel, int m, int efConstruction) {
+        this.gallery = gallery;
+        this.kernel = kernel;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelFactor = 1.0 / Math.log(m);
+        this.ef = Math.max(1, Integer.getInteger(EF_PROPERTY, DEFAULT_EF));
+    }
+
+    // Index over every sample of the gallery
+    public static HnswIndex build(LbphGallery gallery, ChiSquareKernel kernel) {
+        HnswIndex index = new HnswIndex(gallery, kernel, DEFAULT_M, DEFAULT_EF_CONSTRUCTION);
+        index.catchUp();
+        return index;
+    }
+
+    // models/lbph_model.xml -> models/lbph_model.hnsw
+    public static File fileFor(String modelFile) {
+        String base = modelFile.endsWith(".xml") ? modelFile.substring(0, modelFile.length() - 4) : modelFile;
+        return new File(base + ".hnsw");
+    }
+
+    /**
+     * Loads the saved index if it was built over a prefix of this gallery, inserts the
+     * samples added since (new enrollments) and saves it back; otherwise builds from
+     * scratch and saves. A failed save is reported to log and the in-memory index still used.
+     */
+    public static HnswIndex loadOrBuild(File file, LbphGallery gallery, ChiSquareKernel kernel, Consumer<String> log) {
+        HnswIndex index = null;
+        if (file.exists()) {
+            try {
+                index = read(file, gallery, kernel);
+            } catch (IOException ex) {
+                log.accept("Ignoring unreadable ANN index " + file + ": " + ex.getMessage());
+            }
+        }
+        if (index == null) {
+            index = new HnswIndex(gallery, kernel, DEFAULT_M, DEFAULT_EF_CONSTRUCTION);
+        }
+        int before = index.size;
+        index.catchUp();
+        if (index.size != before || !file.exists()) {
+            try {
+                index.save(file);
+            } catch (IOException ex) {
+                log.accept("Could not save ANN index " + file + ": " + ex.getMessage());
+            }
+        }
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getEf() {
+        return ef;
+    }
+
+    public void setEf(int ef) {
+        this.ef = Math.max(1, ef);
+    }
+
+    // Inserts gallery samples that are not indexed yet
+    public void catchUp() {
+        while (size < gallery.size()) {
+            insert(size);
+        }
+    }
+
+    private void insert(int node) {
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelFactor);
+        if (node == links.length) links = Arrays.copyOf(links, links.length * 2);
+        int[][] own = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            own[l] = new int[1 + (l == 0 ? maxM0 : m)];
+        }
+        links[node] = own;
+        size = node + 1;
+        if (entry < 0) {
+            entry = node;
+            maxLevel = level;
+            return;
+        }
+
+        float[] q = gallery.histogram(node);
+        int current = entry;
+        float currentDist = distance(q, current, Float.MAX_VALUE);
+        for (int l = maxLevel; l > level; l--) {
+            long best = greedy(q, current, currentDist, l);
+            current = node(best);
+            currentDist = distance(best);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            long[] found = searchLayer(q, current, currentDist, efConstruction, l);
+            int[] chosen = selectNeighbors(found, m);
+            int[] mine = own[l];
+            for (int c : chosen) {
+                mine[++mine[0]] = c;
+                link(c, node, l);
+            }
+            current = node(found[0]);
+            currentDist = distance(found[0]);
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entry = node;
+        }
+    }
+
+    // Adds target to from's list at level, shrinking the list with the heuristic when full
+    private void link(int from, int target, int level) {
+        int[] list = links[from][level];
+        int cap = list.length - 1;
+        if (list[0] < cap) {
+            list[++list[0]] = target;
+            return;
+        }
+        float[] base = gallery.histogram(from);
+        long[] candidates = new long[cap + 1];
+        for (int i = 0; i < cap; i++) {
+            candidates[i] = key(distance(base, list[i + 1], Float.MAX_VALUE), list[i + 1]);
+        }
+        candidates[cap] = key(distance(base, target, Float.MAX_VALUE), target);
+        Arrays.sort(candidates);
+        int[] kept = selectNeighbors(candidates, cap);
+        list[0] = kept.length;
+        System.arraycopy(kept, 0, list, 1, kept.length);
+    }
+
+    // HNSW heuristic: take candidates nearest first, skipping any that is closer to an
+    // already chosen neighbour than to the base; keeps links spread across clusters
+    private int[] selectNeighbors(long[] sorted, int max) {
+        int[] chosen = new int[Math.min(max, sorted.length)];
+        int n = 0;
+        for (int i = 0; i < sorted.length && n < chosen.length; i++) {
+            int c = node(sorted[i]);
+            float toBase = distance(sorted[i]);
+            float[] h = gallery.histogram(c);
+            boolean keep = true;
+            for (int j = 0; j < n && keep; j++) {
+                keep = distance(h, chosen[j], toBase) >= toBase;
+            }
+            if (keep) chosen[n++] = c;
+        }
+        return n == chosen.length ? chosen : Arrays.copyOf(chosen, n);
+    }
+
+    /**
+     * The k nearest samples found with search width ef, nearest first, packed as
+     * (distance, node) keys; read them with {@link #node(long)} and {@link #distance(long)}.
+     */
+    public long[] search(float[] probe, int k, int ef) {
+        if (entry < 0) return new long[0];
+        int current = entry;
+        float currentDist = distance(probe, current, Float.MAX_VALUE);
+        for (int l = maxLevel; l > 0; l--) {
+            long best = greedy(probe, current, currentDist, l);
+            current = node(best);
+            currentDist = distance(best);
+        }
+        long[] found = searchLayer(probe, current, currentDist, Math.max(ef, k), 0);
+        return found.length <= k ? found : Arrays.copyOf(found, k);
+    }
+
+    public long[] search(float[] probe, int k) {
+        return search(probe, k, ef);
+    }
+
+    // Moves to the closest neighbour at level until nothing is closer
+    private long greedy(float[] q, int start, float startDist, int level) {
+        int current = start;
+        float best = startDist;
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int[] list = links[current][level];
+            for (int i = 1; i <= list[0]; i++) {
+                float d = distance(q, list[i], best);
+                if (d < best) {
+                    best = d;
+                    current = list[i];
+                    moved = true;
+                }
+            }
+        }
+        return key(best, current);
+    }
+
+    // Best-first search of width ef at one level; result sorted nearest first
+    private long[] searchLayer(float[] q, int start, float startDist, int ef, int level) {
+        Visited seen = visited.get();
+        seen.reset(size);
+        seen.mark(start);
+        LongHeap candidates = new LongHeap(ef * 2);     // nearest first
+        LongHeap results = new LongHeap(ef + 1);        // farthest first (keys complemented)
+        long startKey = key(startDist, start);
+        candidates.push(startKey);
+        results.push(~startKey);
+        while (!candidates.isEmpty()) {
+            long c = candidates.pop();
+            float worst = distance(~results.peek());
+            if (distance(c) > worst) break;
+            int[] list = links[node(c)][level];
+            for (int i = 1; i <= list[0]; i++) {
+                int n = list[i];
+                if (!seen.mark(n)) continue;
+                boolean full = results.size() >= ef;
+                float limit = full ? distance(~results.peek()) : Float.MAX_VALUE;
+                float d = distance(q, n, limit);
+                if (!full || d < limit) {
+                    long k = key(d, n);
+                    candidates.push(k);
+                    results.push(~k);
+                    if (results.size() > ef) results.pop();
+                }
+            }
+        }
+        long[] out = new long[results.size()];
+        for (int i = out.length - 1; i >= 0; i--) {
+            out[i] = ~results.pop();
+        }
+        return out;
+    }
+
+    private float distance(float[] q, int node, float abandonAt) {
+        return gallery.distance(kernel, q, node, abandonAt);
+    }
+
+    // Distances are non-negative, so their float bits order like the values
+    private static long key(float distance, int node) {
+        return ((long) Float.floatToIntBits(distance) << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    public static int node(long key) {
+        return (int) key;
+    }
+
+    public static float distance(long key) {
+        return Float.intBitsToFloat((int) (key >>> 32));
+    }
+
+    // Writes to a temporary file and renames it over the old one
+    public void save(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(gallery.dim());
+            out.writeInt(size);
+            out.writeLong(gallery.fingerprint(size));
+            out.writeInt(entry);
+            out.writeInt(maxLevel);
+            for (int i = 0; i < size; i++) {
+                int[][] own = links[i];
+                out.writeByte(own.length);
+                for (int[] list : own) {
+                    out.writeShort(list[0]);
+                    for (int j = 1; j <= list[0]; j++) {
+                        out.writeInt(list[j]);
+                    }
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // null when the file was built over different samples than the start of this gallery
+    static HnswIndex read(File file, LbphGallery gallery, ChiSquareKernel kernel) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not an ANN index file");
+            }
+            int m = in.readInt();
+            int efConstruction = in.readInt();
+            int dim = in.readInt();
+            int size = in.readInt();
+            long fingerprint = in.readLong();
+            if (dim != gallery.dim() || size > gallery.size() || fingerprint != gallery.fingerprint(size)) {
+                return null;
+            }
+            HnswIndex index = new HnswIndex(gallery, kernel, m, efConstruction);
+            index.entry = in.readInt();
+            index.maxLevel = in.readInt();
+            index.links = new int[Math.max(256, size)][][];
+            for (int i = 0; i < size; i++) {
+                int levels = in.readUnsignedByte();
+                int[][] own = new int[levels][];
+                for (int l = 0; l < levels; l++) {
+                    int[] list = new int[1 + (l == 0 ? index.maxM0 : m)];
+                    list[0] = in.readUnsignedShort();
+                    for (int j = 1; j <= list[0]; j++) {
+                        list[j] = in.readInt();
+                    }
+                    own[l] = list;
+                }
+                index.links[i] = own;
+            }
+            index.size = size;
+            // keep the level draws of later inserts independent of the loaded part
+            index.random.setSeed(42L + size);
+            return index;
+        }
+    }
+
+    public String describe() {
+        return "HNSW M=" + m + " ef=" + ef + ", " + size + " nodes, " + (maxLevel + 1) + " levels";
+    }
+
+    // Visited marks stamped with a generation number, so clearing is O(1)
+    private static final class Visited {
+        int[] stamps = new int[0];
+        int generation;
+
+        void reset(int n) {
+            if (stamps.length < n) stamps = new int[Math.max(n, stamps.length * 2)];
+            if (++generation == 0) {
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+        }
+
+        // true if node was not marked yet
+        boolean mark(int node) {
+            if (stamps[node] == generation) return false;
+            stamps[node] = generation;
+            return true;
+        }
+    }
+
+    // Binary min-heap of longs
+    private static final class LongHeap {
+        long[] items;
+        int size;
+
+        LongHeap(int capacity) {
+            items = new long[Math.max(4, capacity)];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long peek() {
+            return items[0];
+        }
+
+        void push(long v) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (items[parent] <= v) break;
+                items[i] = items[parent];
+                i = parent;
+            }
+            items[i] = v;
+        }
+
+        long pop() {
+            long top = items[0];
+            long last = items[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && items[child + 1] < items[child]) child++;
+                if (last <= items[child]) break;
+                items[i] = items[child];
+                i = child;
+            }
+            items[i] = last;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.faceattendance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides who a face is from several frames instead of the first one under the threshold.
+ * <p>
+ * Every face the pipeline follows (tracker id, or box overlap with the previous frame
+ * when tracking is off) collects evidence for each student it has been matched to, in
+ * the manner of a sequential probability ratio test. A match at distance d adds
+ * (threshold - d) / scale to that student's score and takes the same amount from every
+ * other candidate; a frame with no match takes {@value #NO_MATCH_PENALTY} from all.
+ * Per frame the step is capped at the accept bound. The face is accepted as a student as
+ * soon as the student's score reaches ln((1 - beta) / alpha), and a candidate is dropped
+ * once its score falls to ln(beta / (1 - alpha)), with alpha = 1% (wrong student) and
+ * beta = 10% (missed student).
+ * <p>
+ * With the default scale of 7.5 a match at 41 or closer (threshold 75) is accepted on
+ * its first frame, one at 58 on its second, while a borderline 70 needs several
+ * agreeing frames. When the window (-Dfaceattendance.decision.window, default 15 frames)
+ * runs out, the leading student is accepted if the score is still positive and most of
+ * the matched frames named them; otherwise the face is reported unknown and the test
+ * starts over. A window of 1 accepts on the first frame under the threshold, as the
+ * app did before. -Dfaceattendance.decision.scale changes the scale.
+ * <p>
+ * Used by the recognize stage only, one instance per pipeline; summary() may be read
+ * from any thread.
+ */
+public class IdentityDecider {
+    public static final String WINDOW_PROPERTY = "faceattendance.decision.window";
+    public static final String SCALE_PROPERTY = "faceattendance.decision.scale";
+    public static final int DEFAULT_WINDOW = 15;
+    public static final double DEFAULT_SCALE = 7.5;
+
+    private static final double ALPHA = 0.01;
+    private static final double BETA = 0.10;
+    private static final double ACCEPT = Math.log((1 - BETA) / ALPHA);
+    private static final double DROP = Math.log(BETA / (1 - ALPHA));
+    private static final double NO_MATCH_PENALTY = 1.0;
+    private static final int FORGET_AFTER_FRAMES = 10; // a face not seen this long is gone
+    private static final double SAME_FACE_OVERLAP = 0.3;
+
+    public enum State { PENDING, ACCEPTED, UNKNOWN }
+
+    public static final class Verdict {
+        public final State state;
+        public final int label;          // the accepted student, else -1
+        public final boolean fresh;      // accepted on this frame
+        public final int frames;         // frames the decision took
+        public final double millis;      // from first sighting to decision
+
+        Verdict(State state, int label, boolean fresh, int frames, double millis) {
+            this.state = state;
+            this.label = label;
+            this.fresh = fresh;
+            this.frames = frames;
+            this.millis = millis;
+        }
+    }
+
+    private static final class Candidate {
+        double score;
+        int votes;
+    }
+
+    private static final class Face {
+        int x, y, width, height;
+        int trackId;
+        long lastFrame;
+        long firstNanos;
+        int frames;
+        int matchedFrames;
+        final Map<Integer, Candidate> candidates = new HashMap<>();
+        int accepted = -1;
+
+        boolean overlaps(int ox, int oy, int ow, int oh) {
+            int ix = Math.max(0, Math.min(x + width, ox + ow) - Math.max(x, ox));
+            int iy = Math.max(0, Math.min(y + height, oy + oh) - Math.max(y, oy));
+            double inter = (double) ix * iy;
+            double union = (double) width * height + (double) ow * oh - inter;
+            return union > 0 && inter / union >= SAME_FACE_OVERLAP;
+        }
+
+        void restart(long nanos) {
+            candidates.clear();
+            frames = 0;
+            matchedFrames = 0;
+            firstNanos = nanos;
+        }
+    }
+
+    private final double threshold;
+    private final int window;
+    private final double scale;
+    private final List<Face> faces = new ArrayList<>();
+    private long frame;
+
+    // decision statistics, for summary()
+    private long acceptedCount, unknownCount, acceptedFrames, maxFrames;
+    private double acceptedMillis;
+    private final int[] framesHistogram = new int[4]; // accepted in 1, 2, 3-5, more frames
+
+    public IdentityDecider(double threshold, int window, double scale) {
+        this.threshold = threshold;
+        this.window = Math.max(1, window);
+        this.scale = scale > 0 ? scale : DEFAULT_SCALE;
+    }
+
+    public static IdentityDecider fromSystemProperty(double threshold) {
+        double scale = DEFAULT_SCALE;
+        String s = System.getProperty(SCALE_PROPERTY);
+        if (s != null) scale = Double.parseDouble(s.trim());
+        return new IdentityDecider(threshold, Integer.getInteger(WINDOW_PROPERTY, DEFAULT_WINDOW), scale);
+    }
+
+    // Starts a frame; faces not observed for a while are forgotten
+    public synchronized void beginFrame() {
+        frame++;
+        faces.removeIf(f -> frame - f.lastFrame > FORGET_AFTER_FRAMES);
+    }
+
+    /**
+     * Adds one face's match for the current frame (label -1 when nothing matched) and
+     * returns where its decision stands. trackId is the tracker's id, 0 when tracking is off.
+     */
+    public synchronized Verdict observe(int x, int y, int width, int height, int trackId,
+                                        int label, double distance, long capturedNanos) {
+        Face f = find(x, y, width, height, trackId, capturedNanos);
+        f.x = x;
+        f.y = y;
+        f.width = width;
+        f.height = height;
+        f.lastFrame = frame;
+        if (f.accepted != -1) {
+            return new Verdict(State.ACCEPTED, f.accepted, false, f.frames, 0);
+        }
+        if (f.frames == 0) f.firstNanos = capturedNanos;
+        f.frames++;
+
+        if (label > 0) {
+            f.matchedFrames++;
+            double step = clamp((threshold - distance) / scale);
+            Candidate c = f.candidates.computeIfAbsent(label, k -> new Candidate());
+            c.score += step;
+            c.votes++;
+            if (step > 0) {
+                for (Map.Entry<Integer, Candidate> e : f.candidates.entrySet()) {
+                    if (e.getKey() != label) e.getValue().score -= step;
+                }
+            }
+        } else {
+            for (Candidate c : f.candidates.values()) c.score -= NO_MATCH_PENALTY;
+        }
+        for (Iterator<Candidate> it = f.candidates.values().iterator(); it.hasNext(); ) {
+            if (it.next().score <= DROP) it.remove();
+        }
+
+        int leader = -1;
+        Candidate best = null;
+        for (Map.Entry<Integer, Candidate> e : f.candidates.entrySet()) {
+            if (best == null || e.getValue().score > best.score) {
+                best = e.getValue();
+                leader = e.getKey();
+            }
+        }
+        if (best != null && best.score >= ACCEPT) {
+            return accept(f, leader);
+        }
+        if (f.frames >= window) {
+            if (best != null && best.score > 0 && 2 * best.votes > f.matchedFrames) return accept(f, leader);
+            return unknown(f, capturedNanos);
+        }
+        if (best == null && f.frames >= 2) {
+            return unknown(f, capturedNanos); // every frame says stranger
+        }
+        return new Verdict(State.PENDING, -1, false, f.frames, 0);
+    }
+
+    private Face find(int x, int y, int width, int height, int trackId, long nanos) {
+        for (Face f : faces) {
+            if (trackId > 0 ? f.trackId == trackId : f.trackId == 0 && f.lastFrame == frame - 1 && f.overlaps(x, y, width, height)) {
+                return f;
+            }
+        }
+        Face f = new Face();
+        f.trackId = trackId;
+        f.restart(nanos);
+        faces.add(f);
+        return f;
+    }
+
+    private Verdict accept(Face f, int label) {
+        f.accepted = label;
+        double millis = (System.nanoTime() - f.firstNanos) / 1e6;
+        acceptedCount++;
+        acceptedFrames += f.frames;
+        acceptedMillis += millis;
+        maxFrames = Math.max(maxFrames, f.frames);
+        framesHistogram[f.frames == 1 ? 0 : f.frames == 2 ? 1 : f.frames <= 5 ? 2 : 3]++;
+        return new Verdict(State.ACCEPTED, label, true, f.frames, millis);
+    }
+
+    private Verdict unknown(Face f, long nanos) {
+        int frames = f.frames;
+        double millis = (System.nanoTime() - f.firstNanos) / 1e6;
+        unknownCount++;
+        f.restart(nanos);
+        return new Verdict(State.UNKNOWN, -1, false, frames, millis);
+    }
+
+    private double clamp(double step) {
+        return Math.max(-ACCEPT, Math.min(ACCEPT, step));
+    }
+
+    public synchronized String summary() {
+        if (acceptedCount == 0) {
+            return "decisions: none accepted, " + unknownCount + " unknown (window " + window + ")";
+        }
+        return String.format(Locale.US,
+                "decisions: %d accepted in %.1f frames / %.0f ms mean, max %d frames (1: %d, 2: %d, 3-5: %d, more: %d), %d unknown (window %d)",
+                acceptedCount, (double) acceptedFrames / acceptedCount, acceptedMillis / acceptedCount, maxFrames,
+                framesHistogram[0], framesHistogram[1], framesHistogram[2], framesHistogram[3], unknownCount, window);
+    }
+}
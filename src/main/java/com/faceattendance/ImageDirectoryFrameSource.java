@@ -0,0 +1,85 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
+
+/**
+ * Replays a directory of still frames (png/jpg/bmp) in file-name order.
+ * Files that fail to decode are skipped.
+ */
+public class ImageDirectoryFrameSource implements FrameSource {
+    private final File dir;
+    private final boolean realtime;
+    private final double fps;
+    private final OpenCVFrameConverter.ToMat convToMat = new OpenCVFrameConverter.ToMat();
+    private File[] files;
+    private int index;
+    private Mat current;
+    private long nextFrameNanos;
+    private boolean grayscale;
+
+    public ImageDirectoryFrameSource(File dir, boolean realtime, double fps) {
+        this.dir = dir;
+        this.realtime = realtime;
+        this.fps = fps > 0 ? fps : 30.0;
+    }
+
+    @Override
+    public void setGrayscale(boolean grayscale) {
+        this.grayscale = grayscale;
+    }
+
+    @Override
+    public void start() throws Exception {
+        files = dir.listFiles((d, name) -> {
+            String n = name.toLowerCase(Locale.ROOT);
+            return n.endsWith(".png") || n.endsWith(".jpg") || n.endsWith(".jpeg") || n.endsWith(".bmp");
+        });
+        if (files == null) {
+            throw new IllegalArgumentException("Not a readable directory: " + dir.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        index = 0;
+        nextFrameNanos = System.nanoTime();
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        while (index < files.length) {
+            Mat img = imread(files[index++].getAbsolutePath(), grayscale ? IMREAD_GRAYSCALE : IMREAD_COLOR);
+            if (img == null || img.empty()) continue;
+            if (current != null) current.release();
+            current = img;
+            if (realtime) {
+                nextFrameNanos = FrameSources.pace(nextFrameNanos, (long) (1e9 / fps));
+            }
+            return convToMat.convert(current);
+        }
+        return null;
+    }
+
+    @Override
+    public void stop() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+    }
+
+    @Override
+    public boolean isLive() {
+        return false;
+    }
+
+    @Override
+    public String describe() {
+        return "images " + dir.getPath() + " (" + (files == null ? 0 : files.length) + " files" + (realtime ? ")" : ", replay)");
+    }
+}
@@ -0,0 +1,244 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+
+/**
+ * LBPH identification in Java: the same features and distance as OpenCV's
+ * LBPHFaceRecognizer.predict, over a {@link LbphGallery} we control.
+ * <p>
+ * The probe histogram is computed by {@link LbphFeatures}; the nearest sample is found
+ * by a linear scan with the best available {@link ChiSquareKernel}, abandoning each
+ * sample as soon as its partial distance reaches the best one so far. Labels and
+ * distances agree with OpenCV up to float rounding (see LbphParityCheck).
+ * <p>
+ * The model file is still the one trainModel writes; it is read once with OpenCV and
+ * copied into the flat gallery. -Dfaceattendance.lbph.offheap=true keeps the gallery
+ * in direct buffers outside the Java heap.
+ * <p>
+ * -Dfaceattendance.lbph.ann=true searches a {@link HnswIndex} instead of scanning every
+ * sample. The index is saved next to the model and extended, not rebuilt, with the
+ * students journaled since training; a retrained model gets a new index.
+ * <p>
+ * Students can be added and removed while the engine is in use ({@link #add},
+ * {@link #remove}); lookups take a shared lock and changes an exclusive one. On load, the
+ * {@link ModelJournal} of changes made since the last full training is replayed.
+ * <p>
+ * When trainModel has written a binary copy of the model ({@link LbphModelFile}) that is
+ * current for the XML file, it is memory-mapped instead of parsing the XML with OpenCV;
+ * -Dfaceattendance.lbph.binary=false always reads the XML.
+ */
+public class LbphEngine implements FaceMatcher {
+    public static final String OFFHEAP_PROPERTY = "faceattendance.lbph.offheap";
+
+    private final LbphFeatures features;
+    private final LbphGallery gallery;
+    private final ChiSquareKernel kernel;
+    private final double threshold; // the model's own threshold; OpenCV returns -1 at or above it
+    private HnswIndex index;        // null = exhaustive scan
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile long modifications; // add/remove calls, so copies can tell they are stale
+
+    public LbphEngine(LbphFeatures features, LbphGallery gallery, ChiSquareKernel kernel, double threshold) {
+        this.features = features;
+        this.gallery = gallery;
+        this.kernel = kernel;
+        this.threshold = threshold;
+    }
+
+    // Model, journal and (with -Dfaceattendance.ann) index; what is skipped on the way is reported to log
+    public static LbphEngine load(String modelFile, Consumer<String> log) {
+        if (!new File(modelFile).exists()) {
+            throw new IllegalStateException("Model not found: " + modelFile);
+        }
+        LbphEngine engine = readModel(modelFile, log);
+        try {
+            new ModelJournal(modelFile).replay(engine);
+        } catch (IOException ex) {
+            log.accept("Ignoring the rest of the model journal: " + ex.getMessage());
+        }
+        if (Boolean.getBoolean(HnswIndex.ANN_PROPERTY)) {
+            engine.setIndex(HnswIndex.loadOrBuild(HnswIndex.fileFor(modelFile), engine.gallery, engine.kernel, log));
+        }
+        return engine;
+    }
+
+    // The binary model if it is current for the XML, otherwise the XML through OpenCV
+    private static LbphEngine readModel(String modelFile, Consumer<String> log) {
+        File binary = LbphModelFile.binaryFor(modelFile);
+        if (!"false".equals(System.getProperty(LbphModelFile.BINARY_PROPERTY))
+                && LbphModelFile.isCurrent(binary, new File(modelFile))) {
+            try {
+                return LbphModelFile.map(binary, ChiSquareKernel.best());
+            } catch (IOException ex) {
+                log.accept("Reading " + modelFile + " instead of the binary model: " + ex.getMessage());
+            }
+        }
+        return fromXml(modelFile, Boolean.getBoolean(OFFHEAP_PROPERTY));
+    }
+
+    // Reads an XML model with OpenCV and copies it out; the journal is not applied
+    public static LbphEngine fromXml(String modelFile, boolean offHeap) {
+        LBPHFaceRecognizer r = LBPHFaceRecognizer.create();
+        try {
+            r.read(modelFile);
+            return fromRecognizer(r, offHeap, ChiSquareKernel.best());
+        } finally {
+            r.close();
+        }
+    }
+
+    // Copies parameters and gallery out of a trained recognizer; the recognizer may be closed afterwards
+    public static LbphEngine fromRecognizer(LBPHFaceRecognizer r, boolean offHeap, ChiSquareKernel kernel) {
+        LbphFeatures features = new LbphFeatures(r.getRadius(), r.getNeighbors(), r.getGridX(), r.getGridY());
+        LbphGallery gallery = LbphGallery.fromRecognizer(r, offHeap);
+        return new LbphEngine(features, gallery, kernel, r.getThreshold());
+    }
+
+    public LbphFeatures getFeatures() {
+        return features;
+    }
+
+    public LbphGallery getGallery() {
+        return gallery;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public ChiSquareKernel getKernel() {
+        return kernel;
+    }
+
+    public HnswIndex getIndex() {
+        return index;
+    }
+
+    // Set before the engine is shared between threads
+    public void setIndex(HnswIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public Match predict(Mat face) {
+        return nearest(features.compute(face));
+    }
+
+    public Match nearest(float[] probe) {
+        lock.readLock().lock();
+        try {
+            if (index == null) return scan(probe);
+            // removed samples stay in the graph as waypoints; take the nearest live one
+            for (long k : index.search(probe, index.getEf())) {
+                int label = gallery.label(HnswIndex.node(k));
+                if (label != -1) return thresholded(label, HnswIndex.distance(k));
+            }
+            return new Match(-1, Double.MAX_VALUE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Exact 1-nearest neighbour of a probe histogram; first sample wins ties, as in OpenCV
+    public Match scan(float[] probe) {
+        return scan(probe, null);
+    }
+
+    // As scan(probe), over the samples whose label passes keep (null = all)
+    public Match scan(float[] probe, IntPredicate keep) {
+        lock.readLock().lock();
+        try {
+            float best = Float.MAX_VALUE;
+            int bestLabel = -1;
+            int n = gallery.size();
+            for (int i = 0; i < n; i++) {
+                int label = gallery.label(i);
+                if (label == -1 || (keep != null && !keep.test(label))) continue;
+                float d = gallery.distance(kernel, probe, i, best);
+                if (d < best) {
+                    best = d;
+                    bestLabel = label;
+                }
+            }
+            return thresholded(bestLabel, best);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Appends one sample (and indexes it); visible to the next lookup
+    public void add(int label, float[] histogram) {
+        lock.writeLock().lock();
+        try {
+            gallery.add(label, histogram);
+            if (index != null) index.catchUp();
+            modifications++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Drops every sample of a student; returns how many there were
+    public int remove(int label) {
+        lock.writeLock().lock();
+        try {
+            modifications++;
+            return gallery.remove(label);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getModificationCount() {
+        return modifications;
+    }
+
+    // A new engine over the live samples whose label passes keep (copied; no index)
+    public LbphEngine subset(IntPredicate keep) {
+        lock.readLock().lock();
+        try {
+            LbphGallery part = new LbphGallery(gallery.dim(), gallery.isOffHeap());
+            for (int i = 0; i < gallery.size(); i++) {
+                int label = gallery.label(i);
+                if (label != -1 && keep.test(label)) part.add(label, gallery.histogram(i));
+            }
+            return new LbphEngine(features, part, kernel, threshold);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Match thresholded(int label, float distance) {
+        if (label == -1 || distance >= threshold) {
+            return new Match(-1, Double.MAX_VALUE); // what OpenCV's collector reports when nothing qualifies
+        }
+        return new Match(label, distance);
+    }
+
+    @Override
+    public int gallerySize() {
+        return gallery.liveSize();
+    }
+
+    @Override
+    public String describe() {
+        return String.format(Locale.US, "Java LBPH (%s kernel, %s), %d samples, %.1f MB%s",
+                kernel.name(), features, gallery.liveSize(), gallery.bytes() / 1048576.0,
+                gallery.isMapped() ? " mapped" : gallery.isOffHeap() ? " off-heap" : "")
+                + (index != null ? ", " + index.describe() : "");
+    }
+
+    @Override
+    public void close() {
+        // heap and direct buffers are released by the GC
+    }
+}
@@ -0,0 +1,164 @@
+package com.faceattendance;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+
+/**
+ * Spatial LBP histograms computed exactly like OpenCV's LBPHFaceRecognizer
+ * (lbph_faces.cpp): circular LBP with bilinear interpolation ("elbp"), then one
+ * 2^neighbors-bin histogram per grid cell, each normalized by the cell's pixel count and
+ * concatenated row by row. Arithmetic is done in float in the same order as the C++ code
+ * so the values match the stored model histograms.
+ * <p>
+ * With the default parameters (radius 1, 8 neighbors, 8x8 grid) a feature vector has
+ * 64 x 256 = 16384 floats. Instances are immutable and thread-safe.
+ */
+public final class LbphFeatures {
+    private static final float FLT_EPSILON = Math.ulp(1.0f);
+
+    private final int radius, neighbors, gridX, gridY, bins;
+    // sample point offsets and interpolation weights per neighbor
+    private final int[] fx, fy, cx, cy;
+    private final float[] w1, w2, w3, w4;
+
+    public LbphFeatures(int radius, int neighbors, int gridX, int gridY) {
+        if (neighbors < 1 || neighbors > 16) {
+            throw new IllegalArgumentException("LBP neighbors must be 1-16, got " + neighbors);
+        }
+        this.radius = radius;
+        this.neighbors = neighbors;
+        this.gridX = gridX;
+        this.gridY = gridY;
+        this.bins = 1 << neighbors;
+        fx = new int[neighbors];
+        fy = new int[neighbors];
+        cx = new int[neighbors];
+        cy = new int[neighbors];
+        w1 = new float[neighbors];
+        w2 = new float[neighbors];
+        w3 = new float[neighbors];
+        w4 = new float[neighbors];
+        for (int n = 0; n < neighbors; n++) {
+            float x = (float) (radius * Math.cos(2.0 * Math.PI * n / (float) neighbors));
+            float y = (float) (-radius * Math.sin(2.0 * Math.PI * n / (float) neighbors));
+            fx[n] = (int) Math.floor(x);
+            fy[n] = (int) Math.floor(y);
+            cx[n] = (int) Math.ceil(x);
+            cy[n] = (int) Math.ceil(y);
+            float ty = y - fy[n];
+            float tx = x - fx[n];
+            w1[n] = (1 - tx) * (1 - ty);
+            w2[n] = tx * (1 - ty);
+            w3[n] = (1 - tx) * ty;
+            w4[n] = tx * ty;
+        }
+    }
+
+    // OpenCV's LBPHFaceRecognizer.create() defaults
+    public static LbphFeatures defaults() {
+        return new LbphFeatures(1, 8, 8, 8);
+    }
+
+    public int length() {
+        return gridX * gridY * bins;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public int getNeighbors() {
+        return neighbors;
+    }
+
+    public int getGridX() {
+        return gridX;
+    }
+
+    public int getGridY() {
+        return gridY;
+    }
+
+    // Histogram of an 8-bit single-channel image
+    public float[] compute(Mat gray) {
+        if (gray.type() != CV_8UC1) {
+            throw new IllegalArgumentException("LBPH needs an 8-bit grayscale image, got type " + gray.type());
+        }
+        int rows = gray.rows();
+        int cols = gray.cols();
+        byte[] pixels = new byte[rows * cols];
+        BytePointer data = gray.data();
+        if (gray.isContinuous()) {
+            data.position(0).get(pixels, 0, pixels.length);
+        } else {
+            long step = gray.step();
+            for (int r = 0; r < rows; r++) {
+                data.position(r * step).get(pixels, r * cols, cols);
+            }
+        }
+        return compute(pixels, rows, cols);
+    }
+
+    // Histogram of row-major 8-bit pixels
+    public float[] compute(byte[] pixels, int rows, int cols) {
+        int lbpRows = rows - 2 * radius;
+        int lbpCols = cols - 2 * radius;
+        float[] hist = new float[length()];
+        if (lbpRows <= 0 || lbpCols <= 0) return hist;
+
+        int[] codes = new int[lbpRows * lbpCols];
+        for (int n = 0; n < neighbors; n++) {
+            int bit = 1 << n;
+            int o1 = fy[n] * cols + fx[n];
+            int o2 = fy[n] * cols + cx[n];
+            int o3 = cy[n] * cols + fx[n];
+            int o4 = cy[n] * cols + cx[n];
+            float a = w1[n], b = w2[n], c = w3[n], d = w4[n];
+            for (int i = radius; i < rows - radius; i++) {
+                int row = i * cols;
+                int out = (i - radius) * lbpCols - radius;
+                for (int j = radius; j < cols - radius; j++) {
+                    int p = row + j;
+                    float t = a * (pixels[p + o1] & 0xFF) + b * (pixels[p + o2] & 0xFF)
+                            + c * (pixels[p + o3] & 0xFF) + d * (pixels[p + o4] & 0xFF);
+                    float center = pixels[p] & 0xFF;
+                    if (t > center || Math.abs(t - center) < FLT_EPSILON) {
+                        codes[out + j] += bit;
+                    }
+                }
+            }
+        }
+
+        // cells are lbpCols/gridX by lbpRows/gridY; leftover pixels at the right and bottom are ignored, as in OpenCV
+        int width = lbpCols / gridX;
+        int height = lbpRows / gridY;
+        int total = width * height;
+        if (total == 0) return hist;
+        double scale = 1.0 / total;
+        int cell = 0;
+        for (int gy = 0; gy < gridY; gy++) {
+            for (int gx = 0; gx < gridX; gx++) {
+                int base = cell * bins;
+                int[] counts = new int[bins];
+                for (int r = gy * height; r < (gy + 1) * height; r++) {
+                    int row = r * lbpCols;
+                    for (int col = gx * width; col < (gx + 1) * width; col++) {
+                        counts[codes[row + col]]++;
+                    }
+                }
+                for (int k = 0; k < bins; k++) {
+                    hist[base + k] = (float) (counts[k] * scale);
+                }
+                cell++;
+            }
+        }
+        return hist;
+    }
+
+    @Override
+    public String toString() {
+        return "LBP radius " + radius + ", " + neighbors + " neighbors, " + gridX + "x" + gridY + " grid";
+    }
+}
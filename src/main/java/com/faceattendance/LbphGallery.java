@@ -0,0 +1,230 @@
+package com.faceattendance;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+
+/**
+ * Every gallery histogram back to back in flat float storage, with one label per sample.
+ * <p>
+ * Samples live in chunks of up to {@value #CHUNK_SAMPLES} histograms (256 MB at the
+ * default 16384 floats), either float[] on the heap or native-order direct ByteBuffers
+ * off-heap, so a scan walks contiguous memory and the gallery is not limited by the 2 GB
+ * array size. The last chunk grows by doubling, so small galleries stay small.
+ * Removing a student marks its samples with label -1 instead of moving the others, so
+ * sample numbers stay stable for indexes built over them. Appending and removing are not
+ * synchronized; searches may run concurrently once the gallery is built.
+ */
+public class LbphGallery {
+    public static final int CHUNK_SAMPLES = 4096;
+    private static final int FINGERPRINT_BINS = 16;
+
+    private final int dim;
+    private final int chunkSamples;
+    private final boolean offHeap;
+    private final List<float[]> heapChunks = new ArrayList<>();
+    private final List<ByteBuffer> directChunks = new ArrayList<>();
+    private int[] labels = new int[256];
+    private int size;
+    private int removed;
+    private boolean mapped;
+
+    public LbphGallery(int dim, boolean offHeap) {
+        this.dim = dim;
+        this.offHeap = offHeap;
+        // a chunk must stay addressable with int offsets
+        this.chunkSamples = Math.max(1, Math.min(CHUNK_SAMPLES, Integer.MAX_VALUE / (4 * Math.max(1, dim))));
+    }
+
+    // Copies the histograms and labels out of a trained OpenCV model
+    public static LbphGallery fromRecognizer(LBPHFaceRecognizer recognizer, boolean offHeap) {
+        MatVector hists = recognizer.getHistograms();
+        Mat labelMat = recognizer.getLabels();
+        int n = (int) hists.size();
+        int dim = n == 0 ? 0 : (int) hists.get(0).total();
+        LbphGallery g = new LbphGallery(dim, offHeap);
+        float[] row = new float[dim];
+        for (int i = 0; i < n; i++) {
+            Mat h = hists.get(i);
+            // model histograms are continuous 1 x dim CV_32F rows
+            new FloatPointer(h.data()).get(row, 0, dim);
+            g.add(labelAt(labelMat, i), row);
+        }
+        return g;
+    }
+
+    // Histograms stored in a file as little-endian floats, back to back from offset (the
+    // binary model); pages are read on demand, and samples added later go to ordinary
+    // direct buffers since the mapped chunks are exactly full
+    static LbphGallery map(FileChannel channel, long offset, int dim, int[] labels, int count) throws IOException {
+        LbphGallery g = new LbphGallery(dim, true);
+        for (int start = 0; start < count; start += g.chunkSamples) {
+            int n = Math.min(g.chunkSamples, count - start);
+            g.directChunks.add(channel.map(FileChannel.MapMode.READ_ONLY, offset + 4L * dim * start, 4L * dim * n)
+                    .order(ByteOrder.LITTLE_ENDIAN));
+        }
+        g.labels = Arrays.copyOf(labels, Math.max(256, count));
+        g.size = count;
+        for (int i = 0; i < count; i++) {
+            if (labels[i] == -1) g.removed++;
+        }
+        g.mapped = true;
+        return g;
+    }
+
+    private static int labelAt(Mat labels, int i) {
+        // CV_32SC1, one row or one column depending on how the model was trained
+        return labels.rows() == 1 ? labels.ptr(0, i).getInt() : labels.ptr(i, 0).getInt();
+    }
+
+    public void add(int label, float[] histogram) {
+        if (histogram.length != dim) {
+            throw new IllegalArgumentException("Histogram has " + histogram.length + " bins, gallery expects " + dim);
+        }
+        int chunk = size / chunkSamples;
+        int slot = size % chunkSamples;
+        ensureCapacity(chunk, slot + 1);
+        if (offHeap) {
+            ByteBuffer b = directChunks.get(chunk).duplicate().order(ByteOrder.nativeOrder());
+            b.position(4 * slot * dim);
+            b.asFloatBuffer().put(histogram);
+        } else {
+            System.arraycopy(histogram, 0, heapChunks.get(chunk), slot * dim, dim);
+        }
+        if (size == labels.length) labels = Arrays.copyOf(labels, size * 2);
+        labels[size++] = label;
+    }
+
+    // Allocates the chunk or doubles it (up to chunkSamples) so it holds at least samples histograms
+    private void ensureCapacity(int chunk, int samples) {
+        int have = chunk < chunkCount() ? capacity(chunk) : 0;
+        if (samples <= have) return;
+        int cap = Math.min(chunkSamples, Math.max(64, Math.max(samples, have * 2)));
+        if (offHeap) {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(4 * dim * cap).order(ByteOrder.nativeOrder());
+            if (have > 0) {
+                ByteBuffer old = directChunks.get(chunk).duplicate();
+                old.clear();
+                bigger.put(old);
+                bigger.clear();
+                directChunks.set(chunk, bigger);
+            } else {
+                directChunks.add(bigger);
+            }
+        } else {
+            if (have > 0) {
+                heapChunks.set(chunk, Arrays.copyOf(heapChunks.get(chunk), dim * cap));
+            } else {
+                heapChunks.add(new float[dim * cap]);
+            }
+        }
+    }
+
+    private int chunkCount() {
+        return offHeap ? directChunks.size() : heapChunks.size();
+    }
+
+    private int capacity(int chunk) {
+        return offHeap ? directChunks.get(chunk).capacity() / (4 * dim) : heapChunks.get(chunk).length / dim;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dim() {
+        return dim;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    // -1 for removed samples
+    public int label(int index) {
+        return labels[index];
+    }
+
+    // Marks every sample of the label as removed; returns how many there were
+    public int remove(int label) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (labels[i] == label) {
+                labels[i] = -1;
+                n++;
+            }
+        }
+        removed += n;
+        return n;
+    }
+
+    // Samples that have not been removed
+    public int liveSize() {
+        return size - removed;
+    }
+
+    // Distance from probe to sample index, abandoning once it reaches abandonAt
+    public float distance(ChiSquareKernel kernel, float[] probe, int index, float abandonAt) {
+        int chunk = index / chunkSamples;
+        int slot = index % chunkSamples;
+        if (offHeap) {
+            return kernel.distance(probe, directChunks.get(chunk), 4 * slot * dim, abandonAt);
+        }
+        return kernel.distance(probe, heapChunks.get(chunk), slot * dim, abandonAt);
+    }
+
+    // Copy of one stored histogram
+    public float[] histogram(int index) {
+        float[] out = new float[dim];
+        int chunk = index / chunkSamples;
+        int slot = index % chunkSamples;
+        if (offHeap) {
+            ByteBuffer b = directChunks.get(chunk).duplicate().order(ByteOrder.nativeOrder());
+            b.position(4 * slot * dim);
+            b.asFloatBuffer().get(out);
+        } else {
+            System.arraycopy(heapChunks.get(chunk), slot * dim, out, 0, dim);
+        }
+        return out;
+    }
+
+    // Checksum of a few bins of each of the first count samples, to tell whether something
+    // derived from the gallery, such as a saved index, still matches it (labels are left
+    // out so removals do not invalidate it)
+    public long fingerprint(int count) {
+        CRC32 crc = new CRC32();
+        ByteBuffer b = ByteBuffer.allocate(4 * (2 + FINGERPRINT_BINS));
+        b.putInt(dim).putInt(count);
+        crc.update(b.array(), 0, 8);
+        int stride = Math.max(1, dim / FINGERPRINT_BINS);
+        for (int i = 0; i < count; i++) {
+            b.clear();
+            int chunk = i / chunkSamples;
+            int slot = i % chunkSamples;
+            for (int k = 0; k < FINGERPRINT_BINS && k * stride < dim; k++) {
+                int bin = slot * dim + k * stride;
+                b.putFloat(offHeap ? directChunks.get(chunk).getFloat(4 * bin) : heapChunks.get(chunk)[bin]);
+            }
+            crc.update(b.array(), 0, b.position());
+        }
+        return crc.getValue() ^ ((long) count << 32);
+    }
+
+    public long bytes() {
+        return 4L * dim * size;
+    }
+}
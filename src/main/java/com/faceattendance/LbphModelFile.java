@@ -0,0 +1,251 @@
+package com.faceattendance;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Binary LBPH model (models/lbph_model.bin) that is memory-mapped instead of parsed.
+ * <p>
+ * OpenCV's XML model stores every histogram bin as text, which makes a large model
+ * hundreds of MB and seconds to read. The binary file holds the same data, all
+ * little-endian:
+ * <pre>
+ *   0    8  magic "LBPHBIN1"
+ *   8    4  version
+ *   12  16  radius, neighbors, grid x, grid y
+ *   28   4  histogram length (floats)
+ *   32   4  sample count
+ *   36   8  threshold (double)
+ *   44  16  size and modification time of the XML model it was written from (0 if none)
+ *   60   4  reserved
+ *   64      labels, one int per sample
+ *   ...     padding to a multiple of 64 bytes, then count x length floats, row by row
+ * </pre>
+ * {@link #map} maps the histogram matrix straight into a {@link LbphGallery}, so load
+ * time hardly depends on the model size; pages are read as the first searches touch them.
+ * trainModel writes the binary next to the XML, and {@link LbphEngine#load} prefers it
+ * while it is still current for that XML file. ModelConverter converts either way.
+ */
+public final class LbphModelFile {
+    public static final String BINARY_PROPERTY = "faceattendance.lbph.binary";
+
+    private static final byte[] MAGIC = "LBPHBIN1".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int ALIGN = 64;
+
+    private LbphModelFile() {}
+
+    // models/lbph_model.xml -> models/lbph_model.bin
+    public static File binaryFor(String xmlModel) {
+        String base = xmlModel.endsWith(".xml") ? xmlModel.substring(0, xmlModel.length() - 4) : xmlModel;
+        return new File(base + ".bin");
+    }
+
+    // The binary exists and was written from the XML model as it is now
+    public static boolean isCurrent(File binary, File xml) {
+        if (!binary.isFile() || !xml.isFile()) return false;
+        try (FileChannel ch = FileChannel.open(binary.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer h = readHeader(ch);
+            return h.getLong(44) == xml.length() && h.getLong(52) == xml.lastModified();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the engine's live samples (removed ones are left out). source is the XML
+     * model the engine was loaded from, recorded so a stale binary is not used; may be null.
+     */
+    public static void write(LbphEngine engine, File file, File source) throws IOException {
+        LbphGallery g = engine.getGallery();
+        LbphFeatures f = engine.getFeatures();
+        int dim = g.dim();
+        int count = g.liveSize();
+        long histOffset = align(HEADER_BYTES + 4L * count);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            h.put(MAGIC).putInt(VERSION)
+                    .putInt(f.getRadius()).putInt(f.getNeighbors()).putInt(f.getGridX()).putInt(f.getGridY())
+                    .putInt(dim).putInt(count).putDouble(engine.getThreshold())
+                    .putLong(source != null ? source.length() : 0).putLong(source != null ? source.lastModified() : 0);
+            h.clear();
+            writeFully(ch, h, 0);
+
+            ByteBuffer labels = ByteBuffer.allocate(4 * count).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < g.size(); i++) {
+                if (g.label(i) != -1) labels.putInt(g.label(i));
+            }
+            labels.flip();
+            writeFully(ch, labels, HEADER_BYTES);
+
+            ByteBuffer row = ByteBuffer.allocate(4 * dim).order(ByteOrder.LITTLE_ENDIAN);
+            long pos = histOffset;
+            for (int i = 0; i < g.size(); i++) {
+                if (g.label(i) == -1) continue;
+                row.clear();
+                row.asFloatBuffer().put(g.histogram(i));
+                writeFully(ch, row, pos);
+                pos += 4L * dim;
+            }
+            ch.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Maps a binary model; histograms stay in the file's pages
+    public static LbphEngine map(File file, ChiSquareKernel kernel) throws IOException {
+        return open(file, kernel, true);
+    }
+
+    // Reads a binary model into a heap gallery. Nothing stays mapped, so the file can be
+    // replaced right away, also on Windows.
+    public static LbphEngine read(File file, ChiSquareKernel kernel) throws IOException {
+        return open(file, kernel, false);
+    }
+
+    private static LbphEngine open(File file, ChiSquareKernel kernel, boolean map) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer h = readHeader(ch);
+            LbphFeatures f = new LbphFeatures(h.getInt(12), h.getInt(16), h.getInt(20), h.getInt(24));
+            int dim = h.getInt(28);
+            int count = h.getInt(32);
+            double threshold = h.getDouble(36);
+            if (dim != f.length()) {
+                throw new IOException(file + ": histogram length " + dim + " does not match " + f);
+            }
+            long histOffset = align(HEADER_BYTES + 4L * count);
+            if (ch.size() < histOffset + 4L * dim * count) {
+                throw new IOException(file + " is truncated");
+            }
+            int[] labels = new int[count];
+            ByteBuffer lb = ByteBuffer.allocate(4 * count).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(ch, lb, HEADER_BYTES);
+            lb.flip();
+            lb.asIntBuffer().get(labels);
+
+            LbphGallery gallery;
+            if (map && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+                gallery = LbphGallery.map(ch, histOffset, dim, labels, count);
+            } else {
+                // kernels read direct buffers in native order, so big-endian machines copy too
+                gallery = new LbphGallery(dim, false);
+                ByteBuffer b = ByteBuffer.allocate(4 * dim).order(ByteOrder.LITTLE_ENDIAN);
+                float[] row = new float[dim];
+                for (int i = 0; i < count; i++) {
+                    b.clear();
+                    readFully(ch, b, histOffset + 4L * dim * i);
+                    b.flip();
+                    b.asFloatBuffer().get(row);
+                    gallery.add(labels[i], row);
+                }
+            }
+            return new LbphEngine(f, gallery, kernel, threshold);
+        }
+    }
+
+    /**
+     * Writes the engine's live samples in the XML layout OpenCV's LBPHFaceRecognizer
+     * saves and reads (FileStorage, node opencv_lbphfaces).
+     */
+    public static void writeXml(LbphEngine engine, File file) throws IOException {
+        LbphGallery g = engine.getGallery();
+        LbphFeatures f = engine.getFeatures();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.US_ASCII), 1 << 16)) {
+            w.write("<?xml version=\"1.0\"?>\n<opencv_storage>\n<opencv_lbphfaces>\n");
+            w.write("  <threshold>" + xmlNumber(engine.getThreshold()) + "</threshold>\n");
+            w.write("  <radius>" + f.getRadius() + "</radius>\n");
+            w.write("  <neighbors>" + f.getNeighbors() + "</neighbors>\n");
+            w.write("  <grid_x>" + f.getGridX() + "</grid_x>\n");
+            w.write("  <grid_y>" + f.getGridY() + "</grid_y>\n");
+            w.write("  <histograms>\n");
+            StringBuilder line = new StringBuilder(256);
+            for (int i = 0; i < g.size(); i++) {
+                if (g.label(i) == -1) continue;
+                w.write("    <_ type_id=\"opencv-matrix\">\n      <rows>1</rows>\n      <cols>" + g.dim()
+                        + "</cols>\n      <dt>f</dt>\n      <data>\n");
+                float[] h = g.histogram(i);
+                for (int k = 0; k < h.length; k++) {
+                    if (k % 8 == 0) line.append("        ");
+                    line.append(h[k] == 0f ? "0." : Float.toString(h[k]));
+                    line.append(k % 8 == 7 || k == h.length - 1 ? '\n' : ' ');
+                    if (line.length() > 200) {
+                        w.append(line);
+                        line.setLength(0);
+                    }
+                }
+                w.append(line);
+                line.setLength(0);
+                w.write("      </data></_>\n");
+            }
+            w.write("  </histograms>\n");
+            w.write("  <labels type_id=\"opencv-matrix\">\n    <rows>" + g.liveSize()
+                    + "</rows>\n    <cols>1</cols>\n    <dt>i</dt>\n    <data>\n");
+            int n = 0;
+            for (int i = 0; i < g.size(); i++) {
+                if (g.label(i) == -1) continue;
+                if (n % 16 == 0) w.write("      ");
+                w.write(Integer.toString(g.label(i)));
+                w.write(++n % 16 == 0 ? "\n" : " ");
+            }
+            w.write("\n    </data></labels>\n");
+            w.write("  <labelsInfo>\n    </labelsInfo>\n");
+            w.write("</opencv_lbphfaces>\n</opencv_storage>\n");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // DBL_MAX (OpenCV's default, "no threshold") as FileStorage writes it
+    private static String xmlNumber(double v) {
+        return v == Double.MAX_VALUE ? "1.7976931348623157e+308" : String.format(Locale.ROOT, "%.17g", v);
+    }
+
+    private static ByteBuffer readHeader(FileChannel ch) throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (h.hasRemaining()) {
+            if (ch.read(h, h.position()) < 0) throw new IOException("not a binary LBPH model");
+        }
+        byte[] magic = new byte[MAGIC.length];
+        h.clear();
+        h.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || h.getInt(8) != VERSION) {
+            throw new IOException("not a binary LBPH model (version " + VERSION + ")");
+        }
+        return h;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) {
+            int n = ch.read(b, position);
+            if (n < 0) throw new IOException("binary LBPH model is truncated");
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) {
+            position += ch.write(b, position);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGN - 1) / ALIGN * ALIGN;
+    }
+}
@@ -0,0 +1,166 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_32SC1;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_GRAYSCALE;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
+
+/**
+ * Checks that {@link LbphEngine} gives the same answers as OpenCV's LBPHFaceRecognizer
+ * and shows how much faster it is.
+ * <p>
+ * Reads enrollment images laid out as dataset/&lt;student id&gt;/*.png, trains OpenCV on
+ * all but every 5th image, and then:
+ * <ul>
+ *   <li>features: every training histogram from OpenCV against LbphFeatures on the same image</li>
+ *   <li>predictions: the held-out images through both matchers, label and distance</li>
+ *   <li>timing: mean predict time of OpenCV, the Java scalar kernel and the best available kernel</li>
+ * </ul>
+ * Exits with status 1 on any mismatch.
+ * <pre>
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.LbphParityCheck -Dexec.args="[dataset]"
+ * </pre>
+ * The Vector API kernel is only used when Maven's JVM has the module:
+ * MAVEN_OPTS="--add-modules jdk.incubator.vector".
+ */
+public class LbphParityCheck {
+    private static final int HOLD_OUT_EVERY = 5;
+    private static final double FEATURE_TOLERANCE = 1e-6;
+    private static final double DISTANCE_TOLERANCE = 1e-3; // relative; float sums in a different order
+
+    public static void main(String[] args) {
+        File dataset = new File(args.length > 0 ? args[0] : "dataset");
+        Loader.load(org.bytedeco.opencv.global.opencv_core.class);
+
+        List<Mat> trainImages = new ArrayList<>();
+        List<Integer> trainLabels = new ArrayList<>();
+        List<Mat> probes = new ArrayList<>();
+        List<Integer> probeLabels = new ArrayList<>();
+        File[] students = dataset.listFiles(File::isDirectory);
+        if (students == null) {
+            System.err.println("No dataset directory: " + dataset.getAbsolutePath());
+            System.exit(2);
+        }
+        Arrays.sort(students);
+        int n = 0;
+        for (File dir : students) {
+            int label;
+            try {
+                label = Integer.parseInt(dir.getName());
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            File[] files = dir.listFiles((d, name) -> name.toLowerCase(Locale.ROOT).matches(".*\\.(png|jpg|jpeg|bmp|pgm)"));
+            if (files == null) continue;
+            Arrays.sort(files);
+            for (File f : files) {
+                Mat img = imread(f.getAbsolutePath(), IMREAD_GRAYSCALE);
+                if (img == null || img.empty()) continue;
+                if (++n % HOLD_OUT_EVERY == 0) {
+                    probes.add(img);
+                    probeLabels.add(label);
+                } else {
+                    trainImages.add(img);
+                    trainLabels.add(label);
+                }
+            }
+        }
+        if (trainImages.isEmpty() || probes.isEmpty()) {
+            System.err.println("Need at least " + HOLD_OUT_EVERY + " images under " + dataset.getAbsolutePath());
+            System.exit(2);
+        }
+
+        LBPHFaceRecognizer recognizer = LBPHFaceRecognizer.create();
+        MatVector images = new MatVector(trainImages.size());
+        IntPointer labelData = new IntPointer(trainLabels.size());
+        for (int i = 0; i < trainImages.size(); i++) {
+            images.put(i, trainImages.get(i));
+            labelData.put(i, trainLabels.get(i));
+        }
+        recognizer.train(images, new Mat(trainLabels.size(), 1, CV_32SC1, labelData));
+        System.out.println(String.format(Locale.US, "%d training images, %d probes, %d students",
+                trainImages.size(), probes.size(), students.length));
+
+        boolean ok = checkFeatures(recognizer, trainImages);
+
+        OpenCvLbphMatcher opencv = new OpenCvLbphMatcher(recognizer);
+        LbphEngine scalar = LbphEngine.fromRecognizer(recognizer, false, new ScalarChiSquareKernel());
+        LbphEngine best = LbphEngine.fromRecognizer(recognizer, Boolean.getBoolean(LbphEngine.OFFHEAP_PROPERTY),
+                ChiSquareKernel.best());
+        ok &= checkPredictions(opencv, best, probes, probeLabels);
+
+        System.out.println(String.format(Locale.US, "%-50s %12s", "matcher", "us/predict"));
+        for (FaceMatcher m : Arrays.asList(opencv, scalar, best)) {
+            System.out.println(String.format(Locale.US, "%-50s %12.1f", m.describe(), time(m, probes)));
+        }
+
+        recognizer.close();
+        for (Mat m : trainImages) m.close();
+        for (Mat m : probes) m.close();
+        System.out.println(ok ? "PARITY OK" : "PARITY FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean checkFeatures(LBPHFaceRecognizer recognizer, List<Mat> trainImages) {
+        LbphFeatures features = new LbphFeatures(recognizer.getRadius(), recognizer.getNeighbors(),
+                recognizer.getGridX(), recognizer.getGridY());
+        MatVector hists = recognizer.getHistograms();
+        float[] expected = new float[features.length()];
+        double worst = 0;
+        int bad = 0;
+        for (int i = 0; i < trainImages.size(); i++) {
+            new FloatPointer(hists.get(i).data()).get(expected, 0, expected.length);
+            float[] actual = features.compute(trainImages.get(i));
+            double diff = 0;
+            for (int k = 0; k < expected.length; k++) {
+                diff = Math.max(diff, Math.abs(expected[k] - actual[k]));
+            }
+            worst = Math.max(worst, diff);
+            if (diff > FEATURE_TOLERANCE) bad++;
+        }
+        System.out.println(String.format(Locale.US, "features:    %d/%d histograms differ, max bin difference %.2e",
+                bad, trainImages.size(), worst));
+        return bad == 0;
+    }
+
+    private static boolean checkPredictions(FaceMatcher reference, FaceMatcher candidate, List<Mat> probes, List<Integer> truth) {
+        int labelMismatches = 0, distanceMismatches = 0, correct = 0;
+        double worst = 0;
+        for (int i = 0; i < probes.size(); i++) {
+            FaceMatcher.Match a = reference.predict(probes.get(i));
+            FaceMatcher.Match b = candidate.predict(probes.get(i));
+            if (a.label != b.label) labelMismatches++;
+            if (a.label == truth.get(i)) correct++;
+            double rel = Math.abs(a.distance - b.distance) / Math.max(1e-9, Math.abs(a.distance));
+            worst = Math.max(worst, rel);
+            if (rel > DISTANCE_TOLERANCE) distanceMismatches++;
+        }
+        System.out.println(String.format(Locale.US,
+                "predictions: %d/%d labels differ, %d distances differ (max relative %.2e), rank-1 accuracy %.1f%%",
+                labelMismatches, probes.size(), distanceMismatches, worst, 100.0 * correct / probes.size()));
+        return labelMismatches == 0 && distanceMismatches == 0;
+    }
+
+    // Mean microseconds per predict after one warm-up pass
+    private static double time(FaceMatcher m, List<Mat> probes) {
+        for (Mat p : probes) m.predict(p);
+        int rounds = Math.max(1, 2000 / probes.size());
+        long t0 = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (Mat p : probes) m.predict(p);
+        }
+        return (System.nanoTime() - t0) / 1e3 / (rounds * probes.size());
+    }
+}
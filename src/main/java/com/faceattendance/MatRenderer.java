@@ -0,0 +1,94 @@
+package com.faceattendance;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Scalar;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Draws face boxes and labels straight onto the BGR Mat with OpenCV, then copies the
+ * pixels once into a VideoPanel buffer. A TYPE_3BYTE_BGR raster has the same
+ * interleaved row-major layout as a CV_8UC3 Mat, so a continuous Mat goes across in
+ * a single bulk copy with no Frame or intermediate BufferedImage in between.
+ * <p>
+ * One renderer per thread: it keeps its colors and conversion buffer between frames.
+ */
+public class MatRenderer {
+    private final Scalar green = new Scalar(0, 255, 0, 0);
+    private final Scalar yellow = new Scalar(0, 255, 255, 0);
+    private final Scalar white = new Scalar(255, 255, 255, 0);
+    private final Scalar shade = new Scalar(40, 40, 40, 0);
+    private final Mat bgr = new Mat();
+
+    // Green box around a face in the recognition view
+    public void drawFaceBox(Mat frame, int x, int y, int width, int height) {
+        drawBox(frame, x, y, width, height, green, 2);
+    }
+
+    // Thicker yellow box used while enrolling so the student can align
+    public void drawGuideBox(Mat frame, int x, int y, int width, int height) {
+        drawBox(frame, x, y, width, height, yellow, 3);
+    }
+
+    private void drawBox(Mat frame, int x, int y, int width, int height, Scalar color, int thickness) {
+        try (PointerScope scope = new PointerScope()) {
+            rectangle(frame, new Point(x, y), new Point(x + width, y + height), color, thickness, LINE_8, 0);
+        }
+    }
+
+    public void drawLabel(Mat frame, String text, int x, int y) {
+        try (PointerScope scope = new PointerScope()) {
+            putText(frame, text, new Point(Math.max(0, x), Math.max(16, y)), FONT_HERSHEY_SIMPLEX, 0.6, yellow, 2, LINE_AA, false);
+        }
+    }
+
+    // Dark strip with white text in the top-left corner (e.g. the close countdown)
+    public void drawBanner(Mat frame, String text) {
+        try (PointerScope scope = new PointerScope()) {
+            rectangle(frame, new Point(10, 10), new Point(300, 46), shade, FILLED, LINE_8, 0);
+            putText(frame, text, new Point(20, 35), FONT_HERSHEY_SIMPLEX, 0.6, white, 2, LINE_AA, false);
+        }
+    }
+
+    // Copies the frame into a reused panel buffer and publishes it; grayscale frames are expanded to BGR first
+    public void publish(Mat frame, VideoPanel view) {
+        if (view == null || frame == null || frame.empty()) return;
+        Mat src = frame;
+        if (frame.channels() == 1) {
+            cvtColor(frame, bgr, COLOR_GRAY2BGR);
+            src = bgr;
+        }
+        if (src.type() != CV_8UC3) return;
+
+        int w = src.cols();
+        int h = src.rows();
+        BufferedImage buf = view.acquireBuffer(w, h, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] dst = ((DataBufferByte) buf.getRaster().getDataBuffer()).getData();
+        BytePointer data = src.data();
+        int rowBytes = w * 3;
+        if (src.isContinuous()) {
+            data.position(0).get(dst, 0, rowBytes * h);
+        } else {
+            long step = src.step();
+            for (int row = 0; row < h; row++) {
+                data.position(row * step).get(dst, row * rowBytes, rowBytes);
+            }
+        }
+        view.publish(buf);
+    }
+
+    public void release() {
+        green.close();
+        yellow.close();
+        white.close();
+        shade.close();
+        bgr.close();
+    }
+}
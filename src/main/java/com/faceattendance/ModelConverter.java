@@ -0,0 +1,114 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.bytedeco.javacpp.Loader;
+
+/**
+ * Converts the LBPH model between OpenCV's XML and the binary format of
+ * {@link LbphModelFile}, and compares how long each takes to load.
+ * <pre>
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.ModelConverter -Dexec.args="to-binary [model.xml] [out.bin]"
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.ModelConverter -Dexec.args="to-xml model.bin out.xml"
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.ModelConverter -Dexec.args="compare [model.xml]"
+ * </pre>
+ * The model defaults to the current version in models/ (see {@link ModelRegistry}).
+ * to-binary records the XML it was made from, so the app loads it in place of that XML
+ * until the XML changes. to-xml writes a file OpenCV's LBPHFaceRecognizer.read accepts,
+ * e.g. to go back to -Dfaceattendance.matcher=opencv. compare converts to a temporary
+ * binary, checks that both loads hold the same samples and reports load times; exits
+ * with status 1 on a mismatch.
+ */
+public class ModelConverter {
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 0 ? args[0] : "compare";
+        String in = args.length > 1 ? args[1] : currentModel();
+        switch (mode) {
+            case "to-binary": {
+                File out = args.length > 2 ? new File(args[2]) : LbphModelFile.binaryFor(in);
+                LbphEngine engine = readXml(in);
+                LbphModelFile.write(engine, out, new File(in));
+                System.out.println("Wrote " + out + ": " + engine.describe());
+                break;
+            }
+            case "to-xml": {
+                if (args.length < 3) usage();
+                LbphEngine engine = LbphModelFile.map(new File(in), ChiSquareKernel.best());
+                LbphModelFile.writeXml(engine, new File(args[2]));
+                System.out.println("Wrote " + args[2] + ": " + engine.describe());
+                break;
+            }
+            case "compare":
+                System.exit(compare(in) ? 0 : 1);
+                break;
+            default:
+                usage();
+        }
+    }
+
+    private static boolean compare(String xml) throws IOException {
+        File binary = File.createTempFile("lbph_model", ".bin");
+        binary.deleteOnExit();
+
+        long t0 = System.nanoTime();
+        LbphEngine fromXml = readXml(xml);
+        double xmlMillis = (System.nanoTime() - t0) / 1e6;
+        LbphModelFile.write(fromXml, binary, new File(xml));
+
+        t0 = System.nanoTime();
+        LbphEngine fromBinary = LbphModelFile.map(binary, ChiSquareKernel.best());
+        double mapMillis = (System.nanoTime() - t0) / 1e6;
+
+        // first pass over the mapped pages, which is where the binary model pays for reading
+        float[] probe = fromXml.getGallery().size() > 0 ? fromXml.getGallery().histogram(0) : new float[fromXml.getFeatures().length()];
+        t0 = System.nanoTime();
+        fromBinary.scan(probe);
+        double firstScanMillis = (System.nanoTime() - t0) / 1e6;
+
+        LbphGallery a = fromXml.getGallery();
+        LbphGallery b = fromBinary.getGallery();
+        int mismatches = 0;
+        if (a.size() != b.size() || !fromXml.getFeatures().toString().equals(fromBinary.getFeatures().toString())
+                || fromXml.getThreshold() != fromBinary.getThreshold()) {
+            System.out.println("MISMATCH: " + fromXml.describe() + " vs " + fromBinary.describe());
+            mismatches++;
+        } else {
+            for (int i = 0; i < a.size(); i++) {
+                if (a.label(i) != b.label(i) || !Arrays.equals(a.histogram(i), b.histogram(i))) {
+                    if (mismatches++ < 10) System.out.println("MISMATCH: sample " + i);
+                }
+            }
+        }
+
+        System.out.println(fromBinary.describe());
+        System.out.println(String.format(Locale.US, "%-28s %10.1f MB %10.1f ms", "XML (OpenCV read + copy)",
+                new File(xml).length() / 1048576.0, xmlMillis));
+        System.out.println(String.format(Locale.US, "%-28s %10.1f MB %10.1f ms   (+%.1f ms first scan)", "binary (mapped)",
+                binary.length() / 1048576.0, mapMillis, firstScanMillis));
+        System.out.println(mismatches == 0 ? "Models agree" : mismatches + " mismatches");
+        binary.delete();
+        return mismatches == 0;
+    }
+
+    private static LbphEngine readXml(String xml) {
+        if (!new File(xml).isFile()) {
+            System.err.println("Model not found: " + xml);
+            System.exit(2);
+        }
+        Loader.load(org.bytedeco.opencv.global.opencv_core.class);
+        return LbphEngine.fromXml(xml, false);
+    }
+
+    private static String currentModel() {
+        File current = new ModelRegistry(new File("models"), System.err::println).currentFile();
+        return current != null ? current.getPath() : "models/lbph_model.xml";
+    }
+
+    private static void usage() {
+        System.err.println("usage: ModelConverter to-binary [model.xml] [out.bin] | to-xml model.bin out.xml | compare [model.xml]");
+        System.exit(2);
+    }
+}
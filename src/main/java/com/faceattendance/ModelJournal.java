@@ -0,0 +1,189 @@
+package com.faceattendance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * Gallery changes made since the last full training, appended next to the model
+ * (models/lbph_model.journal) so enrolling or removing a student does not rewrite it.
+ * <p>
+ * A record either adds one student's histograms or removes every sample of a student.
+ * {@link LbphEngine#load} replays the journal on top of the model. A full retrain
+ * publishes a new model version, which starts without a journal. The header
+ * remembers the size and modification time of the model it extends; when the model is
+ * replaced some other way (restore, copy), the journal is ignored. A record cut short by
+ * a crash is dropped on replay and cut off before the next append.
+ */
+public class ModelJournal {
+    private static final int MAGIC = 0x4C42504A; // "LBPJ"
+    private static final int VERSION = 1;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final int HEADER_BYTES = 40;
+
+    private final File file;
+    private final File model;
+
+    public ModelJournal(String modelFile) {
+        this.model = new File(modelFile);
+        String base = modelFile.endsWith(".xml") ? modelFile.substring(0, modelFile.length() - 4) : modelFile;
+        this.file = new File(base + ".journal");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // Appends one student's samples; histograms must come from features matching the model
+    public synchronized void appendAdd(int label, LbphFeatures features, List<float[]> histograms) throws IOException {
+        try (DataOutputStream out = openForAppend(features)) {
+            out.writeByte(ADD);
+            out.writeInt(label);
+            out.writeInt(histograms.size());
+            for (float[] h : histograms) {
+                for (float v : h) out.writeFloat(v);
+            }
+        }
+    }
+
+    public synchronized void appendRemove(int label, LbphFeatures features) throws IOException {
+        try (DataOutputStream out = openForAppend(features)) {
+            out.writeByte(REMOVE);
+            out.writeInt(label);
+        }
+    }
+
+    private DataOutputStream openForAppend(LbphFeatures features) throws IOException {
+        boolean fresh = !file.exists() || !matchesModel();
+        if (!fresh) {
+            // drop a record cut short by a crash so new records are not written after it
+            long valid = scan(features.length())[1];
+            if (valid < file.length()) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(valid);
+                }
+            }
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, !fresh)));
+        if (fresh) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(model.length());
+            out.writeLong(model.lastModified());
+            out.writeInt(features.getRadius());
+            out.writeInt(features.getNeighbors());
+            out.writeInt(features.getGridX());
+            out.writeInt(features.getGridY());
+        }
+        return out;
+    }
+
+    // Header says the journal extends the model file as it is now
+    private boolean matchesModel() {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION
+                    && in.readLong() == model.length() && in.readLong() == model.lastModified();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Applies the journal to an engine loaded from the model; returns the number of
+     * records applied (0 when there is no journal for this model).
+     */
+    public synchronized int replay(LbphEngine engine) throws IOException {
+        if (!file.exists() || !matchesModel()) return 0;
+        LbphFeatures f = engine.getFeatures();
+        int applied = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            in.readInt();
+            in.readInt();
+            in.readLong();
+            in.readLong();
+            if (in.readInt() != f.getRadius() || in.readInt() != f.getNeighbors()
+                    || in.readInt() != f.getGridX() || in.readInt() != f.getGridY()) {
+                throw new IOException("journal was written with different LBPH parameters than " + model);
+            }
+            int dim = f.length();
+            while (true) {
+                try {
+                    byte op = in.readByte();
+                    int label = in.readInt();
+                    if (op == ADD) {
+                        int count = in.readInt();
+                        float[][] hists = new float[count][dim];
+                        for (float[] h : hists) {
+                            for (int i = 0; i < dim; i++) h[i] = in.readFloat();
+                        }
+                        for (float[] h : hists) engine.add(label, h);
+                    } else if (op == REMOVE) {
+                        engine.remove(label);
+                    } else {
+                        throw new IOException("corrupt journal record in " + file);
+                    }
+                } catch (EOFException ex) {
+                    break; // end of journal, or a record cut short by a crash
+                }
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    // Forgets the journal after a full retrain; false if the file could not be deleted
+    public synchronized boolean reset() {
+        return !file.exists() || file.delete();
+    }
+
+    // Records the journal holds for the current model, without applying them
+    public synchronized int pendingRecords(int dim) {
+        if (!file.exists() || !matchesModel()) return 0;
+        return (int) scan(dim)[0];
+    }
+
+    // {complete records, bytes up to the end of the last complete record}
+    private long[] scan(int dim) {
+        long records = 0;
+        long valid = HEADER_BYTES;
+        long length = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            skip(in, HEADER_BYTES);
+            while (valid < length) {
+                byte op = in.readByte();
+                in.readInt();
+                long size = 5;
+                if (op == ADD) {
+                    long payload = 4L * dim * in.readInt();
+                    skip(in, payload);
+                    size += 4 + payload;
+                } else if (op != REMOVE) {
+                    break;
+                }
+                if (valid + size > length) break;
+                valid += size;
+                records++;
+            }
+        } catch (IOException ex) {
+            // truncated tail: count what was complete
+        }
+        return new long[] {records, valid};
+    }
+
+    private static void skip(DataInputStream in, long n) throws IOException {
+        while (n > 0) {
+            int skipped = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+            if (skipped <= 0) throw new EOFException();
+            n -= skipped;
+        }
+    }
+}
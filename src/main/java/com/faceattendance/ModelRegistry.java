@@ -0,0 +1,231 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Versioned LBPH models under models/versions/ and the one that is current.
+ * <p>
+ * A model is never written where a reader may be opening it. Training saves to a
+ * staging file ({@link #stagingFile}); {@link #publish} renames it to the next version,
+ * lbph_model-000042.xml, writes its binary copy, and then atomically replaces
+ * models/CURRENT, a one-line pointer to the version file. Readers resolve the pointer
+ * once per load, so they see either the old model or the new one, never half of one.
+ * Each version keeps its own journal, binary and index files next to it (same base
+ * name); nothing is carried over, so a new version's ANN index is built anew. The newest versions are kept (-Dfaceattendance.model.keep, default 5) so a
+ * restore can go back; older ones are deleted.
+ * <p>
+ * The registry also owns the {@link ResidentModel} all gates share: loaded on first
+ * use, kept for the life of the app, and swapped to the new version on publish.
+ * <p>
+ * A models/lbph_model.xml from before the registry is imported as version 1.
+ */
+public class ModelRegistry {
+    public static final String KEEP_PROPERTY = "faceattendance.model.keep";
+
+    private static final Pattern VERSION_FILE = Pattern.compile("lbph_model-(\\d{6})\\.xml");
+
+    private final File versionsDir;
+    private final File pointer;
+    private final File legacy;
+    private final int keep;
+    private final Consumer<String> log;
+    private ResidentModel resident; // null until a gate needs it
+
+    // log receives what the registry and model loading skip or recover from
+    public ModelRegistry(File modelsDir, Consumer<String> log) {
+        this.versionsDir = new File(modelsDir, "versions");
+        this.pointer = new File(modelsDir, "CURRENT");
+        this.legacy = new File(modelsDir, "lbph_model.xml");
+        this.keep = Math.max(1, Integer.getInteger(KEEP_PROPERTY, 5));
+        this.log = log;
+    }
+
+    // The current version's model file, or null if nothing was trained yet
+    public synchronized File currentFile() {
+        if (!pointer.isFile() && legacy.isFile()) importLegacy();
+        if (!pointer.isFile()) return null;
+        try {
+            String name = new String(Files.readAllBytes(pointer.toPath()), StandardCharsets.UTF_8).trim();
+            File file = new File(versionsDir, name);
+            return file.isFile() ? file : null;
+        } catch (IOException ex) {
+            log.accept("Cannot read " + pointer + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized int currentVersion() {
+        File f = currentFile();
+        return f == null ? 0 : versionOf(f);
+    }
+
+    // Published versions, oldest first
+    public synchronized List<Integer> versions() {
+        List<Integer> out = new ArrayList<>();
+        File[] files = versionsDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                int v = versionOf(f);
+                if (v > 0) out.add(v);
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    public File fileFor(int version) {
+        return new File(versionsDir, String.format(Locale.ROOT, "lbph_model-%06d.xml", version));
+    }
+
+    // Where to save a model before publishing it; ends in .xml so OpenCV writes XML
+    public synchronized File stagingFile() {
+        versionsDir.mkdirs();
+        return new File(versionsDir, "staging-" + System.nanoTime() + ".xml");
+    }
+
+    /**
+     * Makes a staged model the next version and the current one, then swaps it into the
+     * resident model if gates have loaded one. Returns the new version number.
+     * <p>
+     * While gates are running, the new version is loaded before it becomes current. If it
+     * cannot be loaded, its files are deleted, CURRENT and the gates stay on the old version,
+     * and an IOException says so.
+     */
+    public int publish(File staged) throws IOException {
+        return publish(staged, null);
+    }
+
+    // As publish(staged); contents, when the caller has the model in memory anyway, saves
+    // reading the XML back to write the binary copy
+    public synchronized int publish(File staged, LbphEngine contents) throws IOException {
+        List<Integer> existing = versions();
+        int version = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        File target = fileFor(version);
+        Files.move(staged.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        if (!"false".equals(System.getProperty(LbphModelFile.BINARY_PROPERTY))) {
+            try {
+                LbphEngine engine = contents != null ? contents : LbphEngine.fromXml(target.getPath(), false);
+                LbphModelFile.write(engine, LbphModelFile.binaryFor(target.getPath()), target);
+            } catch (RuntimeException | IOException | LinkageError ex) {
+                // the XML alone is a complete model; the binary only makes loading faster
+                log.accept("No binary copy of model v" + version + ": " + ex.getMessage());
+            }
+        }
+
+        FaceMatcher next = null;
+        if (resident != null) {
+            try {
+                next = RecognitionEngine.loadMatcher(target.getPath(), log);
+            } catch (RuntimeException | LinkageError ex) {
+                deleteVersion(version);
+                throw new IOException("Model v" + version + " cannot be loaded, gates keep model v"
+                        + resident.version() + ": " + ex.getMessage(), ex);
+            }
+        }
+
+        File tmp = new File(pointer.getPath() + ".tmp");
+        try {
+            Files.write(tmp.toPath(), (target.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), pointer.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            if (next != null) next.close();
+            throw ex;
+        }
+        if (next != null) resident.swap(next, version);
+        prune(version);
+        return version;
+    }
+
+    // Publishes a copy of a model file from elsewhere (restore)
+    public int publishCopy(File source) throws IOException {
+        File staged = stagingFile();
+        Files.copy(source.toPath(), staged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return publish(staged);
+    }
+
+    /**
+     * Copies the current model to dest. Enrollment changes journaled since the last
+     * training are folded in, so the backup holds what the gates recognize right now.
+     */
+    public synchronized void backup(File dest) throws IOException {
+        File current = currentFile();
+        if (current == null) throw new IOException("no trained model");
+        LbphFeatures f = LbphFeatures.defaults();
+        if (new ModelJournal(current.getPath()).pendingRecords(f.length()) > 0) {
+            LbphModelFile.writeXml(LbphEngine.load(current.getPath(), log), dest);
+        } else {
+            Files.copy(current.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // The shared model, loading the current version on first use
+    public synchronized ResidentModel resident() {
+        if (resident == null) {
+            File current = currentFile();
+            if (current == null) throw new IllegalStateException("Model not found. Train first.");
+            resident = new ResidentModel(RecognitionEngine.loadMatcher(current.getPath(), log), versionOf(current));
+        }
+        return resident;
+    }
+
+    // The shared model if gates have loaded it, else null
+    public synchronized ResidentModel residentIfLoaded() {
+        return resident;
+    }
+
+    public synchronized String describe() {
+        File current = currentFile();
+        return current == null ? "no model" : "model v" + versionOf(current) + " (" + current.getPath() + "), "
+                + versions().size() + " version(s) kept";
+    }
+
+    private void prune(int newest) {
+        for (int v : versions()) {
+            if (v <= newest - keep) deleteVersion(v);
+        }
+    }
+
+    private void deleteVersion(int version) {
+        File xml = fileFor(version);
+        String base = xml.getPath().substring(0, xml.getPath().length() - 4);
+        for (String ext : new String[] {".xml", ".bin", ".journal", ".hnsw"}) {
+            File f = new File(base + ext);
+            // a mapped binary of the model in use may refuse to go on Windows; next publish retries
+            if (f.exists() && !f.delete()) log.accept("Could not delete " + f);
+        }
+    }
+
+    private void importLegacy() {
+        try {
+            versionsDir.mkdirs();
+            File staged = stagingFile();
+            // same size and mtime, so the old journal still matches the copy
+            Files.copy(legacy.toPath(), staged.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+            int version = publish(staged);
+            File legacyJournal = new ModelJournal(legacy.getPath()).getFile();
+            if (legacyJournal.isFile()) {
+                Files.copy(legacyJournal.toPath(), new ModelJournal(fileFor(version).getPath()).getFile().toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.accept("Imported " + legacy + " as model v" + version);
+        } catch (IOException ex) {
+            log.accept("Cannot import " + legacy + ": " + ex.getMessage());
+        }
+    }
+
+    private static int versionOf(File f) {
+        Matcher m = VERSION_FILE.matcher(f.getName());
+        return m.matches() ? Integer.parseInt(m.group(1)) : 0;
+    }
+}
@@ -0,0 +1,30 @@
+package com.faceattendance;
+
+import java.util.Locale;
+
+import org.bytedeco.javacpp.Pointer;
+
+/**
+ * Off-heap footprint as seen by JavaCPP. On long kiosk sessions these numbers
+ * should stay flat; a steady climb means a hot loop is leaking native objects
+ * to the GC instead of reusing or scoping them.
+ */
+public final class NativeMemory {
+
+    private NativeMemory() {}
+
+    // Resident set size of the whole process, as reported by the OS
+    public static long physicalBytes() {
+        return Pointer.physicalBytes();
+    }
+
+    // Bytes currently held by JavaCPP-allocated native objects (Mats, vectors, pointers)
+    public static long trackedBytes() {
+        return Pointer.totalBytes();
+    }
+
+    public static String describe() {
+        return String.format(Locale.US, "Native memory: physical %.1f MB, JavaCPP tracked %.1f MB (limit %.0f MB)",
+                physicalBytes() / 1048576.0, trackedBytes() / 1048576.0, Pointer.maxBytes() / 1048576.0);
+    }
+}
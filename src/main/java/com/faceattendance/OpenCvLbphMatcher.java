@@ -0,0 +1,59 @@
+package com.faceattendance;
+
+import java.util.function.Consumer;
+
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_face.LBPHFaceRecognizer;
+
+// OpenCV's own LBPHFaceRecognizer.predict; predict() only reads the model, so one instance serves all threads
+public class OpenCvLbphMatcher implements FaceMatcher {
+    private final LBPHFaceRecognizer recognizer;
+    // predict outputs, one pair per calling thread
+    private final ThreadLocal<IntPointer> label = ThreadLocal.withInitial(() -> new IntPointer(1));
+    private final ThreadLocal<DoublePointer> confidence = ThreadLocal.withInitial(() -> new DoublePointer(1));
+
+    public OpenCvLbphMatcher(LBPHFaceRecognizer recognizer) {
+        this.recognizer = recognizer;
+    }
+
+    public static OpenCvLbphMatcher load(String modelFile, Consumer<String> log) {
+        LBPHFaceRecognizer r = LBPHFaceRecognizer.create();
+        r.read(modelFile);
+        int pending = new ModelJournal(modelFile).pendingRecords(
+                new LbphFeatures(r.getRadius(), r.getNeighbors(), r.getGridX(), r.getGridY()).length());
+        if (pending > 0) {
+            // OpenCV cannot take precomputed histograms; only a retrain folds the journal in
+            log.accept("OpenCV matcher ignores " + pending + " enrollment change(s) since the last training; retrain or use the java matcher");
+        }
+        return new OpenCvLbphMatcher(r);
+    }
+
+    public LBPHFaceRecognizer getRecognizer() {
+        return recognizer;
+    }
+
+    @Override
+    public Match predict(Mat face) {
+        IntPointer l = label.get();
+        DoublePointer c = confidence.get();
+        recognizer.predict(face, l, c);
+        return new Match(l.get(0), c.get(0));
+    }
+
+    @Override
+    public int gallerySize() {
+        return (int) recognizer.getHistograms().size();
+    }
+
+    @Override
+    public String describe() {
+        return "OpenCV LBPH, " + gallerySize() + " samples";
+    }
+
+    @Override
+    public void close() {
+        recognizer.close();
+    }
+}
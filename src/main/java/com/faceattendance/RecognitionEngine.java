@@ -0,0 +1,109 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * What the gate cameras share: the trained LBPH model, loaded once and only ever read,
+ * and one pool of inference workers sized to the machine rather than to the number of
+ * cameras. Predictions do not modify the model, so every session's recognize stage can
+ * call into the same matcher from the pool.
+ * <p>
+ * In the app the matcher is the registry's {@link ResidentModel}, which outlives the
+ * engine and switches to a newly published model between frames; {@link #load} is for
+ * tools that read one model file and own it.
+ * <p>
+ * -Dfaceattendance.matcher picks the {@link FaceMatcher}: "opencv" (LBPHFaceRecognizer)
+ * or "java" ({@link LbphEngine}, the default), which gives the same answers.
+ * <p>
+ * Detection goes through a {@link DetectorPool} whose workers each own a detector;
+ * the pool belongs to the caller and usually outlives the engine.
+ * <p>
+ * -Dfaceattendance.inference.threads overrides the pool size (default: one per core).
+ */
+public class RecognitionEngine {
+    public static final String THREADS_PROPERTY = "faceattendance.inference.threads";
+    public static final String MATCHER_PROPERTY = "faceattendance.matcher";
+
+    private final FaceMatcher matcher;
+    private final boolean ownsMatcher; // closed by shutdown
+    private final DetectorPool detectors;
+    private final ExecutorService inferencePool;
+    private final Map<Integer, String> names = new ConcurrentHashMap<>();
+
+    private RecognitionEngine(FaceMatcher matcher, boolean ownsMatcher, DetectorPool detectors, int threads) {
+        this.matcher = matcher;
+        this.ownsMatcher = ownsMatcher;
+        this.detectors = detectors;
+        this.inferencePool = Executors.newFixedThreadPool(threads, RecognitionPipeline.predictionThreads("inference"));
+    }
+
+    // Loads the model; throws if the model file cannot be read. Recoverable problems go to log
+    public static RecognitionEngine load(String modelFile, DetectorPool detectors, Consumer<String> log) {
+        if (!new File(modelFile).exists()) {
+            throw new IllegalStateException("Model not found: " + modelFile);
+        }
+        return new RecognitionEngine(loadMatcher(modelFile, log), true, detectors, defaultThreads());
+    }
+
+    // Shares a matcher that belongs to the caller, such as the registry's resident model
+    public static RecognitionEngine create(FaceMatcher matcher, DetectorPool detectors) {
+        return new RecognitionEngine(matcher, false, detectors, defaultThreads());
+    }
+
+    private static int defaultThreads() {
+        return Math.max(1, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    static FaceMatcher loadMatcher(String modelFile, Consumer<String> log) {
+        String kind = System.getProperty(MATCHER_PROPERTY, "java").trim().toLowerCase(Locale.ROOT);
+        switch (kind) {
+            case "opencv":
+                return OpenCvLbphMatcher.load(modelFile, log);
+            case "java":
+                return LbphEngine.load(modelFile, log);
+            default:
+                throw new IllegalArgumentException("Unknown face matcher: " + kind + " (use opencv or java)");
+        }
+    }
+
+    public FaceMatcher getMatcher() {
+        return matcher;
+    }
+
+    public ExecutorService getInferencePool() {
+        return inferencePool;
+    }
+
+    public DetectorPool getDetectors() {
+        return detectors;
+    }
+
+    // Display text per student id, looked up once and kept while the engine lives;
+    // null results (unknown ids) are not cached so a new enrollment shows up
+    public String describe(int studentId, IntFunction<String> lookup) {
+        String text = names.get(studentId);
+        if (text == null) {
+            text = lookup.apply(studentId);
+            if (text != null) names.put(studentId, text);
+        }
+        return text;
+    }
+
+    // Drops a cached display text, e.g. after the student was removed or re-enrolled
+    public void forget(int studentId) {
+        names.remove(studentId);
+    }
+
+    public void shutdown() {
+        inferencePool.shutdownNow();
+        if (ownsMatcher) matcher.close();
+        names.clear();
+    }
+}
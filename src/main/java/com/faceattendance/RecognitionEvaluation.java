@@ -0,0 +1,420 @@
+package com.faceattendance;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * Offline accuracy and speed evaluation for choosing THRESHOLD and LBPH parameters.
+ * <p>
+ * Every face is identified against the others by k-fold cross-validation (stratified
+ * per student) or leave-one-sample-out, in parallel on all cores, for each combination
+ * of LBPH radius, neighbors, grid and crop size. For every probe two distances are
+ * kept: to the nearest sample of its own student (genuine) and to the nearest sample of
+ * anyone else (impostor, i.e. what the probe would match if its student were not
+ * enrolled). From those come, as functions of the threshold:
+ * <ul>
+ *   <li>FAR: impostor distance under the threshold (a stranger would be accepted)</li>
+ *   <li>FRR: the student is not accepted as themselves (too far, or someone else is closer)</li>
+ *   <li>misidentification: accepted as the wrong enrolled student</li>
+ * </ul>
+ * Curves go to &lt;out&gt;/roc-&lt;config&gt;.csv (with probit columns for plotting DET), one
+ * line per configuration to &lt;out&gt;/summary.csv, with the equal error rate, recommended
+ * thresholds for FAR 1% and 0.1%, the rates at the app's 75, and predict latency
+ * percentiles (features + nearest-neighbour search, one thread, probes held out of a
+ * gallery of the other samples).
+ * <pre>
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.RecognitionEvaluation -Dexec.args="dataset folds=5 radius=1,2 grid=8,10 size=200,100"
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.RecognitionEvaluation -Dexec.args="db folds=loo"
+ *   mvn -q exec:java -Dexec.mainClass=com.faceattendance.RecognitionEvaluation -Dexec.args="synthetic:100 baseline=eval/baseline.csv"
+ * </pre>
+ * Sources: a dataset/&lt;student id&gt;/ directory, db (the app's face_data table; the JDBC
+ * URL, user and password can be given as url=, user=, password=) or synthetic:N.
+ * baseline= compares against an earlier summary.csv and exits with status 1 if any
+ * configuration lost accuracy (EER or rank-1 worse by more than 0.5 points) or got
+ * slower (median predict time up by more than 25%).
+ */
+public class RecognitionEvaluation {
+    private static final double APP_THRESHOLD = 75.0;
+    private static final int CURVE_POINTS = 200;
+    private static final int LATENCY_PROBES = 300;
+    private static final double ACCURACY_TOLERANCE = 0.005;
+    private static final double LATENCY_TOLERANCE = 1.25;
+
+    // One configuration's figures, as written to summary.csv
+    static final class Result {
+        String config;
+        int samples, students;
+        String folds;
+        double rank1, eer, eerThreshold, far1Threshold, frrAtFar1, far01Threshold, frrAtFar01, farAtApp, frrAtApp;
+        double p50, p90, p99;
+
+        static final String HEADER = "config,samples,students,folds,rank1,eer,eer_threshold,threshold_far1,frr_at_far1,"
+                + "threshold_far01,frr_at_far01,far_at_75,frr_at_75,p50_ms,p90_ms,p99_ms";
+
+        String toCsv() {
+            return String.format(Locale.US, "%s,%d,%d,%s,%.5f,%.5f,%.2f,%.2f,%.5f,%.2f,%.5f,%.5f,%.5f,%.3f,%.3f,%.3f",
+                    config, samples, students, folds, rank1, eer, eerThreshold, far1Threshold, frrAtFar1,
+                    far01Threshold, frrAtFar01, farAtApp, frrAtApp, p50, p90, p99);
+        }
+
+        static Result parse(String line) {
+            String[] c = line.split(",");
+            Result r = new Result();
+            r.config = c[0];
+            r.rank1 = Double.parseDouble(c[4]);
+            r.eer = Double.parseDouble(c[5]);
+            r.p50 = Double.parseDouble(c[13]);
+            return r;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String source = args.length > 0 ? args[0] : "dataset";
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq > 0) opts.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+        String folds = opts.getOrDefault("folds", "5");
+        File out = new File(opts.getOrDefault("out", "eval"));
+        int threads = Integer.parseInt(opts.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+
+        List<Integer> labels = new ArrayList<>();
+        List<byte[]> faces = new ArrayList<>();
+        load(source, opts, labels, faces);
+        if (faces.isEmpty()) {
+            System.err.println("No face images found in " + source);
+            System.exit(2);
+        }
+        int[] label = labels.stream().mapToInt(Integer::intValue).toArray();
+        int students = (int) labels.stream().distinct().count();
+        int[] fold = assignFolds(label, folds);
+        System.out.println(String.format(Locale.US, "%d images of %d students from %s, %s folds, %d threads",
+                faces.size(), students, source, folds, pool.getParallelism()));
+        System.out.println(String.format(Locale.US, "%-18s %7s %7s %9s %9s %9s %9s %9s %8s %8s %8s",
+                "config", "rank-1", "EER", "EER thr", "thr@1%", "thr@0.1%", "FAR@75", "FRR@75", "p50 ms", "p90 ms", "p99 ms"));
+
+        out.mkdirs();
+        List<Result> results = new ArrayList<>();
+        for (int radius : ints(opts.getOrDefault("radius", "1"))) {
+            for (int neighbors : ints(opts.getOrDefault("neighbors", "8"))) {
+                for (int grid : ints(opts.getOrDefault("grid", "8"))) {
+                    for (int size : ints(opts.getOrDefault("size", String.valueOf(TrainingSetLoader.FACE_SIZE)))) {
+                        LbphFeatures features = new LbphFeatures(radius, neighbors, grid, grid);
+                        Result r = evaluate(features, size, faces, label, fold, pool, out);
+                        r.students = students;
+                        r.folds = folds;
+                        results.add(r);
+                        System.out.println(String.format(Locale.US,
+                                "%-18s %6.1f%% %6.2f%% %9.1f %9.1f %9.1f %8.2f%% %8.2f%% %8.2f %8.2f %8.2f",
+                                r.config, 100 * r.rank1, 100 * r.eer, r.eerThreshold, r.far1Threshold, r.far01Threshold,
+                                100 * r.farAtApp, 100 * r.frrAtApp, r.p50, r.p90, r.p99));
+                    }
+                }
+            }
+        }
+        pool.shutdown();
+
+        try (PrintWriter w = new PrintWriter(new File(out, "summary.csv"), "UTF-8")) {
+            w.println(Result.HEADER);
+            for (Result r : results) w.println(r.toCsv());
+        }
+        System.out.println("Curves and summary written to " + out.getPath() + "/");
+
+        String baseline = opts.get("baseline");
+        if (baseline != null && !checkBaseline(new File(baseline), results)) System.exit(1);
+    }
+
+    private static Result evaluate(LbphFeatures features, int size, List<byte[]> faces, int[] label, int[] fold,
+                                   ForkJoinPool pool, File out) throws Exception {
+        int n = faces.size();
+        int dim = features.length();
+        float[][] hist = new float[n][];
+        pool.submit(() -> IntStream.range(0, n).parallel()
+                .forEach(i -> hist[i] = features.compute(resize(faces.get(i), size), size, size))).get();
+
+        // nearest own-student and other-student distance of every probe, excluding its fold
+        ChiSquareKernel kernel = ChiSquareKernel.best();
+        float[] genuine = new float[n];
+        float[] impostor = new float[n];
+        pool.submit(() -> IntStream.range(0, n).parallel().forEach(i -> {
+            float own = Float.MAX_VALUE, other = Float.MAX_VALUE;
+            for (int j = 0; j < n; j++) {
+                if (fold[j] == fold[i]) continue;
+                boolean same = label[j] == label[i];
+                float d = kernel.distance(hist[i], hist[j], 0, same ? own : other);
+                if (same) own = Math.min(own, d);
+                else other = Math.min(other, d);
+            }
+            genuine[i] = own;
+            impostor[i] = other;
+        })).get();
+
+        Result r = new Result();
+        r.config = String.format(Locale.ROOT, "r%dn%dg%dx%ds%d", features.getRadius(), features.getNeighbors(),
+                features.getGridX(), features.getGridY(), size);
+        r.samples = n;
+        int correct = 0;
+        for (int i = 0; i < n; i++) if (genuine[i] < impostor[i]) correct++;
+        r.rank1 = (double) correct / n;
+
+        float max = 0;
+        for (int i = 0; i < n; i++) {
+            if (genuine[i] < Float.MAX_VALUE) max = Math.max(max, genuine[i]);
+            if (impostor[i] < Float.MAX_VALUE) max = Math.max(max, impostor[i]);
+        }
+        double bestGap = Double.MAX_VALUE;
+        r.far1Threshold = r.far01Threshold = 0;
+        r.frrAtFar1 = r.frrAtFar01 = 1;
+        try (PrintWriter w = new PrintWriter(new File(out, "roc-" + r.config + ".csv"), "UTF-8")) {
+            w.println("threshold,far,frr,misidentified,far_probit,frr_probit");
+            for (int k = 0; k <= CURVE_POINTS; k++) {
+                double t = max * 1.05 * k / CURVE_POINTS;
+                double[] rates = rates(genuine, impostor, t);
+                w.println(String.format(Locale.US, "%.3f,%.6f,%.6f,%.6f,%.4f,%.4f", t, rates[0], rates[1], rates[2],
+                        probit(rates[0]), probit(rates[1])));
+                if (Math.abs(rates[0] - rates[1]) < bestGap) {
+                    bestGap = Math.abs(rates[0] - rates[1]);
+                    r.eer = (rates[0] + rates[1]) / 2;
+                    r.eerThreshold = t;
+                }
+                // the largest threshold still within the FAR target accepts the most students
+                if (rates[0] <= 0.01) {
+                    r.far1Threshold = t;
+                    r.frrAtFar1 = rates[1];
+                }
+                if (rates[0] <= 0.001) {
+                    r.far01Threshold = t;
+                    r.frrAtFar01 = rates[1];
+                }
+            }
+        }
+        double[] app = rates(genuine, impostor, APP_THRESHOLD);
+        r.farAtApp = app[0];
+        r.frrAtApp = app[1];
+
+        // predict latency as a gate sees it: one probe at a time against every other sample.
+        // The probes are held out of the gallery; a probe that finds its own copy at distance 0
+        // lets the search abandon every later sample early and times far too fast.
+        int held = Math.max(1, Math.min(LATENCY_PROBES, n / 10));
+        int[] order = IntStream.range(0, n).toArray();
+        Random random = new Random(5);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        LbphGallery gallery = new LbphGallery(dim, false);
+        for (int i = held; i < n; i++) gallery.add(label[order[i]], hist[order[i]]);
+        LbphEngine engine = new LbphEngine(features, gallery, kernel, Double.MAX_VALUE);
+        byte[][] crops = new byte[held][];
+        for (int i = 0; i < held; i++) crops[i] = resize(faces.get(order[i]), size);
+        for (int i = 0; i < Math.min(held, 20); i++) engine.nearest(features.compute(crops[i], size, size)); // warm-up
+        double[] millis = new double[LATENCY_PROBES];
+        for (int i = 0; i < millis.length; i++) {
+            long t0 = System.nanoTime();
+            engine.nearest(features.compute(crops[i % held], size, size));
+            millis[i] = (System.nanoTime() - t0) / 1e6;
+        }
+        Arrays.sort(millis);
+        r.p50 = percentile(millis, 0.50);
+        r.p90 = percentile(millis, 0.90);
+        r.p99 = percentile(millis, 0.99);
+        return r;
+    }
+
+    // {FAR, FRR, misidentification rate} at threshold t
+    private static double[] rates(float[] genuine, float[] impostor, double t) {
+        int n = genuine.length;
+        int falseAccepts = 0, accepted = 0, misidentified = 0;
+        for (int i = 0; i < n; i++) {
+            if (impostor[i] < t) falseAccepts++;
+            if (genuine[i] < impostor[i] && genuine[i] < t) accepted++;
+            else if (impostor[i] <= genuine[i] && impostor[i] < t) misidentified++;
+        }
+        return new double[] {(double) falseAccepts / n, 1.0 - (double) accepted / n, (double) misidentified / n};
+    }
+
+    // Stratified: the k-th image of each student goes to fold k mod folds; loo = one fold per image
+    private static int[] assignFolds(int[] label, String folds) {
+        int[] fold = new int[label.length];
+        if ("loo".equalsIgnoreCase(folds)) {
+            for (int i = 0; i < fold.length; i++) fold[i] = i;
+            return fold;
+        }
+        int k = Math.max(2, Integer.parseInt(folds));
+        Map<Integer, Integer> seen = new HashMap<>();
+        for (int i = 0; i < label.length; i++) {
+            int c = seen.merge(label[i], 1, Integer::sum);
+            fold[i] = (c - 1) % k;
+        }
+        return fold;
+    }
+
+    private static void load(String source, Map<String, String> opts, List<Integer> labels, List<byte[]> faces) throws Exception {
+        if (source.startsWith("synthetic:")) {
+            Random random = new Random(17);
+            int students = Integer.parseInt(source.substring("synthetic:".length()));
+            for (int s = 1; s <= students; s++) {
+                byte[] face = SyntheticFaces.student(random);
+                for (int i = 0; i < 10; i++) {
+                    labels.add(s);
+                    faces.add(SyntheticFaces.sample(face, random, 30.0));
+                }
+            }
+            return;
+        }
+
+        Loader.load(org.bytedeco.opencv.global.opencv_core.class);
+        List<TrainingSetLoader.Sample> samples;
+        if ("db".equals(source)) {
+            try (Connection conn = DriverManager.getConnection(
+                    opts.getOrDefault("url", "jdbc:mysql://localhost:3306/face_recognition_db"),
+                    opts.getOrDefault("user", "root"), opts.getOrDefault("password", "1234"))) {
+                samples = TrainingSetLoader.query(conn);
+            }
+        } else {
+            samples = datasetSamples(new File(source));
+        }
+        // decoded through the training crop cache, so repeated runs skip the decoding
+        try (TrainingSetLoader loader = new TrainingSetLoader(new File("models", "crop_cache"))) {
+            loader.forEachBatch(samples, batch -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    Mat m = batch.images.get(i);
+                    byte[] pixels = new byte[TrainingSetLoader.FACE_SIZE * TrainingSetLoader.FACE_SIZE];
+                    m.data().get(pixels);
+                    labels.add(batch.labels.get(i));
+                    faces.add(pixels);
+                }
+            });
+        }
+    }
+
+    private static List<TrainingSetLoader.Sample> datasetSamples(File dataset) {
+        List<TrainingSetLoader.Sample> samples = new ArrayList<>();
+        File[] students = dataset.listFiles(File::isDirectory);
+        if (students == null) return samples;
+        Arrays.sort(students);
+        for (File dir : students) {
+            int label;
+            try {
+                label = Integer.parseInt(dir.getName());
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            File[] files = dir.listFiles((d, name) -> name.toLowerCase(Locale.ROOT).matches(".*\\.(png|jpg|jpeg|bmp|pgm)"));
+            if (files == null) continue;
+            Arrays.sort(files);
+            for (File f : files) samples.add(new TrainingSetLoader.Sample(label, f.getAbsolutePath()));
+        }
+        return samples;
+    }
+
+    // Bilinear resize of a square 200x200 crop (the size everything is stored at)
+    private static byte[] resize(byte[] src, int size) {
+        int from = TrainingSetLoader.FACE_SIZE;
+        if (size == from) return src;
+        byte[] dst = new byte[size * size];
+        double scale = (double) from / size;
+        for (int y = 0; y < size; y++) {
+            double sy = Math.max(0, (y + 0.5) * scale - 0.5);
+            int y0 = Math.min((int) sy, from - 1);
+            int y1 = Math.min(y0 + 1, from - 1);
+            double fy = sy - y0;
+            for (int x = 0; x < size; x++) {
+                double sx = Math.max(0, (x + 0.5) * scale - 0.5);
+                int x0 = Math.min((int) sx, from - 1);
+                int x1 = Math.min(x0 + 1, from - 1);
+                double fx = sx - x0;
+                double top = (src[y0 * from + x0] & 0xFF) * (1 - fx) + (src[y0 * from + x1] & 0xFF) * fx;
+                double bottom = (src[y1 * from + x0] & 0xFF) * (1 - fx) + (src[y1 * from + x1] & 0xFF) * fx;
+                dst[y * size + x] = (byte) Math.round(top * (1 - fy) + bottom * fy);
+            }
+        }
+        return dst;
+    }
+
+    private static boolean checkBaseline(File file, List<Result> results) throws IOException {
+        Map<String, Result> base = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line = in.readLine(); // header
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    Result r = Result.parse(line);
+                    base.put(r.config, r);
+                }
+            }
+        }
+        boolean ok = true;
+        for (Result r : results) {
+            Result b = base.get(r.config);
+            if (b == null) continue;
+            if (r.eer > b.eer + ACCURACY_TOLERANCE || r.rank1 < b.rank1 - ACCURACY_TOLERANCE) {
+                System.out.println(String.format(Locale.US, "REGRESSION %s: EER %.2f%% -> %.2f%%, rank-1 %.1f%% -> %.1f%%",
+                        r.config, 100 * b.eer, 100 * r.eer, 100 * b.rank1, 100 * r.rank1));
+                ok = false;
+            }
+            if (r.p50 > b.p50 * LATENCY_TOLERANCE) {
+                System.out.println(String.format(Locale.US, "REGRESSION %s: median predict %.2f ms -> %.2f ms",
+                        r.config, b.p50, r.p50));
+                ok = false;
+            }
+        }
+        System.out.println(ok ? "No regressions against " + file : "Regressions against " + file);
+        return ok;
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    // Inverse standard normal CDF (Acklam's approximation), for DET plots; rates of 0 or 1 are clipped
+    static double probit(double p) {
+        p = Math.max(1e-6, Math.min(1 - 1e-6, p));
+        double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01};
+        double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00};
+        double low = 0.02425;
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            double q = Math.sqrt(-2 * Math.log(1 - p));
+            return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+    private static int[] ints(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).filter(s -> !s.isEmpty()).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -0,0 +1,557 @@
+package com.faceattendance;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Staged recognition engine: capture -> detect -> recognize -> render.
+ * Every stage runs on its own thread and hands frames to the next one through
+ * a small {@link FrameQueue}, so grabbing never waits on recognition and the
+ * frame rate is set by the slowest stage rather than the sum of all of them.
+ * <p>
+ * The recognize stage predicts all faces of a frame in parallel, largest first and at
+ * most {@value #DEFAULT_MAX_FACES} by default, so a crowd at the gate has a bounded cost.
+ * Who a face is gets decided over several frames by an {@link IdentityDecider}.
+ * <p>
+ * For recorded sources the pipeline can run in replay mode: queues block instead of
+ * dropping, every frame is processed and the pipeline finishes on end-of-stream.
+ */
+public class RecognitionPipeline {
+
+    // Callbacks into the application. All of them are invoked from pipeline threads.
+    public interface Listener {
+        // Display text for a recognized student id, or null if the id is unknown
+        String describe(int studentId);
+
+        // Called by the recognize stage once per face, when the IdentityDecider accepts it
+        void onRecognized(int studentId, double confidence);
+
+        // Optional banner drawn on the frame (e.g. the close countdown), or null
+        String overlay();
+
+        // Problems the pipeline hits, such as a stage stopping on an error
+        void log(String message);
+    }
+
+    static class FaceResult {
+        final int x, y, width, height;
+        final int trackId; // 0 when tracking is off
+        int label = -1;
+        double confidence;
+        String text = "Unknown"; // null when the face was over the per-frame cap and not predicted
+
+        FaceResult(Rectangle r, int trackId) {
+            this.x = r.x;
+            this.y = r.y;
+            this.width = r.width;
+            this.height = r.height;
+            this.trackId = trackId;
+        }
+    }
+
+    // Pooled per session: the Mats keep their native buffers between frames
+    static class FramePacket {
+        long seq;
+        long capturedNanos;
+        final Mat color = new Mat();
+        final Mat grayBuffer = new Mat();
+        Mat gray; // grayBuffer, or color itself when the source delivers grayscale
+        final List<FaceResult> faces = new ArrayList<>();
+
+        void reset(long seq) {
+            this.seq = seq;
+            this.capturedNanos = System.nanoTime();
+            this.gray = null;
+            this.faces.clear();
+        }
+
+        void dispose() {
+            color.close();
+            grayBuffer.close();
+        }
+    }
+
+    // Per-stage counters, read by summary()
+    static class StageStats {
+        final String name;
+        final AtomicLong frames = new AtomicLong();
+        final AtomicLong busyNanos = new AtomicLong();
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        void record(long startNanos) {
+            frames.incrementAndGet();
+            busyNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+
+        double avgMillis() {
+            long n = frames.get();
+            return n == 0 ? 0.0 : busyNanos.get() / 1e6 / n;
+        }
+    }
+
+    private static final int QUEUE_CAPACITY = 2;
+    // enough packets for every queue slot plus one in flight per stage
+    private static final int POOL_SIZE = 3 * QUEUE_CAPACITY + 4;
+    private static final int FACE_SIZE = 200;
+
+    // Faces predicted per frame; a crowded frame costs at most this many predictions
+    public static final String MAX_FACES_PROPERTY = "faceattendance.recognition.maxFaces";
+    private static final int DEFAULT_MAX_FACES = 4;
+
+    private final FrameSource source;
+    private final boolean dropFrames;
+    private final FaceDetector detector;
+    private final FaceMatcher matcher;
+    private final Listener listener;
+    private FaceTracker tracker; // optional, only touched by the detect stage
+    private final IdentityDecider decider; // only touched by the recognize stage
+    private volatile VideoPanel view; // null = headless, frames are processed but not shown
+    private ExecutorService inferencePool; // optional, shared by several pipelines
+    private ExecutorService ownPool;       // used when no shared pool is set
+    private int maxFaces = Integer.getInteger(MAX_FACES_PROPERTY, DEFAULT_MAX_FACES);
+    private final AtomicLong skippedFaces = new AtomicLong();
+
+    private final ArrayBlockingQueue<FramePacket> packetPool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final FrameQueue<FramePacket> toDetect = new FrameQueue<>(QUEUE_CAPACITY, this::recycle);
+    private final FrameQueue<FramePacket> toRecognize = new FrameQueue<>(QUEUE_CAPACITY, this::recycle);
+    private final FrameQueue<FramePacket> toRender = new FrameQueue<>(QUEUE_CAPACITY, this::recycle);
+
+    private final StageStats captureStats = new StageStats("capture");
+    private final StageStats detectStats = new StageStats("detect");
+    private final StageStats recognizeStats = new StageStats("recognize");
+    private final StageStats renderStats = new StageStats("render");
+    private final AtomicLong latencyNanos = new AtomicLong();
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = false;
+    private volatile boolean captureDone, detectDone, recognizeDone;
+    private volatile long startedNanos, finishedNanos;
+
+    // detector may be a single backend or a DetectorPool shared with other pipelines
+    public RecognitionPipeline(FrameSource source, FaceDetector detector, FaceMatcher matcher,
+                               double threshold, Listener listener) {
+        this(source, detector, matcher, threshold, listener, source.isLive());
+    }
+
+    // dropFrames=false processes every frame (replay/profiling); true keeps only the latest
+    public RecognitionPipeline(FrameSource source, FaceDetector detector, FaceMatcher matcher,
+                               double threshold, Listener listener, boolean dropFrames) {
+        this.source = source;
+        this.dropFrames = dropFrames;
+        this.detector = detector;
+        this.matcher = matcher;
+        this.listener = listener;
+        this.decider = IdentityDecider.fromSystemProperty(threshold);
+    }
+
+    // Enables detect-every-N-frames tracking; must be called before start(). The pipeline
+    // owns the tracker from then on and closes it when the detect stage ends.
+    public void setTracker(FaceTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    // Runs predictions on a worker pool shared with other cameras; must be called before start().
+    // The pool's threads should come from predictionThreads() so their buffers are freed.
+    public void setInferencePool(ExecutorService inferencePool) {
+        this.inferencePool = inferencePool;
+    }
+
+    // Caps how many faces per frame are predicted, largest first; must be called before start()
+    public void setMaxFaces(int maxFaces) {
+        this.maxFaces = Math.max(1, maxFaces);
+    }
+
+    public void setView(VideoPanel view) {
+        this.view = view;
+    }
+
+    public void start() {
+        running = true;
+        startedNanos = System.nanoTime();
+        if (inferencePool == null) {
+            int threads = Math.min(maxFaces, Runtime.getRuntime().availableProcessors());
+            ownPool = Executors.newFixedThreadPool(threads, predictionThreads("recognition-predict"));
+        }
+        workers.add(startWorker("capture", this::captureLoop));
+        workers.add(startWorker("detect", this::detectLoop));
+        workers.add(startWorker("recognize", this::recognizeLoop));
+        workers.add(startWorker("render", this::renderLoop));
+    }
+
+    public void stop() {
+        running = false;
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+        for (Thread t : workers) {
+            try {
+                t.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.clear();
+        if (ownPool != null) {
+            ownPool.shutdownNow();
+            ownPool = null;
+        }
+        toDetect.clear();
+        toRecognize.clear();
+        toRender.clear();
+        FramePacket p;
+        while ((p = packetPool.poll()) != null) {
+            p.dispose();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Blocks until a recorded source has been fully processed (or the pipeline is stopped)
+    public void awaitCompletion() throws InterruptedException {
+        for (Thread t : workers) {
+            t.join();
+        }
+    }
+
+    public long getFramesProcessed() {
+        return renderStats.frames.get();
+    }
+
+    public double getFps() {
+        long end = finishedNanos > 0 ? finishedNanos : System.nanoTime();
+        return renderStats.frames.get() / Math.max(1e-9, (end - startedNanos) / 1e9);
+    }
+
+    // Average capture-to-screen latency
+    public double getLatencyMillis() {
+        long rendered = renderStats.frames.get();
+        return rendered == 0 ? 0.0 : latencyNanos.get() / 1e6 / rendered;
+    }
+
+    // One-line throughput report: fps, time per stage and frames dropped between stages
+    public String summary() {
+        long rendered = renderStats.frames.get();
+        long dropped = toDetect.getDropped() + toRecognize.getDropped() + toRender.getDropped();
+        return String.format(Locale.US,
+                "Pipeline: captured %d, rendered %d (%.1f fps), dropped %d, latency %.1f ms | %s %.1f ms, %s %.1f ms, %s %.1f ms, %s %.1f ms",
+                captureStats.frames.get(), rendered, getFps(), dropped, getLatencyMillis(),
+                captureStats.name, captureStats.avgMillis(), detectStats.name, detectStats.avgMillis(),
+                recognizeStats.name, recognizeStats.avgMillis(), renderStats.name, renderStats.avgMillis())
+                + (skippedFaces.get() > 0 ? " | faces over the cap of " + maxFaces + ": " + skippedFaces.get() : "")
+                + (tracker != null ? " | " + tracker.summary() : "")
+                + " | " + decider.summary()
+                + " | " + NativeMemory.describe();
+    }
+
+    private interface StageLoop {
+        void run() throws Exception;
+    }
+
+    private Thread startWorker(String name, StageLoop loop) {
+        Thread t = new Thread(() -> {
+            try {
+                loop.run();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                listener.log("Pipeline " + name + " stage error: " + ex.getMessage());
+                running = false;
+            }
+        }, "recognition-" + name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    // -------------------- Stages --------------------
+
+    private FramePacket obtainPacket(long seq) {
+        FramePacket p = packetPool.poll();
+        if (p == null) p = new FramePacket();
+        p.reset(seq);
+        return p;
+    }
+
+    private void recycle(FramePacket p) {
+        if (!running || !packetPool.offer(p)) p.dispose();
+    }
+
+    private void handOff(FrameQueue<FramePacket> queue, FramePacket p) throws InterruptedException {
+        if (dropFrames) {
+            queue.offerLatest(p);
+        } else {
+            queue.put(p);
+        }
+    }
+
+    // True once upstream has finished and everything it produced has been consumed
+    private static boolean finished(FrameQueue<FramePacket> queue, boolean upstreamDone) {
+        return upstreamDone && queue.isEmpty();
+    }
+
+    private void captureLoop() throws Exception {
+        OpenCVFrameConverter.ToMat convToMat = new OpenCVFrameConverter.ToMat();
+        long seq = 0;
+        try {
+            while (running) {
+                long t0 = System.nanoTime();
+                Frame frame = source.grab();
+                if (frame == null) {
+                    if (source.isLive()) continue;
+                    break; // end of recording
+                }
+                Mat mat = convToMat.convert(frame);
+                if (mat == null) continue;
+                // The source reuses its buffer, so the packet needs its own copy;
+                // copyTo keeps the pooled buffer when the frame size does not change
+                FramePacket p = obtainPacket(seq++);
+                mat.copyTo(p.color);
+                captureStats.record(t0);
+                handOff(toDetect, p);
+            }
+        } finally {
+            captureDone = true;
+        }
+    }
+
+    private void detectLoop() throws Exception {
+        try {
+            while (running) {
+                FramePacket p = toDetect.poll(100);
+                if (p == null) {
+                    if (finished(toDetect, captureDone)) break;
+                    continue;
+                }
+                long t0 = System.nanoTime();
+                if (p.color.channels() == 1) {
+                    p.gray = p.color; // source already delivers grayscale
+                } else {
+                    p.gray = p.grayBuffer;
+                    cvtColor(p.color, p.gray, COLOR_BGR2GRAY);
+                }
+                if (tracker != null) {
+                    for (FaceTracker.Track t : tracker.update(p.gray, this::detectFaces)) {
+                        p.faces.add(new FaceResult(t.getBox(), t.getId()));
+                    }
+                } else {
+                    for (Rectangle r : detectFaces(p.gray, null)) {
+                        p.faces.add(new FaceResult(r, 0));
+                    }
+                }
+                detectStats.record(t0);
+                handOff(toRecognize, p);
+            }
+        } finally {
+            detectDone = true;
+            if (tracker != null) tracker.close(); // only this stage touches it
+        }
+    }
+
+    // Runs the detector on the whole frame or inside roi, returning boxes in frame coordinates
+    private List<Rectangle> detectFaces(Mat gray, Rectangle roi) {
+        if (detector == null) return new ArrayList<>();
+        return detector.detect(gray, roi);
+    }
+
+    // Preallocated crop target; one per thread that runs predictions
+    static class PredictBuffers {
+        final Size faceSize = new Size(FACE_SIZE, FACE_SIZE);
+        final Mat face = new Mat();
+
+        void release() {
+            faceSize.close();
+            face.close();
+        }
+    }
+
+    // Prediction workers (shared or the pipeline's own) keep their buffers for the life of the
+    // thread; threads from predictionThreads() free them when the pool lets the thread go
+    private static final ThreadLocal<PredictBuffers> POOL_BUFFERS = new ThreadLocal<>();
+
+    private static PredictBuffers poolBuffers() {
+        PredictBuffers b = POOL_BUFFERS.get();
+        if (b == null) {
+            b = new PredictBuffers();
+            POOL_BUFFERS.set(b);
+        }
+        return b;
+    }
+
+    /**
+     * Threads for a pool given to {@link #setInferencePool}: each releases its prediction
+     * buffers when it exits (pool shutdown), instead of leaving the native memory to the GC.
+     */
+    public static ThreadFactory predictionThreads(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(() -> {
+                try {
+                    r.run();
+                } finally {
+                    PredictBuffers b = POOL_BUFFERS.get();
+                    if (b != null) {
+                        POOL_BUFFERS.remove();
+                        b.release();
+                    }
+                }
+            }, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private void recognizeLoop() throws Exception {
+        PredictBuffers local = new PredictBuffers();
+        try {
+            while (running) {
+                FramePacket p = toRecognize.poll(100);
+                if (p == null) {
+                    if (finished(toRecognize, detectDone)) break;
+                    continue;
+                }
+                long t0 = System.nanoTime();
+                recognizeFaces(p, local);
+                recognizeStats.record(t0);
+                handOff(toRender, p);
+            }
+        } finally {
+            recognizeDone = true;
+            local.release();
+        }
+    }
+
+    // Predicts the frame's largest faces in parallel, then names them and reports matches together
+    private void recognizeFaces(FramePacket p, PredictBuffers local) throws InterruptedException {
+        List<FaceResult> batch = prioritize(p.faces);
+        ExecutorService executor = inferencePool != null ? inferencePool : ownPool;
+        // a model published meanwhile takes over from the next frame
+        try (FaceMatcher.Lease lease = matcher.lease()) {
+            FaceMatcher m = lease.matcher();
+            if (batch.size() == 1 && inferencePool == null) {
+                predict(m, p.gray, batch.get(0), local); // nothing to overlap with, skip the hand-off
+            } else if (!batch.isEmpty()) {
+                List<Future<?>> pending = new ArrayList<>(batch.size());
+                for (FaceResult f : batch) {
+                    pending.add(executor.submit(() -> predict(m, p.gray, f, poolBuffers())));
+                }
+                awaitAll(pending);
+            }
+        }
+
+        // one lookup per student per frame, off the prediction path
+        Map<Integer, String> names = new HashMap<>();
+        decider.beginFrame();
+        for (FaceResult f : batch) {
+            IdentityDecider.Verdict v = decider.observe(f.x, f.y, f.width, f.height, f.trackId,
+                    f.label, f.confidence, p.capturedNanos);
+            if (v.state == IdentityDecider.State.ACCEPTED) {
+                String text = names.computeIfAbsent(v.label, listener::describe);
+                if (text != null) {
+                    f.text = text;
+                    if (v.fresh) listener.onRecognized(v.label, f.confidence);
+                }
+            } else if (v.state == IdentityDecider.State.PENDING && f.label > 0) {
+                f.text = "Verifying... (" + v.frames + ")";
+            } else {
+                f.text = String.format(Locale.US, "Unknown (%.1f)", Double.valueOf(f.confidence));
+            }
+        }
+    }
+
+    // The maxFaces largest faces (closest to the camera); the rest get a box but no prediction
+    private List<FaceResult> prioritize(List<FaceResult> faces) {
+        if (faces.size() <= maxFaces) return faces;
+        List<FaceResult> sorted = new ArrayList<>(faces);
+        sorted.sort((a, b) -> Long.compare((long) b.width * b.height, (long) a.width * a.height));
+        for (FaceResult f : sorted.subList(maxFaces, sorted.size())) {
+            f.text = null;
+        }
+        skippedFaces.addAndGet(sorted.size() - maxFaces);
+        return sorted.subList(0, maxFaces);
+    }
+
+    private static void predict(FaceMatcher matcher, Mat gray, FaceResult f, PredictBuffers b) {
+        // ROI headers are scoped so they are freed now, not whenever the GC gets to them
+        try (PointerScope scope = new PointerScope()) {
+            Mat roi = new Mat(gray, new Rect(f.x, f.y, f.width, f.height));
+            resize(roi, b.face, b.faceSize);
+        }
+        FaceMatcher.Match m = matcher.predict(b.face);
+        f.label = m.label;
+        f.confidence = m.distance;
+    }
+
+    // Waits for every task even when interrupted: they read the packet, which must not be recycled under them
+    private static void awaitAll(List<Future<?>> pending) throws InterruptedException {
+        boolean interrupted = false;
+        for (Future<?> f : pending) {
+            while (true) {
+                try {
+                    f.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Prediction failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+        if (interrupted) throw new InterruptedException();
+    }
+
+    private void renderLoop() throws Exception {
+        MatRenderer renderer = new MatRenderer();
+        while (running) {
+            FramePacket p = toRender.poll(100);
+            if (p == null) {
+                if (finished(toRender, recognizeDone)) break;
+                continue;
+            }
+            long t0 = System.nanoTime();
+            // Overlays go straight onto the packet's own copy of the frame
+            for (FaceResult f : p.faces) {
+                renderer.drawFaceBox(p.color, f.x, f.y, f.width, f.height);
+                if (f.text != null) renderer.drawLabel(p.color, f.text, f.x, f.y - 8);
+            }
+            String banner = listener.overlay();
+            if (banner != null) {
+                renderer.drawBanner(p.color, banner);
+            }
+            renderer.publish(p.color, view);
+            latencyNanos.addAndGet(System.nanoTime() - p.capturedNanos);
+            recycle(p);
+            renderStats.record(t0);
+        }
+        renderer.release();
+        // Recording fully processed (or stopped): let the owner see that the pipeline is done
+        finishedNanos = System.nanoTime();
+        running = false;
+    }
+}
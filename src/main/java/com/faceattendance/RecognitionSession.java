@@ -0,0 +1,163 @@
+package com.faceattendance;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One gate camera doing check-in or check-out: its frame source, pipeline, video panel
+ * and hold-to-close state. Sessions for different gates run side by side and share a
+ * {@link RecognitionEngine}; nothing here is static or shared between sessions.
+ * <p>
+ * The first student recognized is marked once, the countdown is drawn for five seconds
+ * and the session then ends by itself, like the single-camera dialog always did.
+ */
+public class RecognitionSession {
+    private static final long HOLD_MILLIS = 5000L;
+
+    public interface Callbacks {
+        // Display text for a student id, or null if unknown
+        String describe(int studentId);
+
+        // Marks attendance for the first student this session recognizes
+        void mark(int studentId, boolean checkout);
+
+        void log(String message);
+
+        // Called on the session thread once everything is stopped and released
+        void finished(RecognitionSession session, boolean recognized);
+    }
+
+    private final String gate;
+    private final boolean checkout;
+    private final double threshold;
+    private final VideoPanel view;
+    private final Callbacks callbacks;
+
+    private volatile boolean running = true;
+    private volatile boolean waitingToClose = false;
+    private volatile long closeAtMillis = 0L;
+    private final AtomicBoolean actionDone = new AtomicBoolean(false);
+    private volatile RecognitionPipeline pipeline;
+    // ids the lookup found no student for; names that were found are cached by the engine
+    private final Set<Integer> unknownIds = ConcurrentHashMap.newKeySet();
+
+    public RecognitionSession(String gate, boolean checkout, double threshold, VideoPanel view, Callbacks callbacks) {
+        this.gate = gate;
+        this.checkout = checkout;
+        this.threshold = threshold;
+        this.view = view;
+        this.callbacks = callbacks;
+    }
+
+    public String getGate() {
+        return gate;
+    }
+
+    public boolean isCheckout() {
+        return checkout;
+    }
+
+    public VideoPanel getView() {
+        return view;
+    }
+
+    // Asks the session to end; run() returns shortly after
+    public void stop() {
+        running = false;
+    }
+
+    // Runs the session on the calling thread until it is stopped, the hold time elapses
+    // or a recorded source ends
+    public void run(RecognitionEngine engine) {
+        run(engine, engine.getMatcher());
+    }
+
+    // As run(engine), matching with matcher instead of the engine's own (e.g. a ShardedMatcher over it)
+    public void run(RecognitionEngine engine, FaceMatcher matcher) {
+        FrameSource source = null;
+        try {
+            if (!running) return;
+            // the detectors were built for this same profile
+            DetectionProfile profile = DetectionProfile.fromSystemProperty();
+            source = FrameSources.fromSpec(gate);
+            source.setGrayscale(profile.isGrayscaleCapture());
+            source.start();
+            callbacks.log(gate + ": " + source.describe() + ", detection profile: " + profile);
+
+            RecognitionPipeline p = new RecognitionPipeline(source, engine.getDetectors(), matcher,
+                    threshold, new RecognitionPipeline.Listener() {
+                @Override
+                public String describe(int studentId) {
+                    // asked at most once per session, not on every frame the face stays accepted
+                    if (unknownIds.contains(studentId)) return null;
+                    String text = engine.describe(studentId, callbacks::describe);
+                    if (text == null) unknownIds.add(studentId);
+                    return text;
+                }
+
+                @Override
+                public void log(String message) {
+                    callbacks.log(gate + ": " + message);
+                }
+
+                @Override
+                public void onRecognized(int studentId, double confidence) {
+                    // mark attendance or logout only once per session
+                    if (actionDone.compareAndSet(false, true)) {
+                        callbacks.mark(studentId, checkout);
+                        closeAtMillis = System.currentTimeMillis() + HOLD_MILLIS;
+                        waitingToClose = true;
+                    }
+                }
+
+                @Override
+                public String overlay() {
+                    // Show countdown overlay while in the hold window
+                    if (waitingToClose) {
+                        long remain = Math.max(0L, closeAtMillis - System.currentTimeMillis());
+                        return "Recognized. Closing in " + ((remain / 1000L) + 1) + "s";
+                    }
+                    return null;
+                }
+            });
+            p.setView(view);
+            p.setTracker(FaceTracker.fromSystemProperty());
+            p.setInferencePool(engine.getInferencePool());
+            pipeline = p;
+            p.start();
+
+            while (running && p.isRunning()) {
+                if (waitingToClose && System.currentTimeMillis() >= closeAtMillis) {
+                    running = false;
+                }
+                Thread.sleep(50);
+            }
+            p.stop();
+            callbacks.log(gate + ": " + source.describe() + " | " + p.summary());
+            if (matcher != engine.getMatcher()) callbacks.log(gate + ": " + matcher.describe());
+            callbacks.log(gate + ": video " + view.getSubmittedFrames() + " frames submitted, "
+                    + view.getDroppedFrames() + " dropped before paint");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            callbacks.log(gate + ": recognition error: " + ex.getMessage());
+        } finally {
+            running = false;
+            RecognitionPipeline p = pipeline;
+            if (p != null) p.stop();
+            try {
+                if (source != null) source.stop();
+            } catch (Exception ignored) {}
+            callbacks.finished(this, actionDone.get());
+        }
+    }
+
+    // Per-camera throughput for the dialog's status line
+    public String statsLine() {
+        RecognitionPipeline p = pipeline;
+        if (p == null) return gate + ": starting...";
+        return String.format(Locale.US, "%s: %.1f fps, %.0f ms latency", gate, p.getFps(), p.getLatencyMillis());
+    }
+}
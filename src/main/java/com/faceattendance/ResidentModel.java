@@ -0,0 +1,120 @@
+package com.faceattendance;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * The model every gate predicts with, kept in memory by the {@link ModelRegistry} and
+ * replaced by a reference swap when a new version is published.
+ * <p>
+ * Sessions hold on to this object, not to the matcher inside it. Each frame leases the
+ * current matcher ({@link #lease}), so a swap takes effect from the next frame without
+ * stopping any camera. A replaced matcher is closed once the last frame using it is done,
+ * which matters for OpenCV's recognizer, whose native memory must not be freed mid-predict.
+ */
+public class ResidentModel implements FaceMatcher {
+
+    private static final class Holder {
+        final FaceMatcher matcher;
+        final int version;
+        final AtomicInteger users = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+        volatile boolean retired;
+
+        Holder(FaceMatcher matcher, int version) {
+            this.matcher = matcher;
+            this.version = version;
+        }
+
+        void release() {
+            if (users.decrementAndGet() == 0 && retired) closeOnce();
+        }
+
+        void closeOnce() {
+            if (closed.compareAndSet(false, true)) matcher.close();
+        }
+    }
+
+    private final AtomicReference<Holder> current;
+
+    public ResidentModel(FaceMatcher matcher, int version) {
+        this.current = new AtomicReference<>(new Holder(matcher, version));
+    }
+
+    // Makes next the model for new frames; the old one is closed when its last frame ends
+    public void swap(FaceMatcher next, int version) {
+        Holder old = current.getAndSet(new Holder(next, version));
+        old.retired = true;
+        if (old.users.get() == 0) old.closeOnce();
+    }
+
+    // The matcher new frames use; for changes that apply in place (LbphEngine.add/remove)
+    public FaceMatcher current() {
+        return current.get().matcher;
+    }
+
+    public int version() {
+        return current.get().version;
+    }
+
+    private Holder acquire() {
+        while (true) {
+            Holder h = current.get();
+            h.users.incrementAndGet();
+            if (current.get() == h) return h;
+            h.release(); // swapped in between; take the new one
+        }
+    }
+
+    @Override
+    public Lease lease() {
+        Holder h = acquire();
+        return new Lease() {
+            private boolean released;
+
+            @Override
+            public FaceMatcher matcher() {
+                return h.matcher;
+            }
+
+            @Override
+            public void close() {
+                if (!released) {
+                    released = true;
+                    h.release();
+                }
+            }
+        };
+    }
+
+    @Override
+    public Match predict(Mat face) {
+        Holder h = acquire();
+        try {
+            return h.matcher.predict(face);
+        } finally {
+            h.release();
+        }
+    }
+
+    @Override
+    public int gallerySize() {
+        return current.get().matcher.gallerySize();
+    }
+
+    @Override
+    public String describe() {
+        Holder h = current.get();
+        return "model v" + h.version + ", " + h.matcher.describe();
+    }
+
+    @Override
+    public void close() {
+        Holder h = current.get();
+        h.retired = true;
+        if (h.users.get() == 0) h.closeOnce();
+    }
+}
@@ -0,0 +1,73 @@
+package com.faceattendance;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Plain loop; the JIT unrolls it but cannot vectorize the conditional division
+public class ScalarChiSquareKernel implements ChiSquareKernel {
+
+    @Override
+    public float distance(float[] probe, float[] gallery, int offset, float abandonAt) {
+        float half = abandonAt / 2;
+        float sum = 0f;
+        int len = probe.length;
+        for (int block = 0; block < len; block += ABANDON_BLOCK) {
+            int end = Math.min(len, block + ABANDON_BLOCK);
+            for (int i = block; i < end; i++) {
+                float g = gallery[offset + i];
+                float p = probe[i];
+                float s = g + p;
+                if (s > 0f) {
+                    float d = g - p;
+                    sum += d * d / s;
+                }
+            }
+            if (sum >= half) return 2 * sum;
+        }
+        return 2 * sum;
+    }
+
+    @Override
+    public float distance(float[] probe, ByteBuffer gallery, int byteOffset, float abandonAt) {
+        float half = abandonAt / 2;
+        float sum = 0f;
+        int len = probe.length;
+        for (int block = 0; block < len; block += ABANDON_BLOCK) {
+            int end = Math.min(len, block + ABANDON_BLOCK);
+            for (int i = block; i < end; i++) {
+                float g = gallery.getFloat(byteOffset + 4 * i);
+                float p = probe[i];
+                float s = g + p;
+                if (s > 0f) {
+                    float d = g - p;
+                    sum += d * d / s;
+                }
+            }
+            if (sum >= half) return 2 * sum;
+        }
+        return 2 * sum;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    // Checks another kernel against this one on a small synthetic histogram, heap and off-heap
+    static boolean selfTest(ChiSquareKernel k) {
+        int n = 3 * ABANDON_BLOCK + 37;
+        float[] a = new float[n];
+        float[] b = new float[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = (i % 7) / 7f;
+            b[i] = (i % 5 == 0) ? 0f : (i % 11) / 11f;
+        }
+        ByteBuffer bb = ByteBuffer.allocateDirect(4 * n).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < n; i++) bb.putFloat(4 * i, b[i]);
+        ScalarChiSquareKernel ref = new ScalarChiSquareKernel();
+        float expected = ref.distance(a, b, 0, Float.MAX_VALUE);
+        float heap = k.distance(a, b, 0, Float.MAX_VALUE);
+        float direct = k.distance(a, bb, 0, Float.MAX_VALUE);
+        return Math.abs(heap - expected) <= 1e-3f * expected && Math.abs(direct - expected) <= 1e-3f * expected;
+    }
+}
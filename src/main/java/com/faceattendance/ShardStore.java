@@ -0,0 +1,109 @@
+package com.faceattendance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Trained histograms of each department/class shard, kept in models/shards/ between
+ * trainings so a retrain only recomputes the shards whose students changed.
+ * <p>
+ * Each shard is a binary model ({@link LbphModelFile}) plus a .roster file holding a
+ * digest of what it was trained from: every sample's student, image path, size and
+ * modification time, the LBPH parameters and the prototype count. trainModel
+ * recomputes a shard when the digest differs and otherwise reads it back, then
+ * concatenates all shards into the published model.
+ */
+public class ShardStore {
+    private final File dir;
+
+    public ShardStore(File dir) {
+        this.dir = dir;
+    }
+
+    public static String digest(List<TrainingSetLoader.Sample> samples, LbphFeatures features, int prototypes) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(features).append('|').append(prototypes).append('\n');
+        for (TrainingSetLoader.Sample s : samples) {
+            File f = new File(s.path);
+            sb.append(s.label).append('|').append(s.path).append('|').append(f.length()).append('|')
+                    .append(f.lastModified()).append('\n');
+            if (sb.length() > 1 << 16) {
+                md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+                sb.setLength(0);
+            }
+        }
+        md.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest()) hex.append(String.format(Locale.ROOT, "%02x", b));
+        return hex.toString();
+    }
+
+    // The shard as trained from exactly this digest, or null if it must be retrained
+    public LbphEngine load(String key, String digest) {
+        File bin = binFor(key);
+        File roster = rosterFor(key);
+        if (!bin.isFile() || !roster.isFile()) return null;
+        try {
+            String saved = new String(Files.readAllBytes(roster.toPath()), StandardCharsets.UTF_8).trim();
+            if (!saved.equals(digest)) return null;
+            // read, not mapped: trainModel copies it at once, and a mapping would keep the next retrain
+            // of this shard from replacing the file on Windows
+            return LbphModelFile.read(bin, ChiSquareKernel.best());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // Digest last, so a crash in between leaves a shard that is retrained next time
+    public void save(String key, LbphEngine shard, String digest) throws IOException {
+        dir.mkdirs();
+        File roster = rosterFor(key);
+        roster.delete();
+        LbphModelFile.write(shard, binFor(key), null);
+        File tmp = new File(roster.getPath() + ".tmp");
+        Files.write(tmp.toPath(), (digest + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), roster.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Deletes shards no student belongs to any more
+    public void retain(Collection<String> keys) {
+        Set<String> names = new HashSet<>();
+        for (String k : keys) names.add(baseName(k));
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            String name = f.getName();
+            int dot = name.indexOf('.');
+            if (dot > 0 && !names.contains(name.substring(0, dot))) f.delete();
+        }
+    }
+
+    private File binFor(String key) {
+        return new File(dir, baseName(key) + ".bin");
+    }
+
+    private File rosterFor(String key) {
+        return new File(dir, baseName(key) + ".roster");
+    }
+
+    // Readable and file-system safe; the hash keeps keys that sanitize alike apart
+    private static String baseName(String key) {
+        return key.replaceAll("[^A-Za-z0-9_-]", "_") + String.format(Locale.ROOT, "-%08x", key.hashCode());
+    }
+}
@@ -0,0 +1,179 @@
+package com.faceattendance;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * A gate's view of the shared model restricted to the students of its
+ * {@link GalleryShards}, so a kiosk pays for its own roster rather than the whole campus.
+ * <p>
+ * The probe is matched against the roster's samples first. Only when none of them is
+ * under the app's threshold is the whole gallery searched (unless
+ * -Dfaceattendance.shards.fallback=false), so a student from another block is still
+ * recognized, just more slowly. The roster copy is rebuilt whenever the shared model is
+ * swapped or gains or loses samples, re-reading the roster from the database then.
+ * <p>
+ * The rebuild (a database query and a copy of the roster's samples) runs on a background
+ * thread, never on a recognition worker. Until it is done, probes are matched against the
+ * live model restricted to the last roster, so removed students are already gone and new
+ * ones are found through the fallback. A roster supplier that returns null (lookup
+ * failed) makes the gate search everyone until the next rebuild.
+ * <p>
+ * Sharding needs the Java matcher; with the OpenCV one every probe goes to the full model.
+ */
+public class ShardedMatcher implements FaceMatcher {
+
+    private static final class View {
+        final LbphEngine source;
+        final long modifications;
+        final Set<Integer> roster; // null = everyone
+        final LbphEngine local;
+
+        View(LbphEngine source, long modifications, Set<Integer> roster, LbphEngine local) {
+            this.source = source;
+            this.modifications = modifications;
+            this.roster = roster;
+            this.local = local;
+        }
+
+        boolean isCurrent(LbphEngine engine) {
+            return source == engine && modifications == engine.getModificationCount();
+        }
+    }
+
+    private final FaceMatcher global;
+    private final GalleryShards shards;
+    private final Supplier<Set<Integer>> roster;
+    private final double threshold;
+    private final boolean fallback;
+    private volatile View view; // replaced by refresh()
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicLong local = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public ShardedMatcher(FaceMatcher global, GalleryShards shards, Supplier<Set<Integer>> roster,
+                          double threshold, boolean fallback) {
+        this.global = global;
+        this.shards = shards;
+        this.roster = roster;
+        this.threshold = threshold;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Match predict(Mat face) {
+        try (Lease lease = global.lease()) {
+            return match(lease.matcher(), face);
+        }
+    }
+
+    // Pins the shared model for the frame, like ResidentModel does
+    @Override
+    public Lease lease() {
+        Lease g = global.lease();
+        FaceMatcher pinned = new FaceMatcher() {
+            @Override
+            public Match predict(Mat face) {
+                return match(g.matcher(), face);
+            }
+
+            @Override
+            public int gallerySize() {
+                return ShardedMatcher.this.gallerySize();
+            }
+
+            @Override
+            public String describe() {
+                return ShardedMatcher.this.describe();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return new Lease() {
+            @Override
+            public FaceMatcher matcher() {
+                return pinned;
+            }
+
+            @Override
+            public void close() {
+                g.close();
+            }
+        };
+    }
+
+    private Match match(FaceMatcher m, Mat face) {
+        if (!(m instanceof LbphEngine)) return m.predict(face);
+        LbphEngine engine = (LbphEngine) m;
+        float[] probe = engine.getFeatures().compute(face);
+        View v = view;
+        Match r;
+        if (v != null && v.isCurrent(engine)) {
+            r = v.local.nearest(probe);
+        } else {
+            refreshInBackground();
+            Set<Integer> ids = v != null ? v.roster : null;
+            r = engine.scan(probe, ids == null ? null : ids::contains);
+        }
+        if ((r.label != -1 && r.distance < threshold) || !fallback) {
+            local.incrementAndGet();
+            return r;
+        }
+        fallbacks.incrementAndGet();
+        return engine.nearest(probe);
+    }
+
+    /**
+     * Re-reads the roster and copies its samples out of the current shared model, on the
+     * calling thread. The app calls it once before the gate starts; later rebuilds run in
+     * the background.
+     */
+    public void refresh() {
+        try (Lease lease = global.lease()) {
+            if (!(lease.matcher() instanceof LbphEngine)) return;
+            LbphEngine engine = (LbphEngine) lease.matcher();
+            long mods = engine.getModificationCount();
+            Set<Integer> ids = roster.get();
+            view = new View(engine, mods, ids, ids == null ? engine : engine.subset(ids::contains));
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) return;
+        Thread t = new Thread(() -> {
+            try {
+                refresh();
+            } finally {
+                refreshing.set(false);
+            }
+        }, "roster-" + shards);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public int gallerySize() {
+        View v = view;
+        return v != null ? v.local.gallerySize() : global.gallerySize();
+    }
+
+    @Override
+    public String describe() {
+        long l = local.get();
+        long f = fallbacks.get();
+        return String.format(Locale.US, "shards %s: %d of %d samples, %d answered from the roster, %d searched everyone%s",
+                shards, gallerySize(), global.gallerySize(), l, f, fallback ? "" : " (fallback off)");
+    }
+
+    @Override
+    public void close() {
+        // the shared model belongs to the registry
+    }
+}
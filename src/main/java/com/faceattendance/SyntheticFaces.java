@@ -0,0 +1,55 @@
+package com.faceattendance;
+
+import java.util.Random;
+
+/**
+ * Stand-in 200x200 face crops for benchmarks that need galleries larger than any
+ * enrollment set. Each student is a smooth random image (a coarse grid of random
+ * intensities, bilinearly upscaled) so LBP codes vary like on real faces; each sample
+ * of that student is the image shifted by a pixel or two with sensor-like noise.
+ */
+public final class SyntheticFaces {
+    public static final int SIZE = 200;
+    private static final int GRID = 12;
+
+    private SyntheticFaces() {}
+
+    public static byte[] student(Random random) {
+        int[] grid = new int[(GRID + 1) * (GRID + 1)];
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = 40 + random.nextInt(176);
+        }
+        byte[] pixels = new byte[SIZE * SIZE];
+        float cell = (SIZE - 1) / (float) GRID;
+        for (int y = 0; y < SIZE; y++) {
+            float gy = y / cell;
+            int y0 = Math.min(GRID - 1, (int) gy);
+            float ty = gy - y0;
+            for (int x = 0; x < SIZE; x++) {
+                float gx = x / cell;
+                int x0 = Math.min(GRID - 1, (int) gx);
+                float tx = gx - x0;
+                float top = grid[y0 * (GRID + 1) + x0] * (1 - tx) + grid[y0 * (GRID + 1) + x0 + 1] * tx;
+                float bottom = grid[(y0 + 1) * (GRID + 1) + x0] * (1 - tx) + grid[(y0 + 1) * (GRID + 1) + x0 + 1] * tx;
+                pixels[y * SIZE + x] = (byte) Math.round(top * (1 - ty) + bottom * ty);
+            }
+        }
+        return pixels;
+    }
+
+    // Another capture of the same student: shifted up to 2 px, Gaussian noise with the given sigma
+    public static byte[] sample(byte[] student, Random random, double noise) {
+        int dx = random.nextInt(5) - 2;
+        int dy = random.nextInt(5) - 2;
+        byte[] pixels = new byte[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            int sy = Math.max(0, Math.min(SIZE - 1, y + dy));
+            for (int x = 0; x < SIZE; x++) {
+                int sx = Math.max(0, Math.min(SIZE - 1, x + dx));
+                int v = (student[sy * SIZE + sx] & 0xFF) + (int) Math.round(random.nextGaussian() * noise);
+                pixels[y * SIZE + x] = (byte) Math.max(0, Math.min(255, v));
+            }
+        }
+        return pixels;
+    }
+}
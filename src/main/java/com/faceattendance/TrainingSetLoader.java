@@ -0,0 +1,277 @@
+package com.faceattendance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_GRAYSCALE;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imread;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/**
+ * Loads the face_data training images for trainModel: decoded in parallel on a
+ * fork-join pool, a batch at a time, through a cache of preprocessed crops.
+ * <p>
+ * Each image becomes a 200x200 grayscale crop, the size recognition predicts on. The
+ * crop is stored raw in models/crop_cache/, keyed by image path and checked against the
+ * file's size and modification time, so a retrain only decodes images that are new or
+ * changed since the last one. Memory is bounded by the batch: the caller trains on one
+ * batch (LBPHFaceRecognizer.train, then update) and releases it before the next is
+ * loaded. Batches hold whole students, so per-student work such as compaction sees all
+ * of a student's samples together.
+ * <p>
+ * -Dfaceattendance.training.threads overrides the pool size (default: one per core).
+ */
+public class TrainingSetLoader implements AutoCloseable {
+    public static final String THREADS_PROPERTY = "faceattendance.training.threads";
+    public static final int FACE_SIZE = 200;
+    public static final int BATCH_SAMPLES = 1000; // about 40 MB of crops in flight
+
+    private static final int MAGIC = 0x43524F50; // "CROP"
+
+    public static final class Sample {
+        public final int label;
+        public final String path;
+
+        public Sample(int label, String path) {
+            this.label = label;
+            this.path = path;
+        }
+    }
+
+    // Decoded crops of one batch; release() frees them
+    public static final class Batch {
+        public final List<Integer> labels = new ArrayList<>();
+        public final List<Mat> images = new ArrayList<>();
+
+        public int size() {
+            return images.size();
+        }
+
+        public void release() {
+            for (Mat m : images) m.close();
+            images.clear();
+            labels.clear();
+        }
+    }
+
+    public interface BatchHandler {
+        void handle(Batch batch) throws InterruptedException;
+    }
+
+    private final File cacheDir;
+    private final ForkJoinPool pool;
+    private final AtomicInteger decoded = new AtomicInteger();
+    private final AtomicInteger cached = new AtomicInteger();
+    private final AtomicInteger unreadable = new AtomicInteger();
+
+    public TrainingSetLoader(File cacheDir) {
+        this(cacheDir, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public TrainingSetLoader(File cacheDir, int threads) {
+        this.cacheDir = cacheDir;
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    // Every face_data row, grouped by student
+    public static List<Sample> query(Connection conn) throws SQLException {
+        return query(conn, "SELECT student_id, image_path FROM face_data ORDER BY student_id, id", null);
+    }
+
+    // One student's face_data rows
+    public static List<Sample> query(Connection conn, int studentId) throws SQLException {
+        return query(conn, "SELECT student_id, image_path FROM face_data WHERE student_id = ? ORDER BY id", studentId);
+    }
+
+    private static List<Sample> query(Connection conn, String sql, Integer studentId) throws SQLException {
+        List<Sample> samples = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (studentId != null) ps.setInt(1, studentId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    samples.add(new Sample(rs.getInt("student_id"), rs.getString("image_path")));
+                }
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Loads the samples batch by batch and hands each to the handler, which must not keep
+     * the Mats: the batch is released when the handler returns. Unreadable images are
+     * skipped. Returns the number of samples loaded.
+     */
+    public int forEachBatch(List<Sample> samples, BatchHandler handler) throws InterruptedException {
+        int loaded = 0;
+        int start = 0;
+        while (start < samples.size()) {
+            int end = Math.min(samples.size(), start + BATCH_SAMPLES);
+            // extend to the end of the last student so a student is never split
+            while (end < samples.size() && samples.get(end).label == samples.get(end - 1).label) end++;
+            Batch batch = load(samples.subList(start, end));
+            try {
+                loaded += batch.size();
+                if (batch.size() > 0) handler.handle(batch);
+            } finally {
+                batch.release();
+            }
+            start = end;
+        }
+        return loaded;
+    }
+
+    // Loads the samples as one batch; the caller releases it
+    public Batch load(List<Sample> samples) throws InterruptedException {
+        List<Callable<Mat>> tasks = new ArrayList<>(samples.size());
+        for (Sample s : samples) {
+            tasks.add(() -> crop(s.path));
+        }
+        Batch batch = new Batch();
+        List<Future<Mat>> results = pool.invokeAll(tasks);
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                Mat m = results.get(i).get();
+                if (m != null) {
+                    batch.images.add(m);
+                    batch.labels.add(samples.get(i).label);
+                }
+            } catch (ExecutionException ex) {
+                unreadable.incrementAndGet();
+            }
+        }
+        return batch;
+    }
+
+    // LBPH histograms of a batch, computed on the pool
+    public List<float[]> histograms(Batch batch, LbphFeatures features) throws InterruptedException {
+        List<Callable<float[]>> tasks = new ArrayList<>(batch.size());
+        for (Mat m : batch.images) {
+            tasks.add(() -> features.compute(m));
+        }
+        List<float[]> out = new ArrayList<>(tasks.size());
+        for (Future<float[]> f : pool.invokeAll(tasks)) {
+            try {
+                out.add(f.get());
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Feature extraction failed: " + ex.getCause().getMessage(), ex.getCause());
+            }
+        }
+        return out;
+    }
+
+    // The 200x200 crop of one image from the cache, or decoded and cached; null if unreadable
+    private Mat crop(String path) {
+        File source = new File(path);
+        if (!source.isFile()) {
+            unreadable.incrementAndGet();
+            return null;
+        }
+        File entry = cacheEntry(source);
+        byte[] pixels = readCached(entry, source);
+        if (pixels != null) {
+            cached.incrementAndGet();
+            Mat m = new Mat(FACE_SIZE, FACE_SIZE, CV_8UC1);
+            m.data().put(pixels);
+            return m;
+        }
+
+        Mat img = imread(path, IMREAD_GRAYSCALE);
+        if (img == null || img.empty()) {
+            if (img != null) img.close();
+            unreadable.incrementAndGet();
+            return null;
+        }
+        Mat face = img;
+        if (img.rows() != FACE_SIZE || img.cols() != FACE_SIZE) {
+            face = new Mat();
+            try (PointerScope scope = new PointerScope()) {
+                resize(img, face, new Size(FACE_SIZE, FACE_SIZE));
+            }
+            img.close();
+        } else if (!img.isContinuous()) {
+            face = img.clone();
+            img.close();
+        }
+        decoded.incrementAndGet();
+        pixels = new byte[FACE_SIZE * FACE_SIZE];
+        face.data().get(pixels);
+        writeCached(entry, source, pixels);
+        return face;
+    }
+
+    private File cacheEntry(File source) {
+        String key = source.getAbsolutePath();
+        return new File(cacheDir, String.format(Locale.ROOT, "%08x-%08x.crop", key.hashCode(), key.length()));
+    }
+
+    // Cached pixels if the entry is for this file as it is now, else null
+    private static byte[] readCached(File entry, File source) {
+        if (!entry.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            if (in.readInt() != MAGIC
+                    || !in.readUTF().equals(source.getAbsolutePath())
+                    || in.readLong() != source.length()
+                    || in.readLong() != source.lastModified()) {
+                return null;
+            }
+            byte[] pixels = new byte[FACE_SIZE * FACE_SIZE];
+            in.readFully(pixels);
+            return pixels;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // Best effort: a failed write only means the image is decoded again next time
+    private void writeCached(File entry, File source, byte[] pixels) {
+        try {
+            if (!cacheDir.exists()) cacheDir.mkdirs();
+            File tmp = new File(entry.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(source.getAbsolutePath());
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                out.write(pixels);
+            }
+            Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            // ignored, see above
+        }
+    }
+
+    public String describe() {
+        return decoded.get() + " decoded, " + cached.get() + " from cache, " + unreadable.get() + " unreadable, "
+                + pool.getParallelism() + " threads";
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
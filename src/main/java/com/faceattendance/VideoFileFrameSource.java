@@ -0,0 +1,69 @@
+package com.faceattendance;
+
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+/**
+ * Recorded clip decoded with FFmpeg. With realtime=false frames are returned as fast
+ * as they decode, which is what the replay benchmarks want; with realtime=true the
+ * clip is paced at its native frame rate so it behaves like a camera.
+ */
+public class VideoFileFrameSource implements FrameSource {
+    private final String path;
+    private final boolean realtime;
+    private FFmpegFrameGrabber grabber;
+    private boolean grayscale;
+    private long frameIntervalNanos;
+    private long nextFrameNanos;
+
+    public VideoFileFrameSource(String path, boolean realtime) {
+        this.path = path;
+        this.realtime = realtime;
+    }
+
+    @Override
+    public void setGrayscale(boolean grayscale) {
+        this.grayscale = grayscale;
+    }
+
+    @Override
+    public void start() throws Exception {
+        grabber = new FFmpegFrameGrabber(path);
+        if (grayscale) grabber.setImageMode(FrameGrabber.ImageMode.GRAY);
+        grabber.start();
+        double fps = grabber.getFrameRate();
+        frameIntervalNanos = fps > 0 ? (long) (1e9 / fps) : 33_333_333L;
+        nextFrameNanos = System.nanoTime();
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        Frame frame = grabber.grabImage();
+        if (frame != null && realtime) {
+            nextFrameNanos = FrameSources.pace(nextFrameNanos, frameIntervalNanos);
+        }
+        return frame;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            if (grabber != null) {
+                grabber.stop();
+                grabber.release();
+                grabber = null;
+            }
+        } catch (Exception ignored) {}
+    }
+
+    @Override
+    public boolean isLive() {
+        return false;
+    }
+
+    @Override
+    public String describe() {
+        return "video " + path + (realtime ? "" : " (replay)");
+    }
+}
@@ -0,0 +1,128 @@
+package com.faceattendance;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Video surface for the camera dialogs.
+ * <p>
+ * Frames can be submitted from any thread. The panel keeps three reused buffers
+ * (one being filled, one waiting, one on screen) and only ever holds the most
+ * recent frame: a frame that is replaced before the EDT paints it is counted as
+ * dropped. At most one repaint is pending at a time, so a busy UI never builds
+ * up a backlog and the picture stays one frame behind the camera.
+ */
+public class VideoPanel extends JComponent {
+    private final Object lock = new Object();
+    private BufferedImage front;   // painted by the EDT
+    private BufferedImage pending; // newest complete frame, not yet painted
+    private BufferedImage spare;   // free buffer for the next frame
+    private final AtomicBoolean repaintPending = new AtomicBoolean(false);
+    private volatile long submitted, dropped;
+
+    public VideoPanel() {
+        setOpaque(true);
+        setBackground(Color.BLACK);
+    }
+
+    // Copies the frame into a reused buffer, so the caller may reuse its image right away
+    public void submit(BufferedImage frame) {
+        if (frame == null) {
+            clear();
+            return;
+        }
+        BufferedImage buf = acquireBuffer(frame.getWidth(), frame.getHeight(), frame.getType());
+        if (frame.getType() == buf.getType()) {
+            frame.copyData(buf.getRaster());
+        } else {
+            Graphics2D g = buf.createGraphics();
+            g.drawImage(frame, 0, 0, null);
+            g.dispose();
+        }
+        publish(buf);
+    }
+
+    // For producers that render straight into the panel's buffer: fill it, then hand it to publish()
+    public BufferedImage acquireBuffer(int width, int height, int type) {
+        BufferedImage buf;
+        synchronized (lock) {
+            buf = spare;
+            spare = null;
+        }
+        return ensureBuffer(buf, width, height, type);
+    }
+
+    public void publish(BufferedImage buf) {
+        synchronized (lock) {
+            submitted++;
+            if (pending != null) {
+                dropped++; // replaced before it was painted
+                spare = pending;
+            }
+            pending = buf;
+        }
+        if (repaintPending.compareAndSet(false, true)) {
+            repaint();
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            front = null;
+            pending = null;
+        }
+        repaint();
+    }
+
+    public long getSubmittedFrames() {
+        return submitted;
+    }
+
+    public long getDroppedFrames() {
+        return dropped;
+    }
+
+    private static BufferedImage ensureBuffer(BufferedImage buf, int w, int h, int type) {
+        if (type == BufferedImage.TYPE_CUSTOM) type = BufferedImage.TYPE_3BYTE_BGR;
+        if (buf == null || buf.getWidth() != w || buf.getHeight() != h || buf.getType() != type) {
+            buf = new BufferedImage(w, h, type);
+        }
+        return buf;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        repaintPending.set(false);
+        BufferedImage img;
+        synchronized (lock) {
+            if (pending != null) {
+                if (front != null && spare == null) spare = front;
+                front = pending;
+                pending = null;
+            }
+            img = front;
+        }
+        int w = getWidth();
+        int h = getHeight();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, w, h);
+        if (img == null || w <= 0 || h <= 0) return;
+
+        // Scale to fit while preserving aspect ratio, centered
+        double arSrc = img.getWidth() / (double) img.getHeight();
+        double arDst = w / (double) h;
+        int drawW, drawH;
+        if (arSrc > arDst) {
+            drawW = w;
+            drawH = (int) Math.max(1, Math.round(w / arSrc));
+        } else {
+            drawH = h;
+            drawW = (int) Math.max(1, Math.round(h * arSrc));
+        }
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(img, (w - drawW) / 2, (h - drawH) / 2, drawW, drawH, null);
+    }
+}
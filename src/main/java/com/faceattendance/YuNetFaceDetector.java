@@ -0,0 +1,104 @@
+package com.faceattendance;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.bytedeco.opencv.opencv_objdetect.FaceDetectorYN;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * OpenCV's YuNet CNN face detector (FaceDetectorYN, CPU DNN backend), loaded from a local
+ * ONNX file such as face_detection_yunet_2023mar.onnx from the opencv_zoo repository.
+ * <p>
+ * The network expects three channels, so the grayscale frame is expanded to BGR first;
+ * YuNet copes well with the missing color. The profile's detect scale and face size
+ * limits apply as for the cascades; its scale factor and neighbor count do not.
+ */
+public class YuNetFaceDetector implements FaceDetector {
+    private static final float SCORE_THRESHOLD = 0.8f;
+    private static final float NMS_THRESHOLD = 0.3f;
+    private static final int TOP_K = 5000;
+
+    private final String modelPath;
+    private final FaceDetectorYN net;
+    private final DetectionProfile profile;
+    private final Mat bgr = new Mat();
+    private final Mat faces = new Mat();
+    private int inputWidth, inputHeight;
+
+    public YuNetFaceDetector(String modelPath, DetectionProfile profile) {
+        if (!new File(modelPath).isFile()) {
+            throw new IllegalStateException("YuNet model not found: " + modelPath);
+        }
+        this.modelPath = modelPath;
+        this.profile = profile;
+        try (Size initial = new Size(320, 320)) {
+            this.net = FaceDetectorYN.create(modelPath, "", initial, SCORE_THRESHOLD, NMS_THRESHOLD, TOP_K, 0, 0);
+        }
+        if (net == null || net.isNull()) {
+            throw new IllegalStateException("Could not load YuNet model: " + modelPath);
+        }
+    }
+
+    @Override
+    public List<Rectangle> detect(Mat gray, Rectangle roi) {
+        List<Rectangle> boxes = new ArrayList<>();
+        double scale = profile.getDetectScale();
+        try (PointerScope scope = new PointerScope()) {
+            Mat img = roi == null ? gray : new Mat(gray, FaceTracker.toRect(roi));
+            if (scale < 1.0) {
+                Mat small = new Mat();
+                resize(img, small, new Size(), scale, scale, INTER_AREA);
+                img = small;
+            }
+            cvtColor(img, bgr, img.channels() == 1 ? COLOR_GRAY2BGR : COLOR_BGRA2BGR);
+            // the input size is baked into the network; only reset it when the frame size changes
+            if (bgr.cols() != inputWidth || bgr.rows() != inputHeight) {
+                inputWidth = bgr.cols();
+                inputHeight = bgr.rows();
+                net.setInputSize(new Size(inputWidth, inputHeight));
+            }
+            net.detect(bgr, faces);
+        }
+        if (faces.empty()) return boxes;
+
+        Rectangle frame = new Rectangle(0, 0, gray.cols(), gray.rows());
+        int ox = roi == null ? 0 : roi.x;
+        int oy = roi == null ? 0 : roi.y;
+        int minFace = profile.getMinFace();
+        int maxFace = profile.getMaxFace();
+        // one row per face: x, y, w, h, five landmarks, score
+        try (FloatIndexer idx = faces.createIndexer()) {
+            for (long i = 0; i < idx.size(0); i++) {
+                int w = (int) Math.round(idx.get(i, 2) / scale);
+                int h = (int) Math.round(idx.get(i, 3) / scale);
+                int size = Math.max(w, h);
+                if ((minFace > 0 && size < minFace) || (maxFace > 0 && size > maxFace)) continue;
+                Rectangle r = new Rectangle(ox + (int) Math.round(idx.get(i, 0) / scale),
+                        oy + (int) Math.round(idx.get(i, 1) / scale), w, h);
+                r = r.intersection(frame);
+                if (!r.isEmpty()) boxes.add(r);
+            }
+        }
+        return boxes;
+    }
+
+    @Override
+    public String describe() {
+        return "YuNet " + new File(modelPath).getName() + ", " + profile;
+    }
+
+    @Override
+    public void close() {
+        net.close();
+        bgr.close();
+        faces.close();
+    }
+}